@@ -0,0 +1,228 @@
+/*
+ * Mayan Calendar Congruence Solver
+ * For use with class MayanDate
+ *
+ * Every cycle of the calendar fixes the MDC modulo its own length: a Calendar Round position fixes it modulo 18980,
+ * a Lord of the Night modulo 9, an 819-day station modulo 819, and so on. A Congruence is the set of MDCs x with
+ * x = residue (mod modulus); combining constraints with and() merges them by the Chinese Remainder Theorem, so the
+ * k-th match, the first match after any day, and every match inside any window come out in closed form.
+ * Constraints that contradict each other give an unsatisfiable Congruence, which matches nothing.
+ *
+ * Constraints:
+ * Congruence any() -- Every MDC.
+ * Congruence of(long residue, long modulus) -- Every MDC equal to residue modulo modulus.
+ * Congruence round(int rd) -- Every MDC at Calendar Round position rd (as given by MayanDate.roundPos).
+ * Congruence lord(int g) -- Every MDC ruled by Lord of the Night g (1-9; NONE for any other g).
+ * Congruence station(int dist) -- Every MDC dist days after an 819-day station (0-818).
+ * Congruence sevenDay(int s) -- Every MDC at position s of the 7-day cycle (1-7).
+ * Congruence trecena(int t) -- Every MDC with Tzolk'in number t (1-13).
+ * Congruence veintena(int v) -- Every MDC with Tzolk'in name v (0-19).
+ * Congruence haab(int day, int month) -- Every MDC with the given Haab' day (0-19) and month (0-18).
+ * Congruence venus(int pos) -- Every MDC pos days into the Dresden Venus Round (0-583, see class LunarSeries).
+ * Congruence and(long residue, long modulus) -- This set narrowed to MDCs equal to residue modulo modulus.
+ * Congruence and(Congruence c) -- The MDCs in both this set and c.
+ *
+ * Queries:
+ * boolean isSatisfiable() -- Whether any MDC matches at all.
+ * long getResidue() -- The smallest non-negative match.
+ * long getModulus() -- The distance between consecutive matches.
+ * long kth(long k) -- The k-th non-negative match, counting from 0.
+ * long first(long from) -- The first match on or after day from.
+ * long last(long to) -- The last match on or before day to.
+ * long count(long from, long to) -- The number of matches from day from to day to, inclusive.
+ * int[] between(int from, int to) -- Every match from day from to day to, inclusive.
+ * int[] take(int from, int n) -- The first n matches on or after day from.
+ *
+ * Asking an unsatisfiable Congruence for a particular match throws an IllegalStateException; count() and the array
+ * queries simply find nothing.
+ */
+
+public final class Congruence {
+
+  private static final Congruence NONE = new Congruence(0,0);
+
+  private final long residue;   //Smallest non-negative match
+  private final long modulus;   //Period of the matches, 0 if there are none
+
+  private Congruence(long r, long m){
+    residue = r;
+    modulus = m;
+  }
+
+
+  //Constraints ---------------------------------------------------------
+
+  public static Congruence any(){
+    return new Congruence(0,1);
+  }
+
+  public static Congruence of(long r, long m){
+    if(m<=0)throw new IllegalArgumentException("Modulus must be positive: "+m);
+    return new Congruence(Math.floorMod(r,m),m);
+  }
+
+  public static Congruence round(int rd){
+    return of(rd,18980);
+  }
+
+  public static Congruence lord(int g){
+    if(g<1||g>9)return NONE;
+    return of(g,9);
+  }
+
+  public static Congruence station(int dist){
+    if(dist<0||dist>818)return NONE;
+    return of(dist-3,819);
+  }
+
+  public static Congruence sevenDay(int s){
+    //The 7-day cycle runs with the 819-day count, so 7 divides the station distance evenly.
+    if(s<1||s>7)return NONE;
+    return of(s-3,7);
+  }
+
+  public static Congruence trecena(int t){
+    if(t<1||t>13)return NONE;
+    return of(t-160,13);
+  }
+
+  public static Congruence veintena(int v){
+    if(v<0||v>19)return NONE;
+    return of(v-160,20);
+  }
+
+  public static Congruence haab(int day, int month){
+    if(day<0||day>19||month<0||month>18||(month==18&&day>4))return NONE;
+    return of((20*month)+day-348,365);
+  }
+
+  public static Congruence venus(int pos){
+    if(pos<0||pos>=LunarSeries.VENUS_ROUND)return NONE;
+    return of((long)LunarSeries.VENUS_BASE+pos,LunarSeries.VENUS_ROUND);
+  }
+
+  public Congruence and(long r, long m){
+    return and(of(r,m));
+  }
+
+  public Congruence and(Congruence c){
+    //Chinese Remainder merge of x = a (mod m) and x = b (mod n), which is solvable exactly when gcd(m,n) divides b-a.
+    if(modulus==0||c.modulus==0)return NONE;
+    long m = modulus;
+    long n = c.modulus;
+    long g = gcd(m,n);
+    long diff = c.residue-residue;
+    if(diff%g!=0)return NONE;
+    long ng = n/g;
+    long t = Math.floorMod((diff/g)%ng*inverse((m/g)%ng,ng),ng);
+    long lcm = m*ng;
+    return new Congruence(Math.floorMod(residue+(m*t),lcm),lcm);
+  }
+
+
+  //Queries ---------------------------------------------------------------
+
+  public boolean isSatisfiable(){
+    return modulus!=0;
+  }
+
+  public long getResidue(){
+    check();
+    return residue;
+  }
+
+  public long getModulus(){
+    check();
+    return modulus;
+  }
+
+  public long kth(long k){
+    check();
+    return residue+(k*modulus);
+  }
+
+  public long first(long from){
+    check();
+    return from+Math.floorMod(residue-from,modulus);
+  }
+
+  public long last(long to){
+    check();
+    return to-Math.floorMod(to-residue,modulus);
+  }
+
+  public long count(long from, long to){
+    if(modulus==0||to<from)return 0;
+    long a = first(from);
+    if(a>to)return 0;
+    return ((to-a)/modulus)+1;
+  }
+
+  public int[] between(int from, int to){
+    int[] out = new int[(int)count(from,to)];
+    if(out.length>0){
+      long a = first(from);
+      for(int i=0;i<out.length;i++){
+        out[i] = (int)(a+(i*modulus));
+      }
+    }
+    return out;
+  }
+
+  public int[] take(int from, int n){
+    if(modulus==0||n<=0)return new int[0];
+    int[] out = new int[n];
+    long a = first(from);
+    for(int i=0;i<n;i++){
+      out[i] = (int)(a+(i*modulus));
+    }
+    return out;
+  }
+
+  public boolean equals(Object o){
+    return (o instanceof Congruence) && ((Congruence)o).residue==residue && ((Congruence)o).modulus==modulus;
+  }
+
+  public int hashCode(){
+    return (int)(residue*31+modulus);
+  }
+
+  public String toString(){
+    if(modulus==0)return "unsatisfiable";
+    return "x = "+residue+" (mod "+modulus+")";
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private void check(){
+    if(modulus==0)throw new IllegalStateException("Unsatisfiable constraints: no MDC matches");
+  }
+
+  private static long gcd(long a, long b){
+    while(b!=0){
+      long t = a%b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  private static long inverse(long a, long m){
+    //Modular inverse of a modulo m (a and m coprime), by the extended Euclidean algorithm
+    if(m==1)return 0;
+    long r0 = m, r1 = Math.floorMod(a,m);
+    long s0 = 0, s1 = 1;
+    while(r1!=0){
+      long q = r0/r1;
+      long t = r0-(q*r1);
+      r0 = r1;
+      r1 = t;
+      t = s0-(q*s1);
+      s0 = s1;
+      s1 = t;
+    }
+    return Math.floorMod(s0,m);
+  }
+
+}
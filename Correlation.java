@@ -0,0 +1,91 @@
+/*
+ * Mayan Calendar Correlation
+ * For use with class MayanDate
+ *
+ * A correlation ties the Long Count to the Julian Day Number: its constant is the Julian Day of 0.0.0.0.0, so that
+ * an MDC plus the constant is a Julian Day. Which constant is right is still argued, so the common ones are named here
+ * and any other may be made. Correlations are immutable and may be shared freely; two are equal when their constants are.
+ *
+ * Known correlations:
+ * GMT             -- 584283 (Goodman-Martinez-Thompson), the default everywhere.
+ * LOUNSBURY       -- 584285, the astronomical GMT variant.
+ * MARTIN_SKIDMORE -- 584286.
+ * SPINDEN         -- 489384.
+ *
+ * Methods:
+ * static Correlation of(String name) -- The known correlation with the given name (any case), or the one with the given number.
+ * static Correlation custom(String name, int constant) -- A new correlation.
+ * static Correlation[] known() -- The known correlations, GMT first.
+ * String getName() -- The name.
+ * int getConstant() -- The Julian Day Number of 0.0.0.0.0.
+ */
+
+public final class Correlation {
+
+  public static final Correlation GMT = new Correlation("GMT",584283);
+  public static final Correlation LOUNSBURY = new Correlation("Lounsbury",584285);
+  public static final Correlation MARTIN_SKIDMORE = new Correlation("Martin-Skidmore",584286);
+  public static final Correlation SPINDEN = new Correlation("Spinden",489384);
+
+  private static final Correlation[] KNOWN = {GMT,LOUNSBURY,MARTIN_SKIDMORE,SPINDEN};
+
+  private final String name;
+  private final int constant;
+
+  private Correlation(String name, int constant){
+    this.name = name;
+    this.constant = constant;
+  }
+
+
+  //Factories -------------------------------------------------------------
+
+  public static Correlation of(String name){
+    for(Correlation c : KNOWN){
+      if(c.name.equalsIgnoreCase(name))return c;
+    }
+    int k;
+    try{
+      k = Integer.parseInt(name.trim());
+    }catch(NumberFormatException e){
+      throw new IllegalArgumentException("Unknown correlation: "+name);
+    }
+    for(Correlation c : KNOWN){
+      if(c.constant==k)return c;
+    }
+    return new Correlation(Integer.toString(k),k);
+  }
+
+  public static Correlation custom(String name, int constant){
+    if(name==null||name.isEmpty())throw new IllegalArgumentException("A correlation needs a name");
+    return new Correlation(name,constant);
+  }
+
+  public static Correlation[] known(){
+    return KNOWN.clone();
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public String getName(){
+    return name;
+  }
+
+  public int getConstant(){
+    return constant;
+  }
+
+  public String toString(){
+    return name+" ("+constant+")";
+  }
+
+  public boolean equals(Object o){
+    return (o instanceof Correlation) && ((Correlation)o).constant==constant;
+  }
+
+  public int hashCode(){
+    return constant;
+  }
+
+}
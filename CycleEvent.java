@@ -0,0 +1,226 @@
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Mayan Cycle Events
+ * For use with classes MayanDate, MayanLong and Congruence
+ *
+ * The days on which something in the calendar comes round again: the end of a period at any place of the Long Count,
+ * an 819-day station, the Haab' new year (0 Pop, the Year Bearer's day), the start of a Calendar Round, a given
+ * Tzolk'in or Haab' day, a Lord of the Night. Each recurs with a fixed period, so each is a Congruence, and the next or
+ * previous one from any day is a single floor modulo rather than a walk a day at a time. Days are MDCs as longs, so
+ * that events before the creation and beyond the int range come out the same way (see class MayanLong).
+ *
+ * Events that recur on several cycles at once merge into one stream in day order: a head per event in a priority
+ * queue, the earliest taken and moved on to that event's next day, so that a century of period endings costs a step
+ * per ending, not per day. Events falling on the same day come in the order they were given.
+ *
+ * Events:
+ * static CycleEvent ending(int place) -- The end of a period of the given Long Count place (1 Winal, 2 Tun, 3 K'atun, 4 Bak'tun, 5 Piktun ... 8 Alawtun).
+ * static CycleEvent station() -- An 819-day station.
+ * static CycleEvent newYear() -- The Haab' new year, 0 Pop, which names the Year Bearer.
+ * static CycleEvent roundStart() -- The first day of a Calendar Round (as MayanDate.roundBorders).
+ * static CycleEvent tzolkin(int trecena, int veintena) -- A Tzolk'in day (1-13, 0-19).
+ * static CycleEvent haab(int day, int month) -- A Haab' day (0-19, 0-18).
+ * static CycleEvent lord(int g) -- A night of Lord g (1-9).
+ * static CycleEvent of(String name, Congruence when) -- Any other event, such as of("Hotun ending", Congruence.of(0,1800)).
+ *
+ * Queries (each a constant number of operations):
+ * long next(long day) -- The first occurrence after day.
+ * long previous(long day) -- The last occurrence before day.
+ * long onOrAfter(long day), onOrBefore(long day) -- Ditto, counting day itself.
+ * boolean isOn(long day) -- Whether the event falls on day.
+ * long count(long from, long to) -- The number of occurrences from day from to day to, inclusive.
+ * LongStream days(long from, long to) -- Every occurrence from day from to day to, inclusive (splittable, for parallel streams).
+ *
+ * Merged streams:
+ * static Stream<Occurrence> merge(long from, long to, CycleEvent... events) -- Every occurrence of every event from
+ *   day from to day to, inclusive, in day order, found lazily.
+ * Occurrence.getDay(), getEvent() -- The day and the event of one occurrence.
+ *
+ * String getName() -- The name of the event, as "K'atun ending" or "8 Ajaw".
+ * Congruence getWhen() -- The days of the event.
+ */
+
+public final class CycleEvent {
+
+  private static final String[] PLACES = {"K'in","Winal","Tun","K'atun","Bak'tun","Piktun","Kalabtun","K'inchiltun","Alawtun"};
+
+  private final String name;
+  private final Congruence when;
+  private final long residue, modulus;
+
+
+  //Events ---------------------------------------------------------------
+
+  private CycleEvent(String n, Congruence c){
+    name = n;
+    when = c;
+    residue = c.getResidue();
+    modulus = c.getModulus();
+  }
+
+  public static CycleEvent ending(int place){
+    if(place<1||place>=PLACES.length)throw new IllegalArgumentException("No Long Count place "+place);
+    return new CycleEvent(PLACES[place]+" ending",Congruence.of(0,MayanLong.unit(place)));
+  }
+
+  public static CycleEvent station(){
+    return new CycleEvent("819-day station",Congruence.station(0));
+  }
+
+  public static CycleEvent newYear(){
+    return new CycleEvent("Haab' new year",Congruence.haab(0,0));
+  }
+
+  public static CycleEvent roundStart(){
+    return new CycleEvent("Calendar Round start",Congruence.round(0));
+  }
+
+  public static CycleEvent tzolkin(int trecena, int veintena){
+    return of(trecena+" "+name(MayanDate.TZ_NAMES,veintena),Congruence.trecena(trecena).and(Congruence.veintena(veintena)));
+  }
+
+  public static CycleEvent haab(int day, int month){
+    return of(day+" "+name(MayanDate.HA_NAMES,month),Congruence.haab(day,month));
+  }
+
+  public static CycleEvent lord(int g){
+    if(g<1||g>9)throw new IllegalArgumentException("No Lord of the Night G"+g);
+    return new CycleEvent("G"+g,Congruence.lord(g));
+  }
+
+  public static CycleEvent of(String name, Congruence when){
+    if(!when.isSatisfiable())throw new IllegalArgumentException(name+" never occurs");
+    return new CycleEvent(name,when);
+  }
+
+
+  //Queries ---------------------------------------------------------------
+
+  public long next(long day){
+    return onOrAfter(day+1);
+  }
+
+  public long previous(long day){
+    return onOrBefore(day-1);
+  }
+
+  public long onOrAfter(long day){
+    return day+Math.floorMod(residue-day,modulus);
+  }
+
+  public long onOrBefore(long day){
+    return day-Math.floorMod(day-residue,modulus);
+  }
+
+  public boolean isOn(long day){
+    return Math.floorMod(day-residue,modulus)==0;
+  }
+
+  public long count(long from, long to){
+    return when.count(from,to);
+  }
+
+  public LongStream days(long from, long to){
+    long first = onOrAfter(from);
+    long m = modulus;
+    return LongStream.range(0,count(from,to)).map(k -> first+(k*m));
+  }
+
+  public static Stream<Occurrence> merge(long from, long to, CycleEvent... events){
+    return StreamSupport.stream(new Merge(from,to,events),false);
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public String getName(){
+    return name;
+  }
+
+  public Congruence getWhen(){
+    return when;
+  }
+
+  public String toString(){
+    return name;
+  }
+
+
+  //Occurrences ---------------------------------------------------------------
+
+  public static final class Occurrence {
+
+    private final long day;
+    private final CycleEvent event;
+
+    Occurrence(long day, CycleEvent event){
+      this.day = day;
+      this.event = event;
+    }
+
+    public long getDay(){
+      return day;
+    }
+
+    public CycleEvent getEvent(){
+      return event;
+    }
+
+    public String toString(){
+      //Long Count and event, as "9.10.0.0.0 K'atun ending"
+      long[] l = MayanLong.longCount(day);
+      StringBuilder sb = new StringBuilder(48);
+      for(int i=0;i<l.length;i++){
+        if(i>0)sb.append('.');
+        sb.append(l[i]);
+      }
+      return sb.append(' ').append(event.name).toString();
+    }
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private static String name(String[] names, int i){
+    return (i>=0&&i<names.length)?names[i]:"?";
+  }
+
+  private static final class Merge extends Spliterators.AbstractSpliterator<Occurrence> {
+    //The next day of each event still in range, earliest first; ties go to the event given first
+    private final PriorityQueue<long[]> heads;
+    private final CycleEvent[] events;
+    private final long to;
+
+    Merge(long from, long to, CycleEvent[] events){
+      super(Long.MAX_VALUE,Spliterator.ORDERED|Spliterator.NONNULL|Spliterator.IMMUTABLE);
+      this.events = events.clone();
+      this.to = to;
+      heads = new PriorityQueue<long[]>(Math.max(1,events.length),(a,b) -> a[0]!=b[0]?Long.compare(a[0],b[0]):Long.compare(a[1],b[1]));
+      for(int i=0;i<events.length;i++){
+        long d = events[i].onOrAfter(from);
+        if(d<=to)heads.add(new long[]{d,i});
+      }
+    }
+
+    public boolean tryAdvance(Consumer<? super Occurrence> action){
+      long[] h = heads.poll();
+      if(h==null)return false;
+      CycleEvent e = events[(int)h[1]];
+      action.accept(new Occurrence(h[0],e));
+      //Move the head on to the event's next day, reusing its array
+      if(to-h[0]>=e.modulus){
+        h[0] += e.modulus;
+        heads.add(h);
+      }
+      return true;
+    }
+  }
+
+}
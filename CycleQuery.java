@@ -0,0 +1,547 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.OptionalLong;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.LongConsumer;
+import java.util.stream.LongStream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Mayan Cycle Query
+ * For use with classes MayanDate, MayanDay, MayanParser and Congruence
+ *
+ * Finds the days matching any combination of the cycles MayanDate computes ("the next 4 Ajaw 8 Kumk'u ruled by G9")
+ * without looking at the days in between. A query is compiled once into:
+ *   - one arithmetic progression, the Chinese Remainder merge of every field that fixes the MDC modulo its cycle
+ *     (Tzolk'in, full Haab', Lord of the Night, 7-day cycle, station distance, K'in);
+ *   - masks for the fields that fix a stretch of days in each period instead: a Long Count digit (20 days in 360 for a
+ *     Winal, 7200 in 144000 for a K'atun), a Haab' month (20 in 365), a Quadrant (819 in 3276, the 819-day stations
+ *     taking the four quadrants in turn) and a Year Bearer (the 365 days after each 0 Pop of that bearer);
+ *   - windows for the Bak'tun digit, which does not repeat.
+ * The search walks the progression, and where a day falls outside a mask it jumps straight to the first later day of
+ * the progression inside it: the first k with (a + k*m) mod p in a given range, found by a Euclid-like descent in
+ * O(log p). A match therefore costs a few jumps, however far apart the matches are, and the searches backward use the
+ * same plan mirrored. MayanDay counts the first 360 days of the era as an 8 Kab'an year, and the plan does the same.
+ *
+ * Constraints (each returns this query, so that calls may be chained; -1 leaves a field free):
+ * setTzolkin(int trecena, int veintena) -- Tzolk'in number (1-13) and name (0-19).
+ * setHaab(int day, int month) -- Haab' day (0-19) and month (0-18).
+ * setLord(int g) -- Lord of the Night (1-9).
+ * setSevenDay(int s) -- 7-day cycle (1-7).
+ * setStation(int dist) -- Days since the last 819-day station (0-818).
+ * setQuadrant(int q) -- 819-day Color&Quadrant (0-3, as MayanDate.getEight).
+ * setBearer(int number, int name) -- Year Bearer number (1-13) and name (0-19).
+ * setLongCount(int[] longCount) -- [Bak'tun, K'atun, Tun, Winal, K'in], with -1 for each free place.
+ * setDigits(int place, int... digits) -- Allows any of the given digits at a place (0 Bak'tun to 4 K'in); none frees it.
+ * static CycleQuery parse(String text) -- A query from text, as "4 Ajaw 8 Kumk'u G9" (see below).
+ *
+ * Queries (each O(log) per match found, or per jump between masks):
+ * OptionalLong next(long day), previous(long day) -- The first match after, or the last match before, day.
+ * OptionalLong onOrAfter(long day), onOrBefore(long day) -- Ditto, counting day itself.
+ * long count(long from, long to) -- The number of matches from day from to day to, inclusive.
+ * LongStream days(long from, long to) -- Every match from day from to day to, inclusive, found lazily in order.
+ * Congruence getProgression() -- The progression the exact fields reduce to.
+ *
+ * Text is a list of terms separated by blanks or commas, in any order:
+ *   4 Ajaw, Ajaw        -- Tzolk'in day, or Tzolk'in name alone
+ *   8 Kumk'u, Kumk'u    -- Haab' day, or Haab' month alone
+ *   G9                  -- Lord of the Night (also: lord 9)
+ *   seven 3             -- 7-day cycle
+ *   station 0           -- Days since the last 819-day station
+ *   quadrant Xaman, color Sak -- Color&Quadrant, by either name in Yucatec or English
+ *   bearer 1 Ik', bearer Ik', bearer 1 -- Year Bearer, or either half of it
+ *   lc 9.*.0.0.0, lc 9|10.*.*.0.0 -- Long Count digits, * for any and | between alternatives
+ * Day and month names are read by MayanParser, in the modern or the colonial spelling.
+ */
+
+public final class CycleQuery {
+
+  //Days of one unit of each place, Bak'tun first, and the digits each place allows
+  private static final long[] UNIT = {144000,7200,360,20,1};
+  private static final int[] BASE = {31,20,20,18,20};
+  //Far enough from the ends of long that no step of a search overflows
+  private static final long FAR = Long.MAX_VALUE>>3;
+
+  private int trecena = -1, veintena = -1, haabDay = -1, haabMonth = -1, lord = -1, sevenDay = -1, station = -1;
+  private int quadrant = -1, bearerNumber = -1, bearerName = -1;
+  private final int[] digits = new int[5];   //Bitmask of the digits allowed at each place, 0 for any
+
+  private Plan forward, backward;
+
+
+  //Constraints ---------------------------------------------------------
+
+  public CycleQuery setTzolkin(int t, int v){
+    trecena = t;
+    veintena = v;
+    return changed();
+  }
+
+  public CycleQuery setHaab(int d, int m){
+    haabDay = d;
+    haabMonth = m;
+    return changed();
+  }
+
+  public CycleQuery setLord(int g){
+    lord = g;
+    return changed();
+  }
+
+  public CycleQuery setSevenDay(int s){
+    sevenDay = s;
+    return changed();
+  }
+
+  public CycleQuery setStation(int dist){
+    station = dist;
+    return changed();
+  }
+
+  public CycleQuery setQuadrant(int q){
+    quadrant = q;
+    return changed();
+  }
+
+  public CycleQuery setBearer(int number, int name){
+    bearerNumber = number;
+    bearerName = name;
+    return changed();
+  }
+
+  public CycleQuery setLongCount(int[] l){
+    for(int i=0;i<5;i++){
+      if(l[i]<0){
+        setDigits(i);
+      }else{
+        setDigits(i,l[i]);
+      }
+    }
+    return this;
+  }
+
+  public CycleQuery setDigits(int place, int... d){
+    int mask = 0;
+    for(int v : d){
+      if(v<0||v>=BASE[place])throw new IllegalArgumentException("No digit "+v+" in place "+place+" of a Long Count");
+      mask |= 1<<v;
+    }
+    digits[place] = mask;
+    return changed();
+  }
+
+
+  //Queries ---------------------------------------------------------------
+
+  public OptionalLong next(long day){
+    return onOrAfter(day+1);
+  }
+
+  public OptionalLong previous(long day){
+    return onOrBefore(day-1);
+  }
+
+  public OptionalLong onOrAfter(long day){
+    long x = plan(false).first(day,FAR);
+    return x==Long.MIN_VALUE?OptionalLong.empty():OptionalLong.of(x);
+  }
+
+  public OptionalLong onOrBefore(long day){
+    //The first match on or after -day of the mirrored plan
+    long x = plan(true).first(-day,FAR);
+    return x==Long.MIN_VALUE?OptionalLong.empty():OptionalLong.of(-x);
+  }
+
+  public long count(long from, long to){
+    return plan(false).count(from,to);
+  }
+
+  public LongStream days(long from, long to){
+    Plan p = plan(false);
+    return StreamSupport.longStream(new Spliterators.AbstractLongSpliterator(Long.MAX_VALUE,
+        Spliterator.ORDERED|Spliterator.NONNULL){
+      long at = from;
+      public boolean tryAdvance(LongConsumer action){
+        if(at>to)return false;
+        long x = p.first(at,to);
+        if(x==Long.MIN_VALUE){
+          at = to+1;
+          return false;
+        }
+        action.accept(x);
+        at = x+1;
+        return true;
+      }
+    },false);
+  }
+
+  public Congruence getProgression(){
+    Congruence c = Congruence.any();
+    if(trecena>=0)c = c.and(Congruence.trecena(trecena));
+    if(veintena>=0)c = c.and(Congruence.veintena(veintena));
+    if(haabDay>=0&&haabMonth>=0)c = c.and(Congruence.haab(haabDay,haabMonth));
+    if(lord>=0)c = c.and(Congruence.lord(lord));
+    if(sevenDay>=0)c = c.and(Congruence.sevenDay(sevenDay));
+    if(station>=0)c = c.and(Congruence.station(station));
+    if(Integer.bitCount(digits[4])==1)c = c.and(Integer.numberOfTrailingZeros(digits[4]),20);
+    return c;
+  }
+
+
+  //Text ---------------------------------------------------------------
+
+  public static CycleQuery parse(String text){
+    CycleQuery q = new CycleQuery();
+    MayanParser p = new MayanParser();
+    List<int[]> t = new ArrayList<int[]>();   //Token bounds
+    for(int i=0;i<text.length();){
+      while(i<text.length()&&(Character.isWhitespace(text.charAt(i))||text.charAt(i)==','))i++;
+      int s = i;
+      while(i<text.length()&&!Character.isWhitespace(text.charAt(i))&&text.charAt(i)!=',')i++;
+      if(i>s)t.add(new int[]{s,i});
+    }
+    for(int k=0;k<t.size();k++){
+      int s = t.get(k)[0], e = t.get(k)[1];
+      String w = text.substring(s,e).toLowerCase();
+      boolean more = k+1<t.size();
+      if(w.matches("g[0-9]")){
+        q.setLord(w.charAt(1)-'0');
+      }else if(w.equals("lord")&&more){
+        q.setLord(number(text,t.get(++k),p));
+      }else if(w.equals("seven")&&more){
+        q.setSevenDay(number(text,t.get(++k),p));
+      }else if(w.equals("station")&&more){
+        q.setStation(number(text,t.get(++k),p));
+      }else if((w.equals("quadrant")||w.equals("color"))&&more){
+        String v = text.substring(t.get(k+1)[0],t.get(++k)[1]);
+        int found = -1;
+        for(int i=0;i<8;i++){
+          if(v.equalsIgnoreCase(w.equals("quadrant")?MayanDate.EI_QUADRANTS[i]:MayanDate.EI_COLORS[i]))found = i%4;
+        }
+        if(found<0)throw new IllegalArgumentException("No "+w+" named "+v);
+        q.setQuadrant(found);
+      }else if(w.equals("bearer")&&more){
+        int n = -1, v = -1;
+        int[] a = t.get(++k);
+        if(Character.isDigit(text.charAt(a[0]))){
+          n = number(text,a,p);
+          if(k+1<t.size()&&p.tzolkinName(text,t.get(k+1)[0],t.get(k+1)[1])>=0)v = p.tzolkinName(text,t.get(++k)[0],t.get(k)[1]);
+        }else{
+          v = p.tzolkinName(text,a[0],a[1]);
+          if(v<0)throw new IllegalArgumentException("No Year Bearer named "+text.substring(a[0],a[1]));
+        }
+        q.setBearer(n,v);
+      }else if(w.equals("lc")&&more){
+        int[] a = t.get(++k);
+        q.pattern(text,a[0],a[1]);
+      }else if(Character.isDigit(w.charAt(0))&&more){
+        int n = number(text,t.get(k),p);
+        int[] a = t.get(++k);
+        int v = p.tzolkinName(text,a[0],a[1]);
+        int m = p.haabName(text,a[0],a[1]);
+        if(v>=0){
+          q.setTzolkin(n,v);
+        }else if(m>=0){
+          q.setHaab(n,m);
+        }else{
+          throw new IllegalArgumentException("No Tzolk'in or Haab' name "+text.substring(a[0],a[1]));
+        }
+      }else if(p.tzolkinName(text,s,e)>=0){
+        q.setTzolkin(q.trecena,p.tzolkinName(text,s,e));
+      }else if(p.haabName(text,s,e)>=0){
+        q.setHaab(q.haabDay,p.haabName(text,s,e));
+      }else{
+        throw new IllegalArgumentException("Cannot read \""+text.substring(s,e)+"\" at character "+(s+1));
+      }
+    }
+    return q;
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private CycleQuery changed(){
+    forward = null;
+    backward = null;
+    return this;
+  }
+
+  private static int number(String text, int[] a, MayanParser p){
+    int n = p.parseMDC(text,a[0],a[1]);
+    if(!p.ok())throw new IllegalArgumentException("Expected a number at character "+(a[0]+1));
+    return n;
+  }
+
+  private void pattern(String text, int s, int e){
+    //Five places separated by dots, each * or digits separated by |
+    int place = 0;
+    int[] d = new int[32];
+    int nd = 0;
+    int v = -1;
+    for(int i=s;i<=e;i++){
+      char c = i<e?text.charAt(i):'.';
+      if(c>='0'&&c<='9'){
+        v = (v<0?0:v*10)+(c-'0');
+        if(v>99)throw new IllegalArgumentException("Long Count digit too large at character "+(i+1));
+      }else if(c=='|'||c=='.'){
+        if(v>=0)d[nd++] = v;
+        v = -1;
+        if(c=='.'){
+          if(place>4)throw new IllegalArgumentException("A Long Count has 5 places");
+          setDigits(place++,java.util.Arrays.copyOf(d,nd));
+          nd = 0;
+        }
+      }else if(c!='*'){
+        throw new IllegalArgumentException("Not a Long Count pattern, at character "+(i+1));
+      }
+    }
+    if(place!=5)throw new IllegalArgumentException("A Long Count has 5 places");
+  }
+
+  private Plan plan(boolean mirrored){
+    if(forward==null){
+      forward = compile();
+      backward = forward.mirror();
+    }
+    return mirrored?backward:forward;
+  }
+
+  private Plan compile(){
+    Congruence c = getProgression();
+    List<Mask> masks = new ArrayList<Mask>();
+    //Haab' month alone (its 20 days, or the 5 of Wayeb), or Haab' day alone (one day in each month)
+    if(haabMonth>=0&&haabDay<0){
+      masks.add(new Mask(365,haabMonth==18?5:20,(20L*haabMonth)-348));
+    }else if(haabDay>=0&&haabMonth<0){
+      long[] s = new long[haabDay<5?19:18];
+      for(int m=0;m<s.length;m++)s[m] = (20L*m)+haabDay-348;
+      masks.add(new Mask(365,1,s));
+    }
+    //Long Count digits below the Bak'tun: digit v of a place with unit u covers [v*u, (v+1)*u) of each u*base days
+    for(int p=1;p<5;p++){
+      if(digits[p]==0||(p==4&&Integer.bitCount(digits[p])==1))continue;
+      long[] s = new long[Integer.bitCount(digits[p])];
+      for(int v=0,j=0;v<32;v++){
+        if((digits[p]&(1<<v))!=0)s[j++] = v*UNIT[p];
+      }
+      masks.add(new Mask(UNIT[p-1],UNIT[p],s));
+    }
+    //Stations of quadrant q are those of index k = 3q (mod 4), as 819 = 3 (mod 4)
+    if(quadrant>=0){
+      masks.add(new Mask(4*819,819,(819L*((3*quadrant)%4))-3));
+    }
+    //Windows of the Bak'tun digits
+    List<long[]> windows = new ArrayList<long[]>();
+    if(digits[0]==0){
+      windows.add(new long[]{-FAR,FAR});
+    }else{
+      for(int v=0;v<32;v++){
+        if((digits[0]&(1<<v))!=0)windows.add(new long[]{v*UNIT[0],((v+1)*UNIT[0])-1});
+      }
+    }
+    Mask[] plain = masks.toArray(new Mask[0]);
+    if(bearerNumber<0&&bearerName<0){
+      return new Plan(c,windows,null,plain,null);
+    }
+    //A bearer is the Tzolk'in of a 0 Pop: the days from it to the next 0 Pop
+    Congruence b = Congruence.haab(0,0);
+    if(bearerNumber>=0)b = b.and(Congruence.trecena(bearerNumber));
+    if(bearerName>=0)b = b.and(Congruence.veintena(bearerName));
+    List<Mask> with = new ArrayList<Mask>(masks);
+    if(b.isSatisfiable()){
+      with.add(new Mask(b.getModulus(),365,b.getResidue()));
+    }else{
+      with = null;
+    }
+    //The first 360 days of the era are an 8 Kab'an year, whatever the Haab' says
+    boolean era = (bearerNumber<0||bearerNumber==8)&&(bearerName<0||bearerName==17);
+    return new Plan(c,windows,with==null?null:with.toArray(new Mask[0]),plain,era?new long[]{0,359}:new long[]{0,-1});
+  }
+
+  private static long minMultiple(long m, long a, long l, long r){
+    //The smallest k >= 0 with l <= (a*k) mod m <= r, for 0 <= l <= r < m, or -1 if there is none
+    a %= m;
+    if(l==0)return 0;
+    if(a==0)return -1;
+    long k = (l+a-1)/a;
+    if(a*k<=r)return k;
+    //No multiple of a lies in [l, r], which is then shorter than a. Count instead the turns y of m: the first y for
+    //which [l+m*y, r+m*y] holds a multiple of a, that is (-m*y) mod a in [l mod a, r mod a].
+    long y = minMultiple(a,(a-(m%a))%a,l%a,r%a);
+    if(y<0)return -1;
+    return (l+(m*y)+a-1)/a;
+  }
+
+  private static long gcd(long a, long b){
+    while(b!=0){
+      long t = a%b;
+      a = b;
+      b = t;
+    }
+    return a;
+  }
+
+  private static final class Mask {
+    //Days x with (x - start) mod period < length, for any of the starts
+    final long period, length;
+    final long[] starts;
+
+    Mask(long period, long length, long... starts){
+      this.period = period;
+      this.length = length;
+      this.starts = starts;
+    }
+
+    boolean contains(long x){
+      for(long s : starts){
+        if(Math.floorMod(x-s,period)<length)return true;
+      }
+      return false;
+    }
+
+    long next(long x, long step){
+      //The first day of x + k*step (k >= 0) inside the mask, or Long.MIN_VALUE if there is none
+      long m = Math.floorMod(step,period);
+      long best = -1;
+      for(long s : starts){
+        long lo = Math.floorMod(s-x,period);
+        long hi = lo+length-1;
+        long k = minMultiple(period,m,lo,Math.min(hi,period-1));
+        if(hi>=period){
+          long k2 = minMultiple(period,m,0,hi-period);
+          if(k2>=0&&(k<0||k2<k))k = k2;
+        }
+        if(k>=0&&(best<0||k<best))best = k;
+      }
+      if(best<0||best>(FAR-x)/step)return Long.MIN_VALUE;
+      return x+(best*step);
+    }
+
+    Mask mirror(){
+      //(x - s) mod p < l  <=>  (-x - s') mod p < l with s' = -(s+l-1)
+      long[] s = new long[starts.length];
+      for(int i=0;i<s.length;i++)s[i] = -(starts[i]+length-1);
+      return new Mask(period,length,s);
+    }
+  }
+
+  private static final class Plan {
+    //Segments of days in order, each a window with the masks that apply in it
+    final long residue, modulus;
+    final boolean satisfiable;
+    final long[] lo, hi;
+    final Mask[][] masks;
+
+    Plan(long residue, long modulus, boolean satisfiable, long[] lo, long[] hi, Mask[][] masks){
+      this.residue = residue;
+      this.modulus = modulus;
+      this.satisfiable = satisfiable;
+      this.lo = lo;
+      this.hi = hi;
+      this.masks = masks;
+    }
+
+    Plan(Congruence c, List<long[]> windows, Mask[] bearer, Mask[] plain, long[] era){
+      //Without a bearer every window takes the plain masks. With one, each window is cut around the era's first
+      //year: the bearer masks apply outside it, and inside it the plain masks if its 8 Kab'an matches, else nothing.
+      List<long[]> seg = new ArrayList<long[]>();
+      List<Mask[]> ms = new ArrayList<Mask[]>();
+      for(long[] w : windows){
+        if(era==null){
+          seg.add(w);
+          ms.add(plain);
+          continue;
+        }
+        long[][] parts = {{w[0],Math.min(w[1],-1)},{Math.max(w[0],0),Math.min(w[1],359)},{Math.max(w[0],360),w[1]}};
+        Mask[][] pm = {bearer,era[1]>=era[0]?plain:null,bearer};
+        for(int i=0;i<3;i++){
+          if(parts[i][0]<=parts[i][1]&&pm[i]!=null){
+            seg.add(parts[i]);
+            ms.add(pm[i]);
+          }
+        }
+      }
+      satisfiable = c.isSatisfiable();
+      residue = satisfiable?c.getResidue():0;
+      modulus = satisfiable?c.getModulus():1;
+      lo = new long[seg.size()];
+      hi = new long[seg.size()];
+      for(int i=0;i<lo.length;i++){
+        lo[i] = seg.get(i)[0];
+        hi[i] = seg.get(i)[1];
+      }
+      masks = ms.toArray(new Mask[0][]);
+    }
+
+    Plan mirror(){
+      int n = lo.length;
+      long[] l = new long[n];
+      long[] h = new long[n];
+      Mask[][] m = new Mask[n][];
+      for(int i=0;i<n;i++){
+        l[n-1-i] = -hi[i];
+        h[n-1-i] = -lo[i];
+        m[n-1-i] = new Mask[masks[i].length];
+        for(int j=0;j<masks[i].length;j++)m[n-1-i][j] = masks[i][j].mirror();
+      }
+      return new Plan(Math.floorMod(-residue,modulus),modulus,satisfiable,l,h,m);
+    }
+
+    long first(long from, long to){
+      //The first match from day from to day to, or Long.MIN_VALUE
+      if(!satisfiable)return Long.MIN_VALUE;
+      for(int i=0;i<lo.length&&lo[i]<=to;i++){
+        if(hi[i]<from)continue;
+        long x = first(Math.max(from,lo[i]),Math.min(to,hi[i]),masks[i]);
+        if(x!=Long.MIN_VALUE)return x;
+      }
+      return Long.MIN_VALUE;
+    }
+
+    long count(long from, long to){
+      long n = 0;
+      for(int i=0;i<lo.length;i++){
+        long a = Math.max(from,lo[i]);
+        long b = Math.min(to,hi[i]);
+        if(a>b||!satisfiable)continue;
+        if(masks[i].length==0){
+          //A bare progression counts in closed form
+          long f = a+Math.floorMod(residue-a,modulus);
+          if(f<=b)n += ((b-f)/modulus)+1;
+          continue;
+        }
+        for(long x=first(a,b,masks[i]);x!=Long.MIN_VALUE;x=first(x+1,b,masks[i])){
+          n++;
+        }
+      }
+      return n;
+    }
+
+    private long first(long from, long to, Mask[] ms){
+      //Walks the progression from day from, jumping into each mask the day falls outside, until a day is in all
+      //Matches repeat with the common period of the progression and the masks, so none in one period means none at all
+      if(from>to)return Long.MIN_VALUE;
+      long period = modulus;
+      for(Mask m : ms){
+        long g = gcd(period,m.period);
+        period = (period/g>FAR/m.period)?FAR:(period/g)*m.period;
+      }
+      if(to-from>=period)to = from+period-1;
+      long x = from+Math.floorMod(residue-from,modulus);
+      while(x<=to){
+        boolean in = true;
+        for(Mask m : ms){
+          if(!m.contains(x)){
+            x = m.next(x,modulus);
+            in = false;
+            if(x==Long.MIN_VALUE||x>to)return Long.MIN_VALUE;
+          }
+        }
+        if(in)return x;
+      }
+      return Long.MIN_VALUE;
+    }
+  }
+
+}
@@ -0,0 +1,151 @@
+/*
+ * Mayan Calendar Cycle Tables
+ * For use with class MayanDate
+ *
+ * Every field of the Calendar Round and the NonLunar Supplementary Series repeats with a fixed period: the Tzolk'in,
+ * Haab' and Year Bearer with the 18980-day Calendar Round, the 819-day station and its Color&Quadrant with 16380 days
+ * (the least common multiple of 819 and 260), and the Lords of the Night with 9. These tables hold one period of each,
+ * packed, so that a field is one modulo and one array load. They take about 150KB and are built once, when the class
+ * is first used.
+ *
+ * MayanDate uses the tables instead of arithmetic only while they are enabled, so the two paths can be compared.
+ * They start enabled if the system property mayandate.tables is "true".
+ *
+ * Switch:
+ * boolean isEnabled() -- Whether MayanDate uses the tables.
+ * void setEnabled(boolean on) -- Turns the tables on or off for every MayanDate.
+ *
+ * Lookups (any MDC, including negative ones, which count back through the cycles):
+ * int tzolkinPos(int day), trecena(int day), veintena(int day) -- Tzolk'in [Position, Trecena, Veintena].
+ * int haabPos(int day), haabDay(int day), haabMonth(int day) -- Haab' [Position, Day, Month].
+ * int stationDistance(int day), quadrant(int day) -- 819-day cycle Station Distance and Color&Quadrant.
+ * int lord(int day), bearerNumber(int day), bearerName(int day), sevenDay(int day) -- NonLunar Supplementary Series.
+ */
+
+public final class CycleTables {
+
+  private static volatile boolean enabled = Boolean.getBoolean("mayandate.tables");
+
+  //Calendar Round, indexed by MDC mod 18980:
+  //Tzolk'in Position (bits 0-8), Trecena (9-12), Veintena (13-17), Haab' Day (18-22), Haab' Month (23-27)
+  private static final int[] ROUND = new int[18980];
+  //Year Bearer, indexed by MDC mod 18980: Number (bits 0-3), Name (4-8)
+  private static final short[] BEARER = new short[18980];
+  //819-day cycle, indexed by MDC mod 16380: Station Distance (bits 0-9), Color&Quadrant (10-11), 7-day cycle (12-14)
+  private static final short[] EIGHT = new short[16380];
+  private static final byte[] LORD = {9,1,2,3,4,5,6,7,8};
+
+  static {
+    for(int d=0;d<18980;d++){
+      int tp = (d+159)%260;
+      int tr = (tp+1)%13;
+      if(tr==0)tr = 13;
+      int hp = (d+348)%365;
+      ROUND[d] = tp|(tr<<9)|(((tp+1)%20)<<13)|((hp%20)<<18)|((hp/20)<<23);
+    }
+    for(int d=0;d<18980;d++){
+      int zero = Math.floorMod(d-((d+348)%365),18980);
+      BEARER[d] = (short)(((ROUND[zero]>>9)&15)|(((ROUND[zero]>>13)&31)<<4));
+    }
+    for(int d=0;d<16380;d++){
+      int dist = (d+3)%819;
+      int station = Math.floorMod(d-dist,16380);
+      int seven = dist%7;
+      if(seven==0)seven = 7;
+      EIGHT[d] = (short)(dist|((((station+159)%260)%4)<<10)|(seven<<12));
+    }
+  }
+
+  private CycleTables(){
+  }
+
+
+  //Switch -----------------------------------------------------------------
+
+  public static boolean isEnabled(){
+    return enabled;
+  }
+
+  public static void setEnabled(boolean on){
+    enabled = on;
+  }
+
+
+  //Lookups ---------------------------------------------------------------
+
+  public static int tzolkinPos(int day){
+    return ROUND[Math.floorMod(day,18980)]&511;
+  }
+
+  public static int trecena(int day){
+    return (ROUND[Math.floorMod(day,18980)]>>9)&15;
+  }
+
+  public static int veintena(int day){
+    return (ROUND[Math.floorMod(day,18980)]>>13)&31;
+  }
+
+  public static int haabDay(int day){
+    return (ROUND[Math.floorMod(day,18980)]>>18)&31;
+  }
+
+  public static int haabMonth(int day){
+    return ROUND[Math.floorMod(day,18980)]>>>23;
+  }
+
+  public static int haabPos(int day){
+    int r = ROUND[Math.floorMod(day,18980)];
+    return ((r>>>23)*20)+((r>>18)&31);
+  }
+
+  public static int stationDistance(int day){
+    return EIGHT[Math.floorMod(day,16380)]&1023;
+  }
+
+  public static int quadrant(int day){
+    return (EIGHT[Math.floorMod(day,16380)]>>10)&3;
+  }
+
+  public static int sevenDay(int day){
+    return EIGHT[Math.floorMod(day,16380)]>>12;
+  }
+
+  public static int lord(int day){
+    return LORD[Math.floorMod(day,9)];
+  }
+
+  public static int bearerNumber(int day){
+    //MayanDate counts the first (partial) year of the era as an 8 Kab'an year.
+    if(day>=0&&day<360)return 8;
+    return BEARER[Math.floorMod(day,18980)]&15;
+  }
+
+  public static int bearerName(int day){
+    if(day>=0&&day<360)return 17;
+    return BEARER[Math.floorMod(day,18980)]>>4;
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  static void fill(int day, int[] tzolkin, int[] haab, int[] eight, int[] supp){
+    //Fills MayanDate's derived arrays.
+    int r = ROUND[Math.floorMod(day,18980)];
+    int b = BEARER[Math.floorMod(day,18980)];
+    int e = EIGHT[Math.floorMod(day,16380)];
+    tzolkin[0] = r&511;
+    tzolkin[1] = (r>>9)&15;
+    tzolkin[2] = (r>>13)&31;
+    haab[1] = (r>>18)&31;
+    haab[2] = r>>>23;
+    haab[0] = (haab[2]*20)+haab[1];
+    eight[0] = e&1023;
+    eight[1] = day-eight[0];
+    eight[2] = (e>>10)&3;
+    supp[0] = LORD[Math.floorMod(day,9)];
+    supp[1] = (day>=0&&day<360)?8:b&15;
+    supp[2] = (day>=0&&day<360)?17:b>>4;
+    supp[3] = e>>12;
+  }
+
+}
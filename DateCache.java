@@ -0,0 +1,420 @@
+import java.util.Arrays;
+import java.util.function.IntFunction;
+
+/*
+ * Mayan Date Cache
+ * For use with classes MayanDay, MayanService, MayanDateServer and MayanDateCalculator
+ *
+ * Bounded, thread-safe cache of whatever is derived from a date, keyed by its MDC: a MayanDay with its Gregorian date
+ * already worked out, a rendered record, the GUI's console text. Lookups of a handful of popular dates (today, famous
+ * monuments, period endings) then cost a hash probe instead of a fresh conversion. Values are made by the loader given
+ * to the constructor on a miss, outside any lock, and must be immutable or never changed once made.
+ *
+ * The cache is split into segments by MDC, each with its own lock and its own share of the size limit, so that threads
+ * looking up different dates seldom wait on one another. Each segment keeps its entries in intrusive linked lists over
+ * plain arrays, so a hit allocates nothing. Two eviction policies:
+ *   LRU      -- The least recently used entry goes.
+ *   TINY_LFU -- (W-TinyLFU) New entries wait in a small LRU window (1% of the size); leaving it, an entry is admitted to
+ *               the main space only if it has been asked for more often than the entry it would displace. Frequencies
+ *               are kept approximately, in a count-min sketch of 4 counters per date that are halved every 10 lookups
+ *               per entry, so the cache follows a change in what is popular. The main space is itself split into
+ *               probation (20%) and protected (80%) LRU lists; a second hit moves an entry from the one to the other.
+ *               A burst of one-off lookups, such as a scan over a range, cannot flush the popular dates out.
+ *
+ * Constructors:
+ * DateCache(int maxSize, int policy, IntFunction<V> loader) -- A cache of at most maxSize values (at least 1), made by loader.
+ * static DateCache<MayanDay> days(int maxSize, int policy) -- A cache of MayanDays with their Gregorian dates derived.
+ *
+ * Lookups:
+ * V get(int days) -- The value for the given MDC, loaded and kept if not already held.
+ * V getIfPresent(int days) -- The value for the given MDC if held, or null. Counts as a hit or miss, but loads nothing.
+ * void clear() -- Drops every value. The counters carry on.
+ *
+ * Accessors:
+ * int size(), getMaxSize(), getPolicy() -- The number of values held, the size limit and the policy.
+ * long getHits(), getMisses(), getEvictions() -- The number of lookups answered from the cache, lookups that were not,
+ *   and values dropped to make room, since the cache was made.
+ * double getHitRate() -- Hits as a fraction of lookups (0 before the first).
+ * static int policy(String name) -- The policy named "lru" or "tinylfu" (any case), or -1.
+ * String toString() -- The size and counters, as "4096 of 4096 dates (tinylfu), 1734 hits, 213 misses (89.1% hits), 0 evictions".
+ */
+
+public final class DateCache<V> {
+
+  public static final int LRU = 0;
+  public static final int TINY_LFU = 1;
+  private static final String[] POLICIES = {"lru","tinylfu"};
+
+  //Segments hold at least this many values each, so that small caches still evict close to true LRU order
+  private static final int MIN_SEGMENT = 64;
+
+  private final IntFunction<? extends V> loader;
+  private final Segment[] segments;
+  private final int shift;
+  private final int maxSize, policy;
+
+
+  //Constructors ----------------------------------------------------------
+
+  public DateCache(int maxSize, int policy, IntFunction<? extends V> loader){
+    if(maxSize<1)throw new IllegalArgumentException("Cache size must be at least 1");
+    if(policy!=LRU&&policy!=TINY_LFU)throw new IllegalArgumentException("No cache policy "+policy);
+    this.maxSize = maxSize;
+    this.policy = policy;
+    this.loader = loader;
+    //A power of two segments, about two per processor, but none smaller than MIN_SEGMENT
+    int n = 1;
+    int want = Math.min(Runtime.getRuntime().availableProcessors()*2,Math.max(1,maxSize/MIN_SEGMENT));
+    while(n*2<=want)n *= 2;
+    shift = 32-Integer.numberOfTrailingZeros(n);
+    segments = new Segment[n];
+    for(int i=0;i<n;i++){
+      segments[i] = new Segment(maxSize/n+(i<maxSize%n?1:0),policy==TINY_LFU);
+    }
+  }
+
+  public static DateCache<MayanDay> days(int maxSize, int policy){
+    return new DateCache<MayanDay>(maxSize,policy,d -> {
+      MayanDay out = MayanDay.of(d);
+      out.getYear();
+      return out;
+    });
+  }
+
+
+  //Lookups ---------------------------------------------------------------
+
+  @SuppressWarnings("unchecked")
+  public V get(int days){
+    int h = mix(days);
+    Segment s = segment(h);
+    Object v;
+    synchronized(s){
+      v = s.lookup(days,h);
+    }
+    if(v!=null)return (V)v;
+    //Load outside the lock; a thread that loaded the same date first wins, and both get its value
+    V made = loader.apply(days);
+    if(made==null)return null;
+    synchronized(s){
+      return (V)s.insert(days,h,made);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  public V getIfPresent(int days){
+    int h = mix(days);
+    Segment s = segment(h);
+    synchronized(s){
+      return (V)s.lookup(days,h);
+    }
+  }
+
+  public void clear(){
+    for(Segment s : segments){
+      synchronized(s){
+        s.clear();
+      }
+    }
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public int size(){
+    int n = 0;
+    for(Segment s : segments){
+      synchronized(s){
+        n += s.size;
+      }
+    }
+    return n;
+  }
+
+  public int getMaxSize(){
+    return maxSize;
+  }
+
+  public int getPolicy(){
+    return policy;
+  }
+
+  public long getHits(){
+    long n = 0;
+    for(Segment s : segments){
+      synchronized(s){
+        n += s.hits;
+      }
+    }
+    return n;
+  }
+
+  public long getMisses(){
+    long n = 0;
+    for(Segment s : segments){
+      synchronized(s){
+        n += s.misses;
+      }
+    }
+    return n;
+  }
+
+  public long getEvictions(){
+    long n = 0;
+    for(Segment s : segments){
+      synchronized(s){
+        n += s.evictions;
+      }
+    }
+    return n;
+  }
+
+  public double getHitRate(){
+    long h = getHits();
+    long all = h+getMisses();
+    return (all==0)?0:(double)h/all;
+  }
+
+  public static int policy(String name){
+    for(int i=0;i<POLICIES.length;i++){
+      if(POLICIES[i].equalsIgnoreCase(name))return i;
+    }
+    return -1;
+  }
+
+  public String toString(){
+    long h = getHits();
+    long m = getMisses();
+    return size()+" of "+maxSize+" dates ("+POLICIES[policy]+"), "+h+" hits, "+m+" misses ("
+      +String.format("%.1f",(h+m==0)?0.0:100.0*h/(h+m))+"% hits), "+getEvictions()+" evictions";
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private static int mix(int days){
+    //Spreads neighbouring MDCs over the hash table; segment() mixes again for the segment
+    int h = days*0x9E3779B9;
+    return h^(h>>>16);
+  }
+
+  private Segment segment(int h){
+    return (shift==32)?segments[0]:segments[(h*0x85EBCA6B)>>>shift];
+  }
+
+  private static final class Segment {
+
+    //Lists, by the node index of their sentinel (cap+1 nodes hold entries, one spare for the moment of overflow)
+    private static final byte WINDOW = 0, PROBATION = 1, PROTECTED = 2;
+
+    private final int cap, windowCap, protectedCap;
+    private final boolean lfu;
+
+    //Entries: key, value, list links and list, by node index
+    private final int[] keys, prev, next;
+    private final Object[] vals;
+    private final byte[] list;
+    private final int[] listSize = new int[3];
+    private final int sentinel;
+    private int fresh, free = -1;       //Next never-used node, and the head of the free nodes chained through next
+    int size;
+
+    //Open-addressed table of node+1 (0 empty), linear probing
+    private final int[] table;
+    private final int mask;
+
+    //Count-min sketch: 4 rows of 4-bit counters (one per byte), halved every sampleMax increments
+    private final byte[] sketch;
+    private final int sketchMask, sampleMax;
+    private int samples;
+
+    long hits, misses, evictions;
+
+    Segment(int cap, boolean lfu){
+      this.cap = cap;
+      this.lfu = lfu;
+      windowCap = lfu?Math.max(1,cap/100):cap;
+      protectedCap = (cap-windowCap)*4/5;
+      sentinel = cap+1;
+      keys = new int[cap+1];
+      vals = new Object[cap+1];
+      list = new byte[cap+1];
+      prev = new int[cap+4];
+      next = new int[cap+4];
+      for(int l=0;l<3;l++){
+        prev[sentinel+l] = sentinel+l;
+        next[sentinel+l] = sentinel+l;
+      }
+      int t = Integer.highestOneBit(Math.max(2,(cap+1)*2-1))*2;
+      table = new int[t];
+      mask = t-1;
+      if(lfu){
+        int w = Integer.highestOneBit(Math.max(1,cap*2-1))*2;
+        sketch = new byte[4*w];
+        sketchMask = w-1;
+        sampleMax = 10*cap;
+      }else{
+        sketch = null;
+        sketchMask = 0;
+        sampleMax = 0;
+      }
+    }
+
+    Object lookup(int key, int h){
+      if(lfu)increment(key);
+      int n = find(key,h);
+      if(n<0){
+        misses++;
+        return null;
+      }
+      hits++;
+      if(list[n]==PROBATION){
+        //A second hit: promote, demoting the coldest protected entry if that overfills the protected list
+        move(n,PROTECTED);
+        if(listSize[PROTECTED]>protectedCap)move(prev[sentinel+PROTECTED],PROBATION);
+      }else{
+        move(n,list[n]);
+      }
+      return vals[n];
+    }
+
+    Object insert(int key, int h, Object v){
+      int n = find(key,h);
+      if(n>=0)return vals[n];
+      if(free>=0){
+        n = free;
+        free = next[n];
+      }else{
+        n = fresh++;
+      }
+      keys[n] = key;
+      vals[n] = v;
+      int i = h&mask;
+      while(table[i]!=0)i = (i+1)&mask;
+      table[i] = n+1;
+      link(n,WINDOW);
+      size++;
+      if(!lfu){
+        if(size>cap)remove(prev[sentinel+WINDOW]);
+        return v;
+      }
+      if(listSize[WINDOW]>windowCap){
+        //The window's oldest entry moves to probation, and if that overfills the segment, it is admitted only in
+        //place of a less frequent entry
+        int candidate = prev[sentinel+WINDOW];
+        move(candidate,PROBATION);
+        if(size>cap){
+          int victim = prev[sentinel+PROBATION];
+          if(victim==candidate)victim = prev[sentinel+PROTECTED];
+          if(victim>=sentinel||frequency(keys[candidate])<=frequency(keys[victim])){
+            remove(candidate);
+          }else{
+            remove(victim);
+          }
+        }
+      }
+      return v;
+    }
+
+    void clear(){
+      Arrays.fill(table,0);
+      Arrays.fill(vals,null);
+      for(int l=0;l<3;l++){
+        prev[sentinel+l] = sentinel+l;
+        next[sentinel+l] = sentinel+l;
+        listSize[l] = 0;
+      }
+      size = 0;
+      fresh = 0;
+      free = -1;
+    }
+
+    private int find(int key, int h){
+      for(int i=h&mask;;i=(i+1)&mask){
+        int t = table[i];
+        if(t==0)return -1;
+        if(keys[t-1]==key)return t-1;
+      }
+    }
+
+    private void remove(int n){
+      //Unlinks node n, frees it, and closes the gap it leaves in the table by shifting later entries of its run back
+      int i = mix(keys[n])&mask;
+      while(table[i]!=n+1)i = (i+1)&mask;
+      for(int j=i;;){
+        j = (j+1)&mask;
+        int t = table[j];
+        if(t==0)break;
+        int home = mix(keys[t-1])&mask;
+        if((i<=j)?(i<home&&home<=j):(i<home||home<=j))continue;
+        table[i] = t;
+        i = j;
+      }
+      table[i] = 0;
+      unlink(n);
+      vals[n] = null;
+      next[n] = free;
+      free = n;
+      size--;
+      evictions++;
+    }
+
+    private void move(int n, byte l){
+      //To the most recent end of list l
+      unlink(n);
+      link(n,l);
+    }
+
+    private void link(int n, byte l){
+      int s = sentinel+l;
+      int first = next[s];
+      prev[n] = s;
+      next[n] = first;
+      prev[first] = n;
+      next[s] = n;
+      list[n] = l;
+      listSize[l]++;
+    }
+
+    private void unlink(int n){
+      next[prev[n]] = next[n];
+      prev[next[n]] = prev[n];
+      listSize[list[n]]--;
+    }
+
+    private void increment(int key){
+      boolean added = false;
+      for(int r=0;r<4;r++){
+        int i = (r*(sketchMask+1))+(spread(key,r)&sketchMask);
+        if(sketch[i]<15){
+          sketch[i]++;
+          added = true;
+        }
+      }
+      if(added&&++samples>=sampleMax){
+        //Age every counter, so that dates popular long ago give way
+        for(int i=0;i<sketch.length;i++){
+          sketch[i] = (byte)(sketch[i]>>1);
+        }
+        samples /= 2;
+      }
+    }
+
+    private int frequency(int key){
+      int f = 15;
+      for(int r=0;r<4;r++){
+        f = Math.min(f,sketch[(r*(sketchMask+1))+(spread(key,r)&sketchMask)]);
+      }
+      return f;
+    }
+
+    private static int spread(int key, int r){
+      //An independent hash of key for each sketch row
+      int h = (key+r)*(0x27D4EB2F+(r<<17));
+      h ^= h>>>15;
+      h *= 0x85EBCA77;
+      return h^(h>>>13);
+    }
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Mayan Date Batch Engine
+ * For use with classes MayanDate and Correlation
+ *
+ * The column converters of MayanDate behind one interface, so that a faster implementation can stand in for them where
+ * the platform has one. get() picks the engine at runtime: the SIMD engine VectorDateEngine (in incubator/, built on the
+ * incubating Vector API) when it has been compiled onto the classpath and the JVM was started with
+ * --add-modules jdk.incubator.vector, and otherwise the scalar engine, which is MayanDate's own batch converters.
+ * The system property mayandate.engine set to "scalar" or "vector" forces the choice ("vector" fails if it cannot load).
+ *
+ * Every engine gives exactly the results of the scalar one for every int MDC, and for every Gregorian date (months 1 to
+ * 12) whose MDC is an int. Engines are stateless past their correlation and may be shared between threads.
+ *
+ * Engines:
+ * static DateEngine get() -- The fastest engine available, under GMT.
+ * static DateEngine get(Correlation c) -- Ditto, under correlation c.
+ * static DateEngine scalar(Correlation c) -- The scalar engine, under correlation c.
+ *
+ * Batch Converters (as the MayanDate methods of the same names: each reads the slice [off, off+len) of its input
+ * columns and fills the same indices of caller-supplied output columns, without allocating):
+ * void longCount(int[] days, int off, int len, int[] bak, int[] kat, int[] tun, int[] win, int[] kin) -- MDC column to Long Count columns.
+ * void mdcGREG(int[] days, int off, int len, int[] day, int[] month, int[] year) -- MDC column to Gregorian columns.
+ * void gregMDC(int[] day, int[] month, int[] year, int off, int len, int[] days) -- Gregorian columns to MDC column.
+ * void tzolkinOf(int[] days, int off, int len, int[] trecena, int[] veintena) -- MDC column to Tzolk'in columns.
+ * void haabOf(int[] days, int off, int len, int[] day, int[] month) -- MDC column to Haab' columns.
+ *
+ * String getName() -- "scalar" or "vector", with the lane count of the latter.
+ * Correlation getCorrelation() -- The correlation used for Gregorian dates.
+ */
+
+public interface DateEngine {
+
+  void longCount(int[] days, int off, int len, int[] bak, int[] kat, int[] tun, int[] win, int[] kin);
+  void mdcGREG(int[] days, int off, int len, int[] dd, int[] mm, int[] yy);
+  void gregMDC(int[] dd, int[] mm, int[] yy, int off, int len, int[] days);
+  void tzolkinOf(int[] days, int off, int len, int[] trecena, int[] veintena);
+  void haabOf(int[] days, int off, int len, int[] hday, int[] hmonth);
+
+  String getName();
+  Correlation getCorrelation();
+
+
+  //Engines -------------------------------------------------------------------
+
+  static DateEngine get(){
+    return get(Correlation.GMT);
+  }
+
+  static DateEngine get(Correlation c){
+    String want = System.getProperty("mayandate.engine","");
+    if(want.equalsIgnoreCase("scalar"))return scalar(c);
+    try{
+      //By name, so that the rest of the tree builds and runs without the incubator module
+      return (DateEngine)Class.forName("VectorDateEngine").getConstructor(Correlation.class).newInstance(c);
+    }catch(ReflectiveOperationException|LinkageError|RuntimeException e){
+      if(want.equalsIgnoreCase("vector"))throw new IllegalStateException("The vector engine is not available: "+e,e);
+      return scalar(c);
+    }
+  }
+
+  static DateEngine scalar(Correlation c){
+    return new Scalar(c);
+  }
+
+
+  //Scalar engine ---------------------------------------------------------------
+
+  final class Scalar implements DateEngine {
+
+    //The batch converters read nothing of the date but its correlation
+    private final MayanDate conv;
+
+    Scalar(Correlation c){
+      conv = new MayanDate(0,c);
+    }
+
+    public void longCount(int[] days, int off, int len, int[] bak, int[] kat, int[] tun, int[] win, int[] kin){
+      conv.longCount(days,off,len,bak,kat,tun,win,kin);
+    }
+
+    public void mdcGREG(int[] days, int off, int len, int[] dd, int[] mm, int[] yy){
+      conv.mdcGREG(days,off,len,dd,mm,yy);
+    }
+
+    public void gregMDC(int[] dd, int[] mm, int[] yy, int off, int len, int[] days){
+      conv.gregMDC(dd,mm,yy,off,len,days);
+    }
+
+    public void tzolkinOf(int[] days, int off, int len, int[] trecena, int[] veintena){
+      conv.tzolkinOf(days,off,len,trecena,veintena);
+    }
+
+    public void haabOf(int[] days, int off, int len, int[] hday, int[] hmonth){
+      conv.haabOf(days,off,len,hday,hmonth);
+    }
+
+    public String getName(){
+      return "scalar";
+    }
+
+    public Correlation getCorrelation(){
+      return conv.getCorrelation();
+    }
+  }
+
+}
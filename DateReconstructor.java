@@ -0,0 +1,251 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ * Mayan Date Reconstructor
+ * For use with classes MayanDate, MayanDay, Congruence and LunarSeries
+ *
+ * Recovers the dates an inscription can stand for from whatever of it is legible: a Calendar Round with eroded parts,
+ * a partial Long Count, a Lord of the Night, a Year Bearer, a 7-day cycle value, a Lunar Series, a place in the Venus
+ * Round, and a plausible window of days. Every field left unset (or set to -1) is a wildcard. Fields that fix the MDC
+ * modulo a cycle length are merged into one arithmetic progression (see Congruence); only the days of that progression
+ * inside the window are then checked against the remaining fields, split across cores when there are many of them.
+ *
+ * Constraints (each returns this reconstructor, so that calls may be chained):
+ * setTzolkin(int trecena, int veintena) -- Tzolk'in number (1-13) and name (0-19).
+ * setHaab(int day, int month) -- Haab' day (0-19) and month (0-18).
+ * setLongCount(int[] longCount) -- [Bak'tun, K'atun, Tun, Winal, K'in], with -1 for each illegible place.
+ * setLord(int g) -- Lord of the Night (1-9).
+ * setBearer(int number, int name) -- Year Bearer number (1-13) and name (Tzolk'in, 0-19).
+ * setSevenDay(int s) -- 7-day cycle (1-7).
+ * setMoonAge(int age, int slack) -- Moon age (Glyphs D and E, 0-29), give or take slack days (see class LunarSeries; GMT).
+ * setGlyphC(int c) -- Place of the lunation in its group of six (1-6), in LunarSeries' count.
+ * setGlyphA(int length) -- Length of the lunation (29 or 30).
+ * setVenus(int pos) -- Days into the Dresden Venus Round (0-583).
+ * setWindow(int from, int to) -- Only consider MDCs from day from to day to, inclusive (default: the current 13-bak'tun era).
+ * setGregWindow(int d1, int m1, int y1, int d2, int m2, int y2) -- Ditto, between two astronomical Gregorian dates.
+ * setAnchor(int day) -- Rank candidates by their distance from this MDC (default: the middle of the window).
+ *
+ * Results:
+ * int[] solve() -- Every candidate MDC in the window, nearest the anchor first.
+ * int count() -- The number of candidates in the window.
+ * Congruence getProgression() -- The progression the exact constraints reduce to.
+ */
+
+public class DateReconstructor {
+
+  //Progressions longer than this are searched in parallel
+  private static final int SPLIT = 1<<14;
+
+  private static final int[] PLACES = {144000,7200,360,20,1};
+
+  private int trecena = -1, veintena = -1, haabDay = -1, haabMonth = -1, lord = -1, bearerNumber = -1, bearerName = -1, sevenDay = -1;
+  private int moonAge = -1, moonSlack = 0, glyphC = -1, glyphA = -1, venus = -1;
+  private int[] lc = {-1,-1,-1,-1,-1};
+  private int from = 0;
+  private int to = (13*144000)-1;
+  private boolean anchored = false;
+  private int anchor;
+
+
+  //Constraints ---------------------------------------------------------
+
+  public DateReconstructor setTzolkin(int t, int v){
+    trecena = t;
+    veintena = v;
+    return this;
+  }
+
+  public DateReconstructor setHaab(int d, int m){
+    haabDay = d;
+    haabMonth = m;
+    return this;
+  }
+
+  public DateReconstructor setLongCount(int[] l){
+    if(l.length!=5)throw new IllegalArgumentException("Not a Long Count: "+l.length+" places");
+    lc = l.clone();
+    return this;
+  }
+
+  public DateReconstructor setLord(int g){
+    lord = g;
+    return this;
+  }
+
+  public DateReconstructor setBearer(int number, int name){
+    bearerNumber = number;
+    bearerName = name;
+    return this;
+  }
+
+  public DateReconstructor setSevenDay(int s){
+    sevenDay = s;
+    return this;
+  }
+
+  public DateReconstructor setMoonAge(int age, int slack){
+    moonAge = age;
+    moonSlack = Math.max(slack,0);
+    return this;
+  }
+
+  public DateReconstructor setGlyphC(int c){
+    glyphC = c;
+    return this;
+  }
+
+  public DateReconstructor setGlyphA(int length){
+    glyphA = length;
+    return this;
+  }
+
+  public DateReconstructor setVenus(int pos){
+    venus = pos;
+    return this;
+  }
+
+  public DateReconstructor setWindow(int f, int t){
+    from = Math.min(f,t);
+    to = Math.max(f,t);
+    return this;
+  }
+
+  public DateReconstructor setGregWindow(int d1, int m1, int y1, int d2, int m2, int y2){
+    MayanDate conv = new MayanDate(0);
+    return setWindow(conv.gregMDC(d1,m1,y1),conv.gregMDC(d2,m2,y2));
+  }
+
+  public DateReconstructor setAnchor(int day){
+    anchored = true;
+    anchor = day;
+    return this;
+  }
+
+
+  //Results ---------------------------------------------------------------
+
+  public Congruence getProgression(){
+    //Merges every constraint that fixes the MDC modulo a cycle length.
+    Congruence c = Congruence.any();
+    if(trecena>=0)c = c.and(Congruence.trecena(trecena));
+    if(veintena>=0)c = c.and(Congruence.veintena(veintena));
+    if(haabDay>=0&&haabMonth>=0)c = c.and(Congruence.haab(haabDay,haabMonth));
+    if(lord>=0)c = c.and(Congruence.lord(lord));
+    if(sevenDay>=0)c = c.and(Congruence.sevenDay(sevenDay));
+    if(venus>=0)c = c.and(Congruence.venus(venus));
+    //The legible low places of the Long Count fix the MDC modulo the lowest illegible place.
+    int known = 0;
+    int mod = 1;
+    for(int i=4;i>=1&&lc[i]>=0;i--){
+      known += lc[i]*PLACES[i];
+      mod = PLACES[i-1];
+    }
+    if(mod>1)c = c.and(known,mod);
+    return c;
+  }
+
+  public int[] solve(){
+    int[] found = search();
+    //Rank by distance from the anchor, earlier first on ties, by sorting packed (distance, offset) keys.
+    int mid = anchored?anchor:from+((to-from)/2);
+    long[] keys = new long[found.length];
+    for(int i=0;i<found.length;i++){
+      keys[i] = (Math.abs(found[i]-(long)mid)<<32)|((found[i]-(long)from)&0xffffffffL);
+    }
+    Arrays.sort(keys);
+    for(int i=0;i<keys.length;i++){
+      found[i] = (int)(from+(keys[i]&0xffffffffL));
+    }
+    return found;
+  }
+
+  public int count(){
+    return search().length;
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private int[] search(){
+    //Returns every candidate in the window, in MDC order, recording the days of the progression tried.
+    long t = MayanMetrics.start();
+    Congruence c = getProgression();
+    long lo = from;
+    long hi = to;
+    //The legible high places of the Long Count narrow the window.
+    long base = 0;
+    for(int i=0;i<5&&lc[i]>=0;i++){
+      base += (long)lc[i]*PLACES[i];
+      lo = Math.max(lo,base);
+      hi = Math.min(hi,base+PLACES[i]-1);
+    }
+    long n = (!c.isSatisfiable()||lo>hi)?0:c.count(lo,hi);
+    int[] out = new int[0];
+    if(n>0){
+      Search s = new Search(c.first(lo),c.getModulus(),0,n);
+      out = (n<=SPLIT)?s.compute():ForkJoinPool.commonPool().invoke(s);
+    }
+    MayanMetrics.stop(MayanMetrics.RECOVER,t,n,out.length);
+    return out;
+  }
+
+  private boolean matches(int x){
+    //Checks the constraints the progression does not already guarantee.
+    MayanDay d = MayanDay.of(x);
+    if(haabDay>=0&&d.getHaabDay()!=haabDay)return false;
+    if(haabMonth>=0&&d.getHaabMonth()!=haabMonth)return false;
+    if(bearerNumber>=0&&d.getBearerNumber()!=bearerNumber)return false;
+    if(bearerName>=0&&d.getBearerName()!=bearerName)return false;
+    if(lc[1]>=0&&d.getKatun()!=lc[1])return false;
+    if(lc[2]>=0&&d.getTun()!=lc[2])return false;
+    if(lc[3]>=0&&d.getWinal()!=lc[3])return false;
+    //The moon follows no cycle of whole days, so it is checked last, one division per field.
+    if(glyphC>=0&&d.getGlyphC()!=glyphC)return false;
+    if(moonAge>=0||glyphA>=0){
+      int length = d.getMonthLength();
+      if(glyphA>=0&&length!=glyphA)return false;
+      if(moonAge>=0){
+        //Ages are compared around the lunation, so that an age of 29 may match a new moon a day late.
+        int off = Math.floorMod(d.getMoonAge()-moonAge,length);
+        if(Math.min(off,length-off)>moonSlack)return false;
+      }
+    }
+    return true;
+  }
+
+  private class Search extends RecursiveTask<int[]> {
+    //Checks the k-th days of the progression start + k*step for k in [lo, hi).
+    private static final long serialVersionUID = 1L;
+    private final long start, step, lo, hi;
+
+    Search(long start, long step, long lo, long hi){
+      this.start = start;
+      this.step = step;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected int[] compute(){
+      if(hi-lo>SPLIT){
+        long mid = (lo+hi)>>>1;
+        Search left = new Search(start,step,lo,mid);
+        left.fork();
+        int[] right = new Search(start,step,mid,hi).compute();
+        int[] l = left.join();
+        int[] out = Arrays.copyOf(l,l.length+right.length);
+        System.arraycopy(right,0,out,l.length,right.length);
+        return out;
+      }
+      int[] out = new int[(int)(hi-lo)];
+      int n = 0;
+      for(long k=lo;k<hi;k++){
+        int x = (int)(start+(k*step));
+        if(matches(x))out[n++] = x;
+      }
+      return Arrays.copyOf(out,n);
+    }
+  }
+
+}
@@ -0,0 +1,490 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/*
+ * Mayan Distance Number Chain Evaluator
+ * For use with classes MayanDate, MayanLong, MayanParser, MayanFormat and Congruence
+ *
+ * An inscription commonly opens with an Initial Series date (the anchor) and then counts on from it by a string of
+ * Distance Numbers, each landing on a date the scribe also wrote as a Calendar Round. A DistanceChain holds the anchor,
+ * each signed Distance Number in days, and the Calendar Round (or just the Tzolk'in or Haab') written at each step, and
+ * resolves every date of the chain in one pass of integer arithmetic. Each written Calendar Round is kept as a
+ * Congruence, so checking a step is a single modulo, and a step that fails the check gets the nearest date that passes
+ * it (earlier on a tie): that date's distance from the written one is how far the Distance Number is out.
+ *
+ * Each Distance Number counts from the date of the step before unless added with addFrom, which counts from any
+ * earlier step (as when a text counts back to its Initial Series). With setRepair, a step found inconsistent hands on
+ * its nearest consistent date rather than the date as written, so that one misread Distance Number does not throw out
+ * every check after it.
+ *
+ * Building (each returns this chain, so that calls may be chained):
+ * DistanceChain(int anchor) -- A chain opening at MDC anchor, unchecked.
+ * DistanceChain(int anchor, Congruence check) -- Ditto, with the anchor's Calendar Round (null for none).
+ * add(int distance) -- Counts distance days (negative for a count back) from the last step.
+ * add(int distance, Congruence check) -- Ditto, checked against the given Calendar Round.
+ * addFrom(int step, int distance, Congruence check) -- Counts from the given earlier step (0 for the anchor).
+ * setRepair(boolean r) -- Whether inconsistent steps hand on their nearest consistent date (default false).
+ *
+ * Resolving:
+ * DistanceChain solve() -- Resolves every step; the results below are then valid until the chain is changed. Throws
+ *   ArithmeticException if a step lands outside the int range of MDCs.
+ * static void solveAll(DistanceChain[] chains) -- Solves many chains at once, split across cores. A chain that cannot be
+ *   solved is left unsolved, and does not stop the others.
+ * String getError() -- Why solveAll could not solve the chain, or null.
+ *
+ * Results, by step (0 is the anchor):
+ * int size() -- The number of steps, anchor included.
+ * int getDate(int step) -- The MDC the step lands on.
+ * int getStatus(int step) -- UNCHECKED, CONSISTENT, INCONSISTENT, or IMPOSSIBLE (the written Calendar Round never occurs).
+ * int getNearest(int step) -- The nearest MDC consistent with the step's Calendar Round (the date itself if it is).
+ * int getCorrection(int step) -- getNearest(step) - getDate(step): the days to add to the Distance Number to make it agree.
+ * int getReading(int step) -- The Distance Number (or for the anchor, the MDC) that would agree.
+ * int getFirstInconsistent() -- The first step not consistent with its Calendar Round, or -1 if there is none.
+ *
+ * Text:
+ * static DistanceChain parse(CharSequence text, int start, int end, MayanParser p) -- Reads a chain written as
+ *   anchor [check]; [+|-]distance [check]; ...
+ *   where the anchor is anything p.parseDate reads, each distance is a Distance Number of any number of places with
+ *   the K'in last (2.4.17 is 2 Tun 4 Winal 17 K'in, 817 days), and each check is a Calendar Round (8 Ajaw 13 Keh),
+ *   a Tzolk'in (8 Ajaw) or a Haab' (13 Keh). Throws IllegalArgumentException, with the position, if it cannot.
+ * static int distance(int... places) -- The days in a Distance Number given place by place, K'in last.
+ *
+ * Usage: java DistanceChain [-repair] [-correlation name] <input file> <output file, or - for standard output>
+ * reads one chain per line (blank lines and lines starting with # are skipped), solves them all in parallel and writes
+ * one CSV row per step:
+ *   chain,step,distance,mdc,long_count,calendar_round,status,nearest,nearest_long_count,correction,reading
+ *   1,1,2.4.17,1365177,9.9.12.2.17,12 Kab'an 0 Sots',inconsistent,1365178,9.9.12.2.18,1,2.4.18
+ * where chain is the line number, distance and reading are Distance Numbers (for the anchor, Long Counts) and the
+ * nearest columns are empty for steps without a check. Lines that cannot be read or solved give a row with ERROR as the
+ * step.
+ */
+
+public class DistanceChain {
+
+  public static final int UNCHECKED = 0, CONSISTENT = 1, INCONSISTENT = 2, IMPOSSIBLE = 3;
+
+  private static final String[] STATUS_NAMES = {"unchecked","consistent","inconsistent","impossible"};
+  //Chains per task in solveAll
+  private static final int SPLIT = 64;
+
+  //Steps: step 0 is the anchor, with from -1 and the anchor MDC as its distance
+  private int n;
+  private int[] from = new int[8];
+  private int[] dist = new int[8];
+  private Congruence[] check = new Congruence[8];
+  private boolean repair = false;
+
+  //Results, filled by solve()
+  private boolean solved = false;
+  private int[] date, status, nearest;
+  private String error;              //Why solveAll could not solve the chain
+
+
+  //Constructors ------------------------------------------------------------
+
+  public DistanceChain(int anchor){
+    this(anchor,null);
+  }
+
+  public DistanceChain(int anchor, Congruence c){
+    push(-1,anchor,c);
+  }
+
+
+  //Building ------------------------------------------------------------
+
+  public DistanceChain add(int distance){
+    return addFrom(n-1,distance,null);
+  }
+
+  public DistanceChain add(int distance, Congruence c){
+    return addFrom(n-1,distance,c);
+  }
+
+  public DistanceChain addFrom(int step, int distance, Congruence c){
+    if(step<0||step>=n)throw new IllegalArgumentException("No step "+step+" to count from");
+    push(step,distance,c);
+    return this;
+  }
+
+  public DistanceChain setRepair(boolean r){
+    repair = r;
+    solved = false;
+    return this;
+  }
+
+  public static int distance(int... places){
+    long d = 0;
+    for(int i=0;i<places.length;i++){
+      d = Math.addExact(d,Math.multiplyExact(places[i],MayanLong.unit(places.length-1-i)));
+    }
+    return Math.toIntExact(d);
+  }
+
+
+  //Resolving ------------------------------------------------------------
+
+  public DistanceChain solve(){
+    if(date==null||date.length<n){
+      date = new int[n];
+      status = new int[n];
+      nearest = new int[n];
+    }
+    for(int i=0;i<n;i++){
+      //The anchor counts from day 0; every other step from the (possibly repaired) date of its base
+      int base = from[i]<0?0:(repair?nearest[from[i]]:date[from[i]]);
+      long sum = (long)base+dist[i];
+      if(sum!=(int)sum)throw new ArithmeticException("Step "+i+" lands past the int range of MDCs");
+      int d = (int)sum;
+      date[i] = d;
+      nearest[i] = d;
+      Congruence c = check[i];
+      if(c==null){
+        status[i] = UNCHECKED;
+      }else if(!c.isSatisfiable()){
+        status[i] = IMPOSSIBLE;
+      }else if(Math.floorMod(d-c.getResidue(),c.getModulus())==0){
+        status[i] = CONSISTENT;
+      }else{
+        status[i] = INCONSISTENT;
+        long after = c.first(d);
+        long before = c.last(d);
+        long near = (after-d<d-before)?after:before;
+        if(near!=(int)near)throw new ArithmeticException("The nearest date to step "+i+" lies past the int range of MDCs");
+        nearest[i] = (int)near;
+      }
+    }
+    solved = true;
+    error = null;
+    return this;
+  }
+
+  public static void solveAll(DistanceChain[] chains){
+    Solver s = new Solver(chains,0,chains.length);
+    if(chains.length<=SPLIT){
+      s.compute();
+    }else{
+      ForkJoinPool.commonPool().invoke(s);
+    }
+  }
+
+
+  //Results ---------------------------------------------------------------
+
+  public int size(){
+    return n;
+  }
+
+  public int getDate(int step){
+    return result(date,step);
+  }
+
+  public int getStatus(int step){
+    return result(status,step);
+  }
+
+  public int getNearest(int step){
+    return result(nearest,step);
+  }
+
+  public int getCorrection(int step){
+    return getNearest(step)-getDate(step);
+  }
+
+  public int getReading(int step){
+    return dist[step]+getCorrection(step);
+  }
+
+  public int getFirstInconsistent(){
+    for(int i=0;i<n;i++){
+      int s = getStatus(i);
+      if(s==INCONSISTENT||s==IMPOSSIBLE)return i;
+    }
+    return -1;
+  }
+
+  public String getError(){
+    return error;
+  }
+
+  public static String statusName(int s){
+    return STATUS_NAMES[s];
+  }
+
+
+  //Text ---------------------------------------------------------------
+
+  public static DistanceChain parse(CharSequence text, int start, int end, MayanParser p){
+    //Token bounds of the current segment
+    int[] ts = new int[16];
+    int[] te = new int[16];
+    DistanceChain chain = null;
+    int s = start;
+    while(s<=end){
+      int e = s;
+      while(e<end&&text.charAt(e)!=';')e++;
+      int k = tokens(text,s,e,ts,te);
+      if(chain==null){
+        if(k==0)throw new IllegalArgumentException("No anchor date, at character "+(s+1));
+        //The anchor date may hold blanks (a Gregorian date), so the check is whatever of the end reads as one
+        for(int c=4;c>=2;c-=2){
+          if(k>c){
+            Congruence cr = readCheck(text,ts,te,k-c,k,p);
+            int d = p.parseDate(text,ts[0],te[k-c-1]);
+            if(cr!=null&&p.ok()){
+              chain = new DistanceChain(d,cr);
+              break;
+            }
+          }
+        }
+        if(chain==null){
+          int d = p.parseDate(text,ts[0],te[k-1]);
+          if(!p.ok())throw new IllegalArgumentException("Cannot read the anchor date, at character "+(p.getErrorPos()+1)+": "+p.getError());
+          chain = new DistanceChain(d);
+        }
+      }else if(k>0){
+        int d = readDistance(text,ts[0],te[0]);
+        Congruence cr = null;
+        if(k>1){
+          cr = readCheck(text,ts,te,1,k,p);
+          if(cr==null)throw new IllegalArgumentException("Cannot read the Calendar Round at character "+(ts[1]+1));
+        }
+        chain.add(d,cr);
+      }
+      s = e+1;
+    }
+    return chain;
+  }
+
+
+  //Batch ---------------------------------------------------------------
+
+  public static void main(String[] args) throws IOException {
+    boolean repair = false;
+    MayanParser p = new MayanParser();
+    int i = 0;
+    try{
+      for(;i<args.length&&args[i].startsWith("-")&&args[i].length()>1;i++){
+        String o = args[i];
+        if(o.equals("-repair")){
+          repair = true;
+        }else if(o.equals("-correlation")){
+          p.setCorrelation(Correlation.of(args[++i]));
+        }else{
+          throw new IllegalArgumentException("Unknown option: "+o);
+        }
+      }
+      if(args.length-i!=2)throw new IllegalArgumentException("Expected an input file and an output file");
+    }catch(RuntimeException e){
+      System.err.println(e.getMessage());
+      System.err.println("Usage: java DistanceChain [-repair] [-correlation name] <input file> <output|->");
+      System.exit(2);
+    }
+    //Read and parse every chain first, keeping its line number; the unreadable ones keep their reason instead
+    List<DistanceChain> chains = new ArrayList<DistanceChain>();
+    List<Integer> lines = new ArrayList<Integer>();
+    List<String> errors = new ArrayList<String>();
+    int line = 0;
+    try(BufferedReader in = Files.newBufferedReader(Paths.get(args[i]),StandardCharsets.UTF_8)){
+      for(String l=in.readLine();l!=null;l=in.readLine()){
+        line++;
+        String t = l.trim();
+        if(t.isEmpty()||t.startsWith("#"))continue;
+        lines.add(line);
+        try{
+          chains.add(parse(l,0,l.length(),p).setRepair(repair));
+          errors.add(null);
+        }catch(IllegalArgumentException e){
+          chains.add(null);
+          errors.add(e.getMessage());
+          System.err.println("Line "+line+": "+e.getMessage());
+        }
+      }
+    }
+    DistanceChain[] all = chains.toArray(new DistanceChain[0]);
+    DistanceChain[] good = Arrays.stream(all).filter(c -> c!=null).toArray(DistanceChain[]::new);
+    solveAll(good);
+    String out = args[i+1];
+    try(Writer w = new BufferedWriter(out.equals("-")?new OutputStreamWriter(System.out,StandardCharsets.UTF_8):
+          Files.newBufferedWriter(Paths.get(out),StandardCharsets.UTF_8),1<<16)){
+      w.write("chain,step,distance,mdc,long_count,calendar_round,status,nearest,nearest_long_count,correction,reading\n");
+      StringBuilder sb = new StringBuilder(256);
+      for(int c=0;c<all.length;c++){
+        DistanceChain ch = all[c];
+        String why = (ch==null)?errors.get(c):ch.getError();
+        if(why!=null){
+          w.write(lines.get(c)+",ERROR,,,,,"+why.replace(',',';')+",,,,\n");
+          continue;
+        }
+        for(int k=0;k<ch.size();k++){
+          sb.setLength(0);
+          sb.append(lines.get(c)).append(',').append(k).append(',');
+          step(sb,ch.dist[k],k==0).append(',').append(ch.getDate(k)).append(',');
+          MayanFormat.longCount(sb,ch.getDate(k)).append(',');
+          MayanFormat.calendarRound(sb,ch.getDate(k)).append(',');
+          sb.append(statusName(ch.getStatus(k))).append(',');
+          if(ch.check[k]!=null&&ch.getStatus(k)!=IMPOSSIBLE){
+            sb.append(ch.getNearest(k)).append(',');
+            MayanFormat.longCount(sb,ch.getNearest(k)).append(',');
+            sb.append(ch.getCorrection(k)).append(',');
+            step(sb,ch.getReading(k),k==0);
+          }else{
+            sb.append(",,,");
+          }
+          w.append(sb).append('\n');
+        }
+      }
+    }
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private void push(int f, int d, Congruence c){
+    if(n==dist.length){
+      from = Arrays.copyOf(from,2*n);
+      dist = Arrays.copyOf(dist,2*n);
+      check = Arrays.copyOf(check,2*n);
+    }
+    from[n] = f;
+    dist[n] = d;
+    check[n] = c;
+    n++;
+    solved = false;
+  }
+
+  private int result(int[] r, int step){
+    if(!solved)throw new IllegalStateException("The chain has not been solved since it last changed");
+    if(step<0||step>=n)throw new IndexOutOfBoundsException("No step "+step);
+    return r[step];
+  }
+
+  private static int tokens(CharSequence text, int s, int e, int[] ts, int[] te){
+    //Splits [s, e) at blanks into at most ts.length tokens; returns how many
+    int k = 0;
+    while(s<e){
+      while(s<e&&Character.isWhitespace(text.charAt(s)))s++;
+      if(s==e)break;
+      if(k==ts.length)throw new IllegalArgumentException("Too many words, at character "+(s+1));
+      ts[k] = s;
+      while(s<e&&!Character.isWhitespace(text.charAt(s)))s++;
+      te[k++] = s;
+    }
+    return k;
+  }
+
+  private static Congruence readCheck(CharSequence text, int[] ts, int[] te, int a, int b, MayanParser p){
+    //Tokens [a, b) as a Calendar Round (4), Tzolk'in or Haab' (2); null if they are none of these
+    if(b-a!=2&&b-a!=4)return null;
+    int num = p.parseMDC(text,ts[a],te[a]);
+    if(!p.ok())return null;
+    int tz = p.tzolkinName(text,ts[a+1],te[a+1]);
+    if(b-a==2&&tz<0){
+      int ha = p.haabName(text,ts[a+1],te[a+1]);
+      return ha<0?null:Congruence.haab(num,ha);
+    }
+    if(tz<0)return null;
+    Congruence c = Congruence.trecena(num).and(Congruence.veintena(tz));
+    if(b-a==4){
+      int hd = p.parseMDC(text,ts[a+2],te[a+2]);
+      if(!p.ok())return null;
+      int ha = p.haabName(text,ts[a+3],te[a+3]);
+      if(ha<0)return null;
+      c = c.and(Congruence.haab(hd,ha));
+    }
+    return c;
+  }
+
+  private static int readDistance(CharSequence text, int s, int e){
+    //A signed Distance Number: places separated by dots, K'in last
+    int sign = 1;
+    if(s<e&&(text.charAt(s)=='+'||text.charAt(s)=='-')){
+      if(text.charAt(s)=='-')sign = -1;
+      s++;
+    }
+    int places = 1;
+    for(int i=s;i<e;i++){
+      if(text.charAt(i)=='.')places++;
+    }
+    if(places>MayanLong.MAX_PLACES){
+      throw new IllegalArgumentException("More than "+MayanLong.MAX_PLACES+" places in the Distance Number at character "+(s+1));
+    }
+    long d = 0;
+    int place = 0;
+    for(int i=s;i<=e;i++){
+      if(i==e||text.charAt(i)=='.'){
+        if(i==s||text.charAt(i-1)=='.'){
+          throw new IllegalArgumentException("Empty place in the Distance Number at character "+(i+1));
+        }
+        try{
+          d = Math.addExact(d,Math.multiplyExact(place,MayanLong.unit(--places)));
+        }catch(ArithmeticException x){
+          throw new IllegalArgumentException("Distance Number too large, at character "+(s+1));
+        }
+        place = 0;
+      }else if(text.charAt(i)>='0'&&text.charAt(i)<='9'){
+        place = (place*10)+(text.charAt(i)-'0');
+        if(place>=1000000)throw new IllegalArgumentException("Place too large in the Distance Number at character "+(i+1));
+      }else{
+        throw new IllegalArgumentException("Not a Distance Number, at character "+(i+1));
+      }
+    }
+    if(d>Integer.MAX_VALUE)throw new IllegalArgumentException("Distance Number too large, at character "+(s+1));
+    return sign*(int)d;
+  }
+
+  private static StringBuilder step(StringBuilder sb, int d, boolean anchor){
+    //The anchor as a Long Count; a distance as a signed Distance Number, down to its highest non-zero place
+    if(anchor)return MayanFormat.longCount(sb,d);
+    if(d<0)sb.append('-');
+    long[] l = MayanLong.longCount(Math.abs((long)d));
+    int i = 0;
+    while(i<3&&l[i]==0)i++;
+    for(;i<5;i++){
+      sb.append(l[i]);
+      if(i<4)sb.append('.');
+    }
+    return sb;
+  }
+
+  private static class Solver extends RecursiveAction {
+    //Solves chains [lo, hi)
+    private static final long serialVersionUID = 1L;
+    private final DistanceChain[] chains;
+    private final int lo, hi;
+
+    Solver(DistanceChain[] chains, int lo, int hi){
+      this.chains = chains;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected void compute(){
+      if(hi-lo>SPLIT){
+        int mid = (lo+hi)>>>1;
+        invokeAll(new Solver(chains,lo,mid),new Solver(chains,mid,hi));
+        return;
+      }
+      for(int i=lo;i<hi;i++){
+        //A chain that runs out of range is marked, so that it does not abort the others
+        try{
+          chains[i].solve();
+        }catch(ArithmeticException e){
+          chains[i].error = e.getMessage();
+        }
+      }
+    }
+  }
+
+}
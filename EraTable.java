@@ -0,0 +1,404 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/*
+ * Mayan Era Table
+ * For use with classes MayanDate and Correlation
+ *
+ * The current 13-bak'tun era is only 1872000 days, so the full record of every one of its days (Long Count, Gregorian
+ * date, Tzolk'in, Haab', 819-day station and Color&Quadrant, Lord of the Night, Year Bearer and 7-day cycle) fits in a
+ * 30MB file. EraTable writes that file from MayanDate's converters, and reads it memory-mapped: a lookup is one offset
+ * calculation and a load from the mapped file, with no object made, and opening the table maps it without reading it,
+ * so a service that ships the file starts with every date ready. Days outside the file are worked out by arithmetic, so
+ * every MDC has an answer.
+ *
+ * Usage: java EraTable [-from <mdc>] [-to <mdc>] [-correlation <name or constant>] <file>
+ *        java EraTable -verify <file>
+ * The first writes a table of the days from MDC from to MDC to, inclusive (default 0 to 1871999, the current era),
+ * with Gregorian dates under the given correlation (default GMT). The second checks the file's checksum and every
+ * record against the arithmetic.
+ *
+ * The file is big-endian: a 32-byte header, then one 16-byte record per day from the first MDC on.
+ *   0  byte[8] "MAYANERA"                 20 int  Number of records
+ *   8  int     Format version (1)         24 int  Correlation constant of the Gregorian dates
+ *   12 int     Record size (16)           28 int  CRC32 of bytes 0-27 and of every record
+ *   16 int     First MDC
+ * Each record is four ints of packed fields, lowest bits first:
+ *   0  Gregorian     -- day (5 bits), month (4), year (astronomical, signed, the rest)
+ *   4  Long Count    -- K'in (5), Winal (5), Tun (5), K'atun (5), Bak'tun (signed, the rest)
+ *   8  Round         -- Trecena (4), Veintena (5), Haab' Day (5), Haab' Month (5), Tzolk'in Position (9)
+ *   12 Supplementary -- Station Distance (10), Color&Quadrant (2), Lord of the Night (4), Year Bearer Number (4),
+ *                       Year Bearer Name (5), 7-day cycle (3)
+ * A file with another version, record size or checksum is refused with an IOException rather than misread.
+ *
+ * Files:
+ * static void write(Path file, int from, int to, Correlation c) -- Writes a table of MDCs from to to, inclusive.
+ * static EraTable open(Path file) -- Maps a table, checking its header and checksum.
+ * static EraTable open(Path file, boolean verify) -- Ditto, skipping the checksum (a pass over the whole file) if not verify.
+ * static EraTable compute(Correlation c) -- A table with no file, working every day out by arithmetic.
+ *
+ * Lookups (any MDC; from the file where it covers the day):
+ * boolean covers(int day) -- Whether the day is in the file.
+ * int getBaktun(int day), getKatun(int day), getTun(int day), getWinal(int day), getKin(int day) -- Long Count places.
+ * int getDay(int day), getMonth(int day), getYear(int day) -- Gregorian fields. Note: the year is astronomical.
+ * int getTzolkinPos(int day), getTrecena(int day), getVeintena(int day) -- Tzolk'in fields.
+ * int getHaabPos(int day), getHaabDay(int day), getHaabMonth(int day) -- Haab' fields.
+ * int getStationDistance(int day), getStationDay(int day), getQuadrant(int day) -- 819-day cycle fields.
+ * int getLord(int day), getBearerNumber(int day), getBearerName(int day), getSevenDay(int day) -- Supplementary Series.
+ * void fill(int day, int[] lc, int[] greg, int[] tzolkin, int[] haab, int[] eight, int[] supp) -- Fills caller-supplied
+ *   arrays laid out exactly as MayanDate's accessors (any may be null), without allocating.
+ *
+ * Accessors:
+ * int getFirst(), getCount() -- The first MDC in the file, and the number of days in it (0 for compute()).
+ * int getCorrelationConstant() -- The correlation of the Gregorian dates.
+ */
+
+public final class EraTable {
+
+  public static final int VERSION = 1;
+  public static final int HEADER = 32;
+  public static final int RECORD = 16;
+
+  private static final byte[] MAGIC = "MAYANERA".getBytes(StandardCharsets.US_ASCII);
+  //Packed Bak'tuns are 12-bit signed, so tables stay within 2048 bak'tuns either side of the creation
+  private static final long LIMIT = 2048L*144000;
+
+  private final ByteBuffer map;
+  private final int first, count, constant;
+
+
+  //Files ---------------------------------------------------------------------
+
+  private EraTable(ByteBuffer map, int first, int count, int constant){
+    this.map = map;
+    this.first = first;
+    this.count = count;
+    this.constant = constant;
+  }
+
+  public static void write(Path file, int from, int to, Correlation c) throws IOException {
+    long n = (long)to-from+1;
+    if(n<1||(long)from<-LIMIT||(long)to>=LIMIT||n>(Integer.MAX_VALUE-HEADER)/RECORD){
+      throw new IllegalArgumentException("A table runs forwards, within "+(Integer.MAX_VALUE-HEADER)/RECORD
+        +" days and 2048 bak'tuns of the creation");
+    }
+    ByteBuffer header = ByteBuffer.allocate(HEADER);
+    header.put(MAGIC).putInt(VERSION).putInt(RECORD).putInt(from).putInt((int)n).putInt(c.getConstant());
+    CRC32 crc = new CRC32();
+    crc.update(header.array(),0,HEADER-4);
+    try(FileChannel out = FileChannel.open(file,StandardOpenOption.WRITE,StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING)){
+      ByteBuffer buf = ByteBuffer.allocate(RECORD<<14);
+      out.position(HEADER);
+      //Every record from a MayanDate's own fields, stepped a day at a time
+      MayanDate m = new MayanDate(from,c);
+      for(long i=0;i<n;i++){
+        if(i>0)m.oneUp();
+        int[] g = m.getGregDate();
+        int[] l = m.getLongCount();
+        int[] t = m.getTzolkin();
+        int[] h = m.getHaab();
+        int[] e = m.getEight();
+        int[] s = m.getSupp();
+        buf.putInt((g[2]<<9)|(g[1]<<5)|g[0]);
+        buf.putInt((l[0]<<20)|(l[1]<<15)|(l[2]<<10)|(l[3]<<5)|l[4]);
+        buf.putInt(t[1]|(t[2]<<4)|(h[1]<<9)|(h[2]<<14)|(t[0]<<19));
+        buf.putInt(e[0]|(e[2]<<10)|(s[0]<<12)|(s[1]<<16)|(s[2]<<20)|(s[3]<<25));
+        if(!buf.hasRemaining()||i==n-1){
+          buf.flip();
+          crc.update(buf.array(),0,buf.limit());
+          while(buf.hasRemaining())out.write(buf);
+          buf.clear();
+        }
+      }
+      header.putInt((int)crc.getValue());
+      header.flip();
+      out.position(0);
+      while(header.hasRemaining())out.write(header);
+    }
+  }
+
+  public static EraTable open(Path file) throws IOException {
+    return open(file,true);
+  }
+
+  public static EraTable open(Path file, boolean verify) throws IOException {
+    try(FileChannel in = FileChannel.open(file,StandardOpenOption.READ)){
+      long size = in.size();
+      if(size<HEADER)throw new IOException(file+" is not an era table");
+      MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY,0,Math.min(size,Integer.MAX_VALUE));
+      byte[] magic = new byte[MAGIC.length];
+      map.get(0,magic);
+      if(!Arrays.equals(magic,MAGIC))throw new IOException(file+" is not an era table");
+      int version = map.getInt(8);
+      if(version!=VERSION)throw new IOException(file+" is an era table of version "+version+", not "+VERSION);
+      if(map.getInt(12)!=RECORD)throw new IOException(file+" has "+map.getInt(12)+"-byte records, not "+RECORD);
+      int first = map.getInt(16);
+      int count = map.getInt(20);
+      if(count<0||size!=HEADER+(long)count*RECORD)throw new IOException(file+" is "+size+" bytes, not the "
+        +(HEADER+(long)count*RECORD)+" of its "+count+" records");
+      if(verify){
+        CRC32 crc = new CRC32();
+        crc.update(map.slice(0,HEADER-4));
+        crc.update(map.slice(HEADER,count*RECORD));
+        if((int)crc.getValue()!=map.getInt(HEADER-4))throw new IOException(file+" fails its checksum");
+      }
+      return new EraTable(map,first,count,map.getInt(24));
+    }
+  }
+
+  public static EraTable compute(Correlation c){
+    return new EraTable(null,0,0,c.getConstant());
+  }
+
+
+  //Lookups ---------------------------------------------------------------
+
+  public boolean covers(int day){
+    return ((long)day-first)>=0&&((long)day-first)<count;
+  }
+
+  public int getBaktun(int day){
+    return covers(day)?word(day,1)>>20:Math.floorDiv(day,144000);
+  }
+
+  public int getKatun(int day){
+    return (word(day,1)>>15)&31;
+  }
+
+  public int getTun(int day){
+    return (word(day,1)>>10)&31;
+  }
+
+  public int getWinal(int day){
+    return (word(day,1)>>5)&31;
+  }
+
+  public int getKin(int day){
+    return word(day,1)&31;
+  }
+
+  public int getDay(int day){
+    return (int)(greg(day)&31);
+  }
+
+  public int getMonth(int day){
+    return (int)((greg(day)>>5)&15);
+  }
+
+  public int getYear(int day){
+    return (int)(greg(day)>>9);
+  }
+
+  public int getTrecena(int day){
+    return word(day,2)&15;
+  }
+
+  public int getVeintena(int day){
+    return (word(day,2)>>4)&31;
+  }
+
+  public int getTzolkinPos(int day){
+    return word(day,2)>>>19;
+  }
+
+  public int getHaabDay(int day){
+    return (word(day,2)>>9)&31;
+  }
+
+  public int getHaabMonth(int day){
+    return (word(day,2)>>14)&31;
+  }
+
+  public int getHaabPos(int day){
+    int w = word(day,2);
+    return (((w>>14)&31)*20)+((w>>9)&31);
+  }
+
+  public int getStationDistance(int day){
+    return word(day,3)&1023;
+  }
+
+  public int getStationDay(int day){
+    return day-(word(day,3)&1023);
+  }
+
+  public int getQuadrant(int day){
+    return (word(day,3)>>10)&3;
+  }
+
+  public int getLord(int day){
+    return (word(day,3)>>12)&15;
+  }
+
+  public int getBearerNumber(int day){
+    return (word(day,3)>>16)&15;
+  }
+
+  public int getBearerName(int day){
+    return (word(day,3)>>20)&31;
+  }
+
+  public int getSevenDay(int day){
+    return (word(day,3)>>25)&7;
+  }
+
+  public void fill(int day, int[] lc, int[] greg, int[] tzolkin, int[] haab, int[] eight, int[] supp){
+    long g = greg(day);
+    int l = word(day,1);
+    int r = word(day,2);
+    int s = word(day,3);
+    if(lc!=null){
+      lc[0] = covers(day)?l>>20:Math.floorDiv(day,144000);
+      lc[1] = (l>>15)&31;
+      lc[2] = (l>>10)&31;
+      lc[3] = (l>>5)&31;
+      lc[4] = l&31;
+    }
+    if(greg!=null){
+      greg[0] = (int)(g&31);
+      greg[1] = (int)((g>>5)&15);
+      greg[2] = (int)(g>>9);
+    }
+    if(tzolkin!=null){
+      tzolkin[0] = r>>>19;
+      tzolkin[1] = r&15;
+      tzolkin[2] = (r>>4)&31;
+    }
+    if(haab!=null){
+      haab[1] = (r>>9)&31;
+      haab[2] = (r>>14)&31;
+      haab[0] = (haab[2]*20)+haab[1];
+    }
+    if(eight!=null){
+      eight[0] = s&1023;
+      eight[1] = day-eight[0];
+      eight[2] = (s>>10)&3;
+    }
+    if(supp!=null){
+      supp[0] = (s>>12)&15;
+      supp[1] = (s>>16)&15;
+      supp[2] = (s>>20)&31;
+      supp[3] = (s>>25)&7;
+    }
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public int getFirst(){
+    return first;
+  }
+
+  public int getCount(){
+    return count;
+  }
+
+  public int getCorrelationConstant(){
+    return constant;
+  }
+
+
+  public static void main(String[] args) throws IOException {
+    int from = 0;
+    int to = (13*144000)-1;
+    Correlation c = Correlation.GMT;
+    boolean verify = false;
+    String file = null;
+    try{
+      for(int i=0;i<args.length;i++){
+        if(args[i].equals("-from")&&i+1<args.length){
+          from = Integer.parseInt(args[++i]);
+        }else if(args[i].equals("-to")&&i+1<args.length){
+          to = Integer.parseInt(args[++i]);
+        }else if(args[i].equals("-correlation")&&i+1<args.length){
+          c = Correlation.of(args[++i]);
+        }else if(args[i].equals("-verify")){
+          verify = true;
+        }else if(file==null&&!args[i].startsWith("-")){
+          file = args[i];
+        }else{
+          file = null;
+          break;
+        }
+      }
+    }catch(IllegalArgumentException e){
+      file = null;
+    }
+    if(file==null){
+      System.err.println("Usage: java EraTable [-from <mdc>] [-to <mdc>] [-correlation <name or constant>] <file>");
+      System.err.println("       java EraTable -verify <file>");
+      System.exit(2);
+    }
+    if(!verify){
+      long t0 = System.nanoTime();
+      write(Paths.get(file),from,to,c);
+      System.out.println("Wrote "+((long)to-from+1)+" days to "+file+" in "+(System.nanoTime()-t0)/1000000+"ms");
+      return;
+    }
+    long t0 = System.nanoTime();
+    EraTable t = open(Paths.get(file));
+    long t1 = System.nanoTime();
+    EraTable a = compute(Correlation.custom("table",t.getCorrelationConstant()));
+    long bad = 0;
+    for(int d=t.first,n=0;n<t.count;d++,n++){
+      for(int k=0;k<4;k++){
+        if(t.word(d,k)!=a.word(d,k))bad++;
+      }
+      if(t.getBaktun(d)!=Math.floorDiv(d,144000))bad++;
+    }
+    System.out.println(file+": "+t.count+" days from MDC "+t.first+", checksum verified in "+(t1-t0)/1000000+"ms, "
+      +(bad==0?"every record matches":bad+" fields differ"));
+    if(bad!=0)System.exit(1);
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private int word(int day, int k){
+    //The k-th int of the day's record: from the file if it covers the day, otherwise worked out
+    long i = (long)day-first;
+    if(i>=0&&i<count)return map.getInt(HEADER+((int)i*RECORD)+(k<<2));
+    return compute(day,k,constant);
+  }
+
+  private long greg(int day){
+    //The day's packed Gregorian date: from the file if it covers the day, otherwise in a long, whose year cannot wrap
+    return covers(day)?word(day,0):MayanDate.civil((long)day+constant);
+  }
+
+  private static int compute(int day, int k, int constant){
+    //The k-th int of the day's record by arithmetic (as MayanDay); the Bak'tun keeps only its low 12 bits, and the
+    //Gregorian date is only right for days that pack (see MayanDate.packs), as every day a table can hold does
+    if(k==0)return MayanDate.packedJDN((long)day+constant);
+    if(k==1){
+      int r = Math.floorMod(day,144000);
+      return (Math.floorDiv(day,144000)<<20)|((r/7200)<<15)|(((r%7200)/360)<<10)|(((r%360)/20)<<5)|(r%20);
+    }
+    if(k==2){
+      int tp = Math.floorMod(day+159L,260);
+      int hp = Math.floorMod(day+348L,365);
+      return ((tp%13)+1)|(((tp+1)%20)<<4)|((hp%20)<<9)|((hp/20)<<14)|(tp<<19);
+    }
+    int dist = Math.floorMod(day+3L,819);
+    int quadrant = Math.floorMod((long)day-dist+159,260)%4;
+    int lord = Math.floorMod(day-1L,9)+1;
+    int number = 8, name = 17;
+    if(day<0||day>=360){
+      int zero = Math.floorMod((long)day-Math.floorMod(day+348L,365)+159,260);
+      number = (zero%13)+1;
+      name = (zero+1)%20;
+    }
+    int seven = dist%7;
+    if(seven==0)seven = 7;
+    return dist|(quadrant<<10)|(lord<<12)|(number<<16)|(name<<20)|(seven<<25);
+  }
+
+}
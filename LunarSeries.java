@@ -0,0 +1,194 @@
+/*
+ * Mayan Lunar Series and Venus Round
+ * For use with class MayanDate
+ *
+ * The Lunar Series that follows many Initial Series gives the age of the current moon (Glyphs D and E), the place of
+ * the lunation in its group of six (Glyph C, whose head names one of three patrons in turn over 18 lunations), and
+ * whether the lunation has 29 or 30 days (Glyph A). The Dresden Codex adds the 584-day Venus Round and the eclipse
+ * seasons. These are worked out here for any MDC, without allocating:
+ *
+ * - The moon is the mean moon. Its conjunctions are counted on a fixed-point grid of microdays, one lunation of
+ *   29.530589 days apart, so that the lunation holding a day is one 64-bit division. A lunation begins on the day of
+ *   its conjunction in the Maya area (90 degrees west, six hours behind Greenwich), which has age 0, and lasts until
+ *   the day of the next one, so months of 29 and 30 days alternate as they fall. Inscriptions count from first
+ *   visibility or by their own month tables, and often read a day or two older.
+ * - Glyph C is counted on from the lunation holding 0.0.0.0.0 under GMT, which is 1C of the first patron. The Classic
+ *   cities each kept their own count, so an inscription's C may differ from this one by a constant number of places.
+ * - The Venus Round is the Dresden table's: 236 days of Morning Star from its heliacal rising on 9.9.9.16.0
+ *   1 Ajaw 18 K'ayab, 90 days hidden in superior conjunction, 250 days of Evening Star, and 8 days hidden in inferior
+ *   conjunction. It is counted in days of the Long Count, so it does not depend on the correlation. Being a cycle of
+ *   whole days, it is looked up in a table and joins Congruence like the other cycles (see Congruence.venus).
+ * - Eclipse seasons come from the mean Sun's distance to the nearer node of the Moon's mean orbit, at local noon. The
+ *   eclipse half-year is 173.31 days; the Dresden eclipse table's 69 half-years in 11960 days (173.33 days) would drift
+ *   by a day and a half each time the table is run through, so the mean node is used instead. A solar eclipse is
+ *   possible only within 18 days of a node.
+ *
+ * The moon and the nodes need the Julian Day, so they take the correlation constant (see class Correlation) as well
+ * as the MDC.
+ *
+ * Lunar Series (any MDC, under the correlation with the given constant):
+ * int moonAge(int day, int constant) -- Days since the conjunction that began the lunation (0-29).
+ * int glyphC(int day, int constant) -- The lunation's place in its group of six (1-6).
+ * int patron(int day, int constant) -- The patron of Glyph C (0-2, see PATRONS).
+ * int monthLength(int day, int constant) -- The length of the lunation, 29 or 30 days (Glyph A).
+ * long lunation(long day, int constant) -- The number of the lunation, counting from the one holding 0.0.0.0.0 under GMT.
+ * int nodeDistance(int day, int constant) -- Signed days from the nearer lunar node (-87 to 87; negative before it).
+ * int node(int day, int constant) -- Which node that is, ASCENDING or DESCENDING.
+ * boolean eclipseSeason(int day, int constant) -- Whether the day lies within SEASON days of a node.
+ *
+ * Venus Round (any MDC):
+ * int venusPos(int day) -- Days since the last heliacal rising of the Morning Star (0-583).
+ * int venusPhase(int day) -- MORNING, SUPERIOR, EVENING or INFERIOR.
+ * int venusDay(int day) -- Days since the phase began.
+ * int phaseLength(int phase) -- Days in the given phase.
+ *
+ * Batch Lookups (read the slice [off, off+len) of the MDC column and fill the same indices of caller-supplied columns):
+ * void lunarOf(int[] days, int off, int len, int constant, int[] age, int[] glyphC, int[] length) -- Lunar Series columns.
+ * void venusOf(int[] days, int off, int len, int[] phase, int[] venusDay) -- Venus Round columns.
+ * void eclipseOf(int[] days, int off, int len, int constant, int[] distance) -- Node distance column.
+ */
+
+public final class LunarSeries {
+
+  public static final int MORNING = 0, SUPERIOR = 1, EVENING = 2, INFERIOR = 3;
+  public static final int ASCENDING = 0, DESCENDING = 1;
+  public static final int SEASON = 18;
+  public static final int VENUS_BASE = 1364360;  //9.9.9.16.0 1 Ajaw 18 K'ayab
+  public static final int VENUS_ROUND = 584;
+
+  static final String[] VENUS_PHASES = {"Morning Star","Superior Conjunction","Evening Star","Inferior Conjunction"};
+  static final String[] PATRONS = {"Moon Goddess","Death God","Jaguar God"};
+  private static final int[] PHASE_LENGTHS = {236,90,250,8};
+
+  //Fixed-point times, in microdays of the Julian Day
+  private static final long US = 1000000;
+  private static final long MONTH = 29530589;              //Mean synodic month
+  private static final long NEW_MOON = 2451550096920L;     //Mean conjunction of January 6, 2000
+  private static final long HALF_YEAR = 173310038;         //Eclipse half-year
+  private static final long NODE = 2451741974618L;         //Mean Sun at the ascending node, July 16, 2000
+  private static final long MIDNIGHT = 250000;             //Six hours: day n of the Maya area runs from Julian Day n-0.25 to n+0.75
+  private static final long FIRST = lunationAt(584283);    //Lunation holding 0.0.0.0.0 under GMT
+
+  //Venus Round, indexed by days since the heliacal rising: Phase (bits 0-1), Day of Phase (2-9)
+  private static final short[] VENUS = new short[VENUS_ROUND];
+
+  static {
+    int pos = 0;
+    for(int p=0;p<4;p++){
+      for(int d=0;d<PHASE_LENGTHS[p];d++){
+        VENUS[pos++] = (short)(p|(d<<2));
+      }
+    }
+  }
+
+  private LunarSeries(){
+  }
+
+
+  //Lunar Series -------------------------------------------------------------
+
+  public static int moonAge(int day, int constant){
+    long n = (long)day+constant;
+    return (int)(n-start(lunationAt(n)));
+  }
+
+  public static int glyphC(int day, int constant){
+    return (int)Math.floorMod(lunation(day,constant),6L)+1;
+  }
+
+  public static int patron(int day, int constant){
+    return (int)Math.floorMod(lunation(day,constant),18L)/6;
+  }
+
+  public static int monthLength(int day, int constant){
+    long k = lunationAt((long)day+constant);
+    return (int)(start(k+1)-start(k));
+  }
+
+  public static long lunation(long day, int constant){
+    return lunationAt(day+constant)-FIRST;
+  }
+
+  public static int nodeDistance(int day, int constant){
+    long p = Math.floorMod(noon((long)day+constant)-NODE,HALF_YEAR);
+    if(p>HALF_YEAR/2)p -= HALF_YEAR;
+    return (int)Math.floorDiv(p+(US/2),US);
+  }
+
+  public static int node(int day, int constant){
+    return (int)Math.floorMod(Math.floorDiv(noon((long)day+constant)-NODE+(HALF_YEAR/2),HALF_YEAR),2L);
+  }
+
+  public static boolean eclipseSeason(int day, int constant){
+    return Math.abs(nodeDistance(day,constant))<=SEASON;
+  }
+
+
+  //Venus Round -------------------------------------------------------------
+
+  public static int venusPos(int day){
+    return Math.floorMod((long)day-VENUS_BASE,VENUS_ROUND);
+  }
+
+  public static int venusPhase(int day){
+    return VENUS[venusPos(day)]&3;
+  }
+
+  public static int venusDay(int day){
+    return VENUS[venusPos(day)]>>2;
+  }
+
+  public static int phaseLength(int phase){
+    return PHASE_LENGTHS[phase];
+  }
+
+
+  //Batch Lookups -------------------------------------------------------------
+
+  public static void lunarOf(int[] days, int off, int len, int constant, int[] age, int[] glyphC, int[] length){
+    //MDC column to [Moon Age, Glyph C, Month Length] columns, one division per day
+    for(int i=off;i<off+len;i++){
+      long n = (long)days[i]+constant;
+      long k = lunationAt(n);
+      long s = start(k);
+      age[i] = (int)(n-s);
+      glyphC[i] = (int)Math.floorMod(k-FIRST,6L)+1;
+      length[i] = (int)(start(k+1)-s);
+    }
+  }
+
+  public static void venusOf(int[] days, int off, int len, int[] phase, int[] venusDay){
+    //MDC column to Venus Round [Phase, Day of Phase] columns
+    for(int i=off;i<off+len;i++){
+      int v = VENUS[Math.floorMod((long)days[i]-VENUS_BASE,VENUS_ROUND)];
+      phase[i] = v&3;
+      venusDay[i] = v>>2;
+    }
+  }
+
+  public static void eclipseOf(int[] days, int off, int len, int constant, int[] distance){
+    //MDC column to signed node distance column
+    for(int i=off;i<off+len;i++){
+      distance[i] = nodeDistance(days[i],constant);
+    }
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private static long lunationAt(long jdn){
+    //The last mean conjunction before the end of the day (in the Maya area) with the given Julian Day Number
+    return Math.floorDiv((jdn*US)+(US-MIDNIGHT)-NEW_MOON-1,MONTH);
+  }
+
+  private static long start(long k){
+    //The Julian Day Number of the day on which lunation k begins
+    return Math.floorDiv(NEW_MOON+(k*MONTH)+MIDNIGHT,US);
+  }
+
+  private static long noon(long jdn){
+    //Local noon of the given Julian Day Number in the Maya area, in microdays
+    return (jdn*US)+MIDNIGHT;
+  }
+
+}
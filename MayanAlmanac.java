@@ -0,0 +1,590 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Mayan Almanac Generator
+ * For use with classes MayanDate, MayanLong, MayanFormat, MayanParser, MayanDateBatch and LunarSeries
+ *
+ * Writes the almanac of any span of days: for each day, what the Calculator's Console shows for it (Gregorian date,
+ * Long Count, Calendar Round, Lord of the Night, 7-day cycle, 819-day station with its Quadrant and Color, Year Bearer,
+ * the day and year omens, the Lunar Series, the Venus Round and the distance to the nearer lunar node). The span is cut
+ * into chunks of days rendered in parallel. Each chunk works out its first day once and then rolls every cycle forward
+ * a day at a time, so a day costs a few increments rather than a conversion. Finished chunks are written in order, with
+ * at most threads+1 of them converted or held at once.
+ *
+ * Usage: java MayanAlmanac [options] <first date> <last date> <output file, or - for standard output>
+ * The dates may be anything MayanParser.parseDate reads (Gregorian, Long Count or MDC); both are included.
+ *
+ * Options:
+ * -to csv|text|bin       -- Output format (default csv).
+ * -threads <n>           -- Render with n threads (default 1).
+ * -chunk <days>          -- Days per chunk (default 8192).
+ * -correlation <name>    -- Correlation for the Gregorian dates, in and out (a name or constant, see class Correlation; default GMT).
+ *
+ * CSV output has a header row and one row per day:
+ *   mdc,long_count,gregorian,calendar_round,round_pos,lord,seven_day,bearer,station,station_long_count,station_round,quadrant,color,day_omen,year_omen,
+ *     moon_age,glyph_c,glyph_a,venus,venus_day,node_distance
+ *   1364360,9.9.9.16.0,7/2/623,1 Ajaw 18 K'ayab,16780,G5,7,1 Ik',1363632,9.9.7.15.12,1 Eb' 0 Kumk'u,Nojo'l,Kan,
+ *     The Day of Rulers: Favorable for offering candles.,8% manifestation of natural disasters.,29,2,30,Morning Star,0,20
+ * where gregorian is astronomical day/month/year, round_pos the position in the Calendar Round, and station the MDC of
+ * the last 819-day station. The Lunar Series and the Venus Round are LunarSeries': moon_age the days since the mean
+ * conjunction, glyph_c the lunation's place in its group of six, glyph_a the lunation's length, venus the phase of the
+ * Dresden Venus Round, venus_day the days since the phase began, and node_distance the signed days to the nearer lunar
+ * node (an eclipse season within 18 days of it). Quadrant and color are given in Yucatec (the Console adds the English
+ * in brackets). No field holds a comma, so none is quoted.
+ *
+ * Text output is one line per day in fixed-width columns, with a heading line, the Gregorian date written out as the
+ * Console writes it, and the node distance starred in an eclipse season; the omens, which vary in length, come last.
+ *
+ * Binary output is MayanDateBatch's 32-byte record (see class MayanDateBatch), one per day with no header; it has no
+ * room for the Lunar Series or the Venus Round.
+ *
+ * Methods:
+ * MayanAlmanac() -- A generator writing CSV on one thread, under GMT.
+ * void setFormat(int f) -- CSV, TEXT or BIN.
+ * void setThreads(int n), setChunk(int days), setCorrelation(Correlation c) -- As the options of the same names.
+ * long write(int first, int last, WritableByteChannel out) -- Writes the days from MDC first to MDC last, inclusive, and returns the number written.
+ */
+
+public class MayanAlmanac {
+
+  public static final int CSV = 0, TEXT = 1, BIN = 2;
+
+  private static final byte[][] TZ_BYTES = MayanFormat.encode(MayanDate.TZ_NAMES);
+  private static final byte[][] HA_BYTES = MayanFormat.encode(MayanDate.HA_NAMES);
+  private static final byte[][] GR_BYTES = MayanFormat.encode(MayanDate.GR_MONTHS);
+  private static final byte[][] QU_BYTES = MayanFormat.encode(MayanDate.EI_QUADRANTS);
+  private static final byte[][] CO_BYTES = MayanFormat.encode(MayanDate.EI_COLORS);
+  private static final byte[][] VE_BYTES = MayanFormat.encode(LunarSeries.VENUS_PHASES);
+  //The day omens on one line, and the year omens by Year Bearer [number][name]
+  private static final byte[][] DAY_OMENS = new byte[20][];
+  private static final byte[][][] YEAR_OMENS = new byte[14][20][];
+  private static final byte[] CSV_HEADER = ascii("mdc,long_count,gregorian,calendar_round,round_pos,lord,seven_day,bearer,"+
+    "station,station_long_count,station_round,quadrant,color,day_omen,year_omen,moon_age,glyph_c,glyph_a,venus,venus_day,node_distance\n");
+  //Text columns: heading and width
+  private static final String[] TEXT_HEADS = {"MDC","Long Count","Gregorian","Calendar Round","Round","Lord","7","Year Bearer",
+    "819-day Station","Station Round","Quadrant","Color","Moon","C","A","Venus","Node","Omens"};
+  private static final int[] TEXT_WIDTHS = {11,20,24,24,7,6,3,13,20,24,10,6,5,3,3,29,5,0};
+
+  static {
+    MayanDate conv = new MayanDate(0);
+    for(int v=0;v<20;v++){
+      DAY_OMENS[v] = conv.omenDay(v).replace('\n',' ').getBytes(StandardCharsets.UTF_8);
+    }
+    for(int n=1;n<=13;n++){
+      for(int name=2;name<20;name+=5){
+        YEAR_OMENS[n][name] = conv.omenYear(n,name).getBytes(StandardCharsets.UTF_8);
+      }
+    }
+  }
+
+  private int format = CSV;
+  private int threads = 1;
+  private int chunk = 8192;
+  private Correlation corr = Correlation.GMT;
+
+
+  public static void main(String[] args) throws Exception {
+    MayanAlmanac a = new MayanAlmanac();
+    int i = 0;
+    try{
+      for(;i<args.length&&args[i].startsWith("-")&&args[i].length()>1&&!Character.isDigit(args[i].charAt(1));i++){
+        String o = args[i];
+        if(o.equals("-to")){
+          String t = args[++i];
+          a.setFormat(t.equals("csv")?CSV:t.equals("text")?TEXT:t.equals("bin")?BIN:-1);
+        }else if(o.equals("-threads")){
+          a.setThreads(Integer.parseInt(args[++i]));
+        }else if(o.equals("-chunk")){
+          a.setChunk(Integer.parseInt(args[++i]));
+        }else if(o.equals("-correlation")){
+          a.setCorrelation(Correlation.of(args[++i]));
+        }else{
+          throw new IllegalArgumentException("Unknown option: "+o);
+        }
+      }
+      if(args.length-i!=3)throw new IllegalArgumentException("Expected a first date, a last date and an output file");
+    }catch(RuntimeException e){
+      System.err.println(e.getMessage());
+      System.err.println("Usage: java MayanAlmanac [-to csv|text|bin] [-threads n] [-chunk days] [-correlation name] <first date> <last date> <output|->");
+      System.exit(2);
+    }
+    MayanParser p = new MayanParser();
+    p.setCorrelation(a.corr);
+    int[] ends = new int[2];
+    for(int k=0;k<2;k++){
+      String d = args[i+k];
+      ends[k] = p.parseDate(d,0,d.length());
+      if(!p.ok()){
+        System.err.println("Cannot read "+d+": "+p.getError());
+        System.exit(2);
+      }
+    }
+    if(ends[1]<ends[0]){
+      System.err.println("The last date comes before the first");
+      System.exit(2);
+    }
+    String out = args[i+2];
+    try(WritableByteChannel oc = out.equals("-")?Channels.newChannel(System.out):
+          FileChannel.open(Paths.get(out),StandardOpenOption.WRITE,StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING)){
+      a.write(ends[0],ends[1],oc);
+    }
+  }
+
+
+  //Mutators -------------------------------------------------------------
+
+  public void setFormat(int f){
+    if(f<CSV||f>BIN)throw new IllegalArgumentException("Unknown output format");
+    format = f;
+  }
+
+  public void setThreads(int n){
+    if(n<1)throw new IllegalArgumentException("Need at least one thread");
+    threads = n;
+  }
+
+  public void setChunk(int days){
+    if(days<1)throw new IllegalArgumentException("Need at least one day per chunk");
+    chunk = days;
+  }
+
+  public void setCorrelation(Correlation c){
+    corr = c;
+  }
+
+
+  //Generation -------------------------------------------------------------
+
+  public long write(int first, int last, WritableByteChannel out) throws IOException {
+    if(last<first)throw new IllegalArgumentException("The last date comes before the first");
+    if(format==CSV){
+      write(out,CSV_HEADER,CSV_HEADER.length);
+    }else if(format==TEXT){
+      Renderer h = new Renderer(first,first);
+      h.textHeading();
+      write(out,h.out,h.len);
+    }
+    ExecutorService pool = (threads>1)?Executors.newFixedThreadPool(threads):null;
+    ArrayDeque<Future<Renderer>> pending = new ArrayDeque<Future<Renderer>>();
+    long days = (long)last-first+1;
+    try{
+      for(long s=first;s<=last;s+=chunk){
+        Renderer r = new Renderer((int)s,(int)Math.min(s+chunk-1,last));
+        if(pool==null){
+          emit(out,r.call());
+        }else{
+          if(pending.size()>threads)emit(out,pending.poll().get());
+          pending.add(pool.submit(r));
+        }
+      }
+      while(!pending.isEmpty()){
+        emit(out,pending.poll().get());
+      }
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted",e);
+    }catch(java.util.concurrent.ExecutionException e){
+      throw new IOException(e.getCause());
+    }finally{
+      if(pool!=null)pool.shutdownNow();
+    }
+    return days;
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private static void emit(WritableByteChannel out, Renderer r) throws IOException {
+    write(out,r.out,r.len);
+  }
+
+  private static void write(WritableByteChannel out, byte[] b, int len) throws IOException {
+    ByteBuffer buf = ByteBuffer.wrap(b,0,len);
+    while(buf.hasRemaining()){
+      out.write(buf);
+    }
+  }
+
+  private static byte[] ascii(String s){
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
+
+  private class Renderer implements Callable<Renderer> {
+    //Renders the days [first, last] of one chunk.
+    private final int first, last;
+    byte[] out;
+    int len;
+
+    //The day being rendered, rolled forward one day at a time
+    private int mdc;
+    private int bak, kat, tun, win, kin;
+    private int gd, gm, gy;
+    private int trecena, veintena, haabDay, haabMonth, round;
+    private int lord, seven, distance, quadrant;
+    private long station;
+    private int bearerNumber, bearerName;
+    private int moonAge, glyphC, glyphA, venus, venusDay;
+    //The station's Long Count and Calendar Round as text, redone when the station moves
+    private byte[] stationLC, stationCR;
+
+    Renderer(int first, int last){
+      this.first = first;
+      this.last = last;
+      int per = (format==BIN)?MayanDateBatch.RECORD:(format==TEXT)?380:280;
+      out = new byte[(int)Math.min(Integer.MAX_VALUE-8,((long)last-first+1)*per+64)];
+    }
+
+    public Renderer call(){
+      seek(first);
+      for(long d=first;;d++){
+        if(format==CSV){
+          putCSV();
+        }else if(format==TEXT){
+          putText();
+        }else{
+          putRecord();
+        }
+        if(d==last)break;
+        roll();
+      }
+      return this;
+    }
+
+    //Cycles
+
+    private void seek(int day){
+      //Works out every field of the given day from scratch, on 64 bits so that no cycle wraps at the ends of the ints
+      long[] l = MayanLong.longCount(day);
+      mdc = day;
+      bak = (int)l[0];
+      kat = (int)l[1];
+      tun = (int)l[2];
+      win = (int)l[3];
+      kin = (int)l[4];
+      long g = MayanDate.civil((long)day+corr.getConstant());
+      gd = (int)(g&31);
+      gm = (int)((g>>5)&15);
+      gy = (int)(g>>9);
+      trecena = MayanLong.trecena(day);
+      veintena = MayanLong.veintena(day);
+      haabDay = MayanLong.haabDay(day);
+      haabMonth = MayanLong.haabMonth(day);
+      round = MayanLong.roundPos(day);
+      lord = MayanLong.lord(day);
+      seven = MayanLong.sevenDay(day);
+      distance = MayanLong.stationDistance(day);
+      bearerNumber = MayanLong.bearerNumber(day);
+      bearerName = MayanLong.bearerName(day);
+      newStation(MayanLong.stationDay(day));
+      int c = corr.getConstant();
+      moonAge = LunarSeries.moonAge(day,c);
+      glyphC = LunarSeries.glyphC(day,c);
+      glyphA = LunarSeries.monthLength(day,c);
+      venus = LunarSeries.venusPhase(day);
+      venusDay = LunarSeries.venusDay(day);
+    }
+
+    private void roll(){
+      //Moves every field on to the next day
+      mdc++;
+      if(++kin==20){
+        kin = 0;
+        if(++win==18){
+          win = 0;
+          if(++tun==20){
+            tun = 0;
+            if(++kat==20){
+              kat = 0;
+              bak++;
+            }
+          }
+        }
+      }
+      if(gd<monthLength(gm,gy)){
+        gd++;
+      }else{
+        gd = 1;
+        if(gm<12){
+          gm++;
+        }else{
+          gm = 1;
+          gy++;
+        }
+      }
+      trecena = (trecena==13)?1:trecena+1;
+      veintena = (veintena==19)?0:veintena+1;
+      if(++haabDay==((haabMonth==18)?5:20)){
+        haabDay = 0;
+        haabMonth = (haabMonth==18)?0:haabMonth+1;
+      }
+      round = (round==18979)?0:round+1;
+      lord = (lord==9)?1:lord+1;
+      seven = (seven==7)?1:seven+1;
+      if(++distance==819){
+        distance = 0;
+        newStation(mdc);
+      }
+      if((haabDay==0&&haabMonth==0)||mdc==0||mdc==360){
+        //A new Haab' year, or an end of the first year of the era, which counts as an 8 Kab'an year
+        bearerNumber = MayanLong.bearerNumber(mdc);
+        bearerName = MayanLong.bearerName(mdc);
+      }
+      if(++moonAge==glyphA){
+        moonAge = 0;
+        glyphC = (glyphC==6)?1:glyphC+1;
+        glyphA = LunarSeries.monthLength(mdc,corr.getConstant());
+      }
+      if(++venusDay==LunarSeries.phaseLength(venus)){
+        venusDay = 0;
+        venus = (venus+1)&3;
+      }
+    }
+
+    private void newStation(long s){
+      //The station can lie before the first int MDC when the chunk begins near it; it is then left blank.
+      station = s;
+      quadrant = MayanLong.quadrant(s);
+      if(s==(int)s){
+        stationLC = MayanFormat.longCount(new StringBuilder(),(int)s).toString().getBytes(StandardCharsets.UTF_8);
+        stationCR = MayanFormat.calendarRound(new StringBuilder(),(int)s).toString().getBytes(StandardCharsets.UTF_8);
+      }else{
+        stationLC = stationCR = new byte[0];
+      }
+    }
+
+    private int monthLength(int m, int y){
+      if(m==2)return ((y%4==0&&y%100!=0)||y%400==0)?29:28;
+      return (m==4||m==6||m==9||m==11)?30:31;
+    }
+
+    //Output
+
+    private void putCSV(){
+      room(512);
+      putInt(mdc);
+      put(',');
+      putLongCount(bak,kat,tun,win,kin);
+      put(',');
+      putInt(gd);
+      put('/');
+      putInt(gm);
+      put('/');
+      putInt(gy);
+      put(',');
+      putRound(trecena,veintena,haabDay,haabMonth);
+      put(',');
+      putInt(round);
+      put(',');
+      put('G');
+      putInt(lord);
+      put(',');
+      putInt(seven);
+      put(',');
+      putInt(bearerNumber);
+      put(' ');
+      put(TZ_BYTES[bearerName]);
+      put(',');
+      if(stationLC.length>0)putInt((int)station);
+      put(',');
+      put(stationLC);
+      put(',');
+      put(stationCR);
+      put(',');
+      put(QU_BYTES[quadrant]);
+      put(',');
+      put(CO_BYTES[quadrant]);
+      put(',');
+      put(DAY_OMENS[veintena]);
+      put(',');
+      put(YEAR_OMENS[bearerNumber][bearerName]);
+      put(',');
+      putInt(moonAge);
+      put(',');
+      putInt(glyphC);
+      put(',');
+      putInt(glyphA);
+      put(',');
+      put(VE_BYTES[venus]);
+      put(',');
+      putInt(venusDay);
+      put(',');
+      putInt(LunarSeries.nodeDistance(mdc,corr.getConstant()));
+      put('\n');
+    }
+
+    private void putText(){
+      room(640);
+      int col = len;
+      putInt(mdc);
+      col = pad(col,0);
+      putLongCount(bak,kat,tun,win,kin);
+      col = pad(col,1);
+      put(GR_BYTES[gm]);
+      put(' ');
+      putInt(gd);
+      put(',');
+      put(' ');
+      putInt((gy<=0)?1-gy:gy);
+      put((gy<=0)?" BCE":" CE");
+      col = pad(col,2);
+      putRound(trecena,veintena,haabDay,haabMonth);
+      col = pad(col,3);
+      putInt(round);
+      col = pad(col,4);
+      put('G');
+      putInt(lord);
+      col = pad(col,5);
+      putInt(seven);
+      col = pad(col,6);
+      putInt(bearerNumber);
+      put(' ');
+      put(TZ_BYTES[bearerName]);
+      col = pad(col,7);
+      put(stationLC);
+      col = pad(col,8);
+      put(stationCR);
+      col = pad(col,9);
+      put(QU_BYTES[quadrant]);
+      col = pad(col,10);
+      put(CO_BYTES[quadrant]);
+      col = pad(col,11);
+      putInt(moonAge);
+      col = pad(col,12);
+      putInt(glyphC);
+      col = pad(col,13);
+      putInt(glyphA);
+      col = pad(col,14);
+      put(VE_BYTES[venus]);
+      put(' ');
+      putInt(venusDay+1);
+      put('/');
+      putInt(LunarSeries.phaseLength(venus));
+      col = pad(col,15);
+      int node = LunarSeries.nodeDistance(mdc,corr.getConstant());
+      putInt(node);
+      if(Math.abs(node)<=LunarSeries.SEASON)put('*');
+      col = pad(col,16);
+      put(DAY_OMENS[veintena]);
+      put(' ');
+      put(' ');
+      put(YEAR_OMENS[bearerNumber][bearerName]);
+      put('\n');
+    }
+
+    void textHeading(){
+      room(256);
+      int col = len;
+      for(int c=0;c<TEXT_HEADS.length;c++){
+        put(TEXT_HEADS[c]);
+        if(TEXT_WIDTHS[c]>0)col = pad(col,c);
+      }
+      put('\n');
+    }
+
+    private void putRecord(){
+      //MayanDateBatch's record layout, written straight from the rolled fields
+      room(MayanDateBatch.RECORD);
+      ByteBuffer r = ByteBuffer.wrap(out);
+      r.putInt(len,mdc);
+      r.putShort(len+4,(short)bak);
+      r.put(len+6,(byte)kat);
+      r.put(len+7,(byte)tun);
+      r.put(len+8,(byte)win);
+      r.put(len+9,(byte)kin);
+      r.put(len+10,(byte)trecena);
+      r.put(len+11,(byte)veintena);
+      r.put(len+12,(byte)haabDay);
+      r.put(len+13,(byte)haabMonth);
+      r.put(len+14,(byte)lord);
+      r.put(len+15,(byte)bearerNumber);
+      r.put(len+16,(byte)bearerName);
+      r.putInt(len+20,gy);
+      r.put(len+24,(byte)gm);
+      r.put(len+25,(byte)gd);
+      r.putShort(len+26,(short)distance);
+      r.put(len+28,(byte)quadrant);
+      r.put(len+29,(byte)seven);
+      len += MayanDateBatch.RECORD;
+    }
+
+    private void putLongCount(int b, int k, int t, int w, int i){
+      putInt(b);
+      put('.');
+      putInt(k);
+      put('.');
+      putInt(t);
+      put('.');
+      putInt(w);
+      put('.');
+      putInt(i);
+    }
+
+    private void putRound(int tn, int tv, int hd, int hm){
+      putInt(tn);
+      put(' ');
+      put(TZ_BYTES[tv]);
+      put(' ');
+      putInt(hd);
+      put(' ');
+      put(HA_BYTES[hm]);
+    }
+
+    private int pad(int col, int c){
+      //Pads the column begun at col out to its width (at least one space), and returns where the next begins
+      int end = col+TEXT_WIDTHS[c];
+      if(len>=end)end = len+1;
+      while(len<end)out[len++] = ' ';
+      return len;
+    }
+
+    private void room(int n){
+      if(len+n>out.length)out = java.util.Arrays.copyOf(out,Math.max(out.length*2,len+n));
+    }
+
+    private void put(char c){
+      out[len++] = (byte)c;
+    }
+
+    private void put(byte[] b){
+      System.arraycopy(b,0,out,len,b.length);
+      len += b.length;
+    }
+
+    private void put(String s){
+      for(int i=0;i<s.length();i++){
+        out[len++] = (byte)s.charAt(i);
+      }
+    }
+
+    private void putInt(int v){
+      if(v<0){
+        out[len++] = '-';
+        if(v==Integer.MIN_VALUE){
+          put("2147483648");
+          return;
+        }
+        v = -v;
+      }
+      int digits = 1;
+      for(int t=v;t>=10;t/=10)digits++;
+      for(int i=len+digits-1;i>=len;i--){
+        out[i] = (byte)('0'+(v%10));
+        v /= 10;
+      }
+      len += digits;
+    }
+  }
+
+}
@@ -11,21 +11,27 @@ import java.util.Calendar;
  * MayanDate(int day, int month, int year, boolean bc) -- Sets the date to the given Gregorian date.
  * MayanDate(int day, int month, int year) -- Sets the date to the given astronomical Gregorian date.
  * MayanDate() -- Sets the date to the current date.
+ * MayanDate(int days, Correlation c) -- Sets the date to the given MDC, with Gregorian dates found through correlation c.
  * 
  * Accessors:
  * int[] getTzolkin() -- Returns the Tzolk'in [Position, Trecena, Veintena].
  * int[] getHaab() -- Returns the Haab' [Position, Day, Month].
  * int[] getEight() -- Returns the 819-day cycle [Station Distance, Station Day, Color&Quadrant].
  * int[] getSupp() -- Returns the NonLunar Supplementary Series [Lord of the Night, Year Bearer Number, Year Bearer Name (Tzolkin), Seven-Day Cycle]
+ * int[] getLunar() -- Returns a fresh Lunar Series [Moon Age, Glyph C, Glyph C Patron, Month Length, Node Distance] (see class LunarSeries).
+ * int[] getVenus() -- Returns a fresh Venus Round [Position, Phase, Day of Phase] (see class LunarSeries).
  * int[] getLongCount() -- Returns the standard Long Count [Bak'tun, K'atun, Tun, Winal, K'in]
  * int[] getGregDate() -- Returns the Gregorian Date [day, month, year]. Note: the year is astronomical (BCE dates are negative numbers).
  * int getMDC() -- Returns the MDC (number of days since August 11, 3114 BCE).
  * int getCRD() -- Returns the position within the Calendar Round.
+ * Correlation getCorrelation() -- Returns the correlation used for Gregorian dates (GMT unless set).
  * String toString() -- Returns a String containing the Long Count, Tzolk'in, and Haab'.
  * String lcToString() -- Returns a String containing the Long Count.
  * String crToString() -- Returns a String containing the Tzolk'in and Haab'.
  * String eightToString() -- Returns a String containing the 819-day cycle Quadrant and Color.
  * String suppToString() -- Returns a String containing the NonLunar Supplementary Series.
+ * String lunarToString() -- Returns a String containing the Lunar Series, and the eclipse season if the date falls in one.
+ * String venusToString() -- Returns a String containing the Venus Round.
  * String gregToString() -- Returns a String containing the Gregorian Date.
  * 
  * Mutators:
@@ -36,6 +42,7 @@ import java.util.Calendar;
  * void today() -- Sets the date to the current date. 
  * void oneUp() -- Increments the day by 1.
  * void oneDown() -- Decrements the day by 1.
+ * void setCorrelation(Correlation c) -- Uses correlation c for Gregorian dates from now on. The MDC stays; the Gregorian date moves.
  * 
  * 
  * Public Method Toolbox:
@@ -48,14 +55,32 @@ import java.util.Calendar;
  * int gregMDC(int day, int month, int year) -- Converts Gregorian date to MDC. Note: the year is astronomical (BCE dates give negative numbers).
  * int[] mdcGREG(int day) -- Converts given MDC to Gregorian [day, month, year].
  * int[] longCount(int day) -- Converts given MDC to standard Long Count Format [Bak'tun, K'atun, Tun, Winal, K'in].
+ *   Days before 0.0.0.0.0 have a negative Bak'tun, and every cycle counts back through them without a break.
+ *   (See class MayanLong for the same arithmetic on 64 bits, with Long Counts of more than 5 places.)
  * int unLongCount(int[] l) -- Converts given standard Long Count [Bak'tun, K'atun, Tun, Winal, K'in] to MDC.
  * 
  * int[] tzolkinOf(int day) -- Returns the Tzolk'in [Position, Trecena, Veintena] of the given MDC.
  * int[] haabOf(int day) -- Returns the Haab' [Position, Day, Month] of the given MDC.
- * 
+ *
+ * Batch Converters (read the slice [off, off+len) of the input columns and fill the same indices of caller-supplied output columns, without allocating):
+ * void longCount(int[] days, int off, int len, int[] bak, int[] kat, int[] tun, int[] win, int[] kin) -- MDC column to Long Count columns.
+ * void unLongCount(int[] bak, int[] kat, int[] tun, int[] win, int[] kin, int off, int len, int[] days) -- Long Count columns to MDC column.
+ * void mdcGREG(int[] days, int off, int len, int[] day, int[] month, int[] year) -- MDC column to Gregorian columns.
+ * void gregMDC(int[] day, int[] month, int[] year, int off, int len, int[] days) -- Gregorian columns to MDC column.
+ * void tzolkinOf(int[] days, int off, int len, int[] trecena, int[] veintena) -- MDC column to Tzolk'in columns.
+ * void haabOf(int[] days, int off, int len, int[] day, int[] month) -- MDC column to Haab' columns.
+ * void lordOf(int[] days, int off, int len, int[] lord) -- MDC column to Lord of the Night column.
+ * void eightOf(int[] days, int off, int len, int[] station, int[] quadrant) -- MDC column to 819-day Station Day and Color&Quadrant columns.
+ * void lunarOf(int[] days, int off, int len, int[] age, int[] glyphC, int[] length) -- MDC column to Moon Age, Glyph C and Month Length columns.
+ * void venusOf(int[] days, int off, int len, int[] phase, int[] venusDay) -- MDC column to Venus Round Phase and Day of Phase columns.
+ * void eclipseOf(int[] days, int off, int len, int[] distance) -- MDC column to lunar Node Distance column.
+ * void mdcGREG(int[] days, int off, int len, Correlation[] c, int[][] day, int[][] month, int[][] year) -- MDC column to Gregorian
+ *   columns under each of the correlations c (day[k], month[k] and year[k] for c[k]), in a single pass over the MDCs.
+ *
  * int[] roundBorders(int day) -- Calculates the Beginning and Ending MDC values of the Calendar Round containing the given MDC.
  * int[] estimate(int round, int n) -- Calculates n possible MDC values corresponding to a Calendar Round value, starting at 0.
- * int[] estimate(int round, int n, int g) -- Calculates n possible MDC values corresponding to a Calendar Round value, starting at 0, given a Lord of The Night g.
+ * int[] estimate(int round, int n, int g) -- Calculates n possible MDC values corresponding to a Calendar Round value, starting at 0, given a Lord of The Night g. Returns an empty array if g is not a Lord.
+ *   (See class Congruence for the general solver over Calendar Round, Lord of the Night, 819-day and 7-day constraints in any window.)
  * int roundPos(int tn, int td, int hn, int hm) -- Calculates the position in the Calendar Round from Tzolk'in and Haab' values.
  * 
  * String lcCond(int[] longCount) -- Converts a standard Long Count to a useable String.
@@ -71,13 +96,19 @@ public class MayanDate {
   
   //Constants -------------------------------------------------------------
   
-  private int C_CONS = 584283; //Correlation Constant (set to GMT)
-  private String[] TZ_NAMES = {"Ajaw","Imix","Ik'","Ak'bal","K'an","Chikchan","Kimi","Manik","Lamat","Muluk","Ok","Chuwen","Eb'","Ben","Ix","Men","Kib'","Kab'an","Etz'nab'","Kawak"};
-  private String[] HA_NAMES = {"Pop","Wo","Sip","Sots'","Sek","Xul","Yaxk'in","Mol","Ch'en","Yax","Sak","Keh","Mak","K'ank'in","Muwan","Pax","K'ayab","Kumk'u","Wayeb"};
-  private String[] EI_QUADRANTS = {"Elk'ihn","Xaman","Ochk'ihn","Nojo'l","East","North","West","South"};
-  private String[] EI_COLORS = {"Chak","Sak","Ik'","Kan","Red","White","Black","Yellow"};
-  private String[] GR_MONTHS = {"ERROR","January","February","March","April","May","June","July","August","September","October","November","December"};
-  private String[] DAY_PROPHECIES = {"The Day of Rulers:\nFavorable for offering candles.",
+  private Correlation corr = Correlation.GMT;
+  private int C_CONS = 584283; //Correlation Constant (that of corr)
+  //Julian Days 0 to FAST_LAST (some 1.47 million years) convert to Gregorian in int arithmetic without overflow
+  private static final long FAST_LAST = 536802342;
+  //Julian Days of the first and last dates whose year fits an int-packed Gregorian date (see packedJDN)
+  static final long PACKED_FIRST = jdn(1,1,-(1L<<22));
+  static final long PACKED_LAST = jdn(31,12,(1L<<22)-1);
+  static final String[] TZ_NAMES = {"Ajaw","Imix","Ik'","Ak'bal","K'an","Chikchan","Kimi","Manik","Lamat","Muluk","Ok","Chuwen","Eb'","Ben","Ix","Men","Kib'","Kab'an","Etz'nab'","Kawak"};
+  static final String[] HA_NAMES = {"Pop","Wo","Sip","Sots'","Sek","Xul","Yaxk'in","Mol","Ch'en","Yax","Sak","Keh","Mak","K'ank'in","Muwan","Pax","K'ayab","Kumk'u","Wayeb"};
+  static final String[] EI_QUADRANTS = {"Elk'ihn","Xaman","Ochk'ihn","Nojo'l","East","North","West","South"};
+  static final String[] EI_COLORS = {"Chak","Sak","Ik'","Kan","Red","White","Black","Yellow"};
+  static final String[] GR_MONTHS = {"ERROR","January","February","March","April","May","June","July","August","September","October","November","December"};
+  static final String[] DAY_PROPHECIES = {"The Day of Rulers:\nFavorable for offering candles.",
     "The Day of Earth:\nFavorable for praying on behalf of home and family.",
     "The Day of Wind:\nFavorable for sowing corn.",
     "The Day of Darkness:\nFavorable for doing evil to others.",
@@ -125,6 +156,12 @@ public class MayanDate {
    today();
   }
   
+  public MayanDate(int days, Correlation c){
+    corr = c;
+    C_CONS = c.getConstant();
+    setMDC(days);
+  }
+  
   
   //Mutators -------------------------------------------------------------
   
@@ -159,6 +196,7 @@ public class MayanDate {
   }
    
   public void setLongCount(int[] l){
+    long t = MayanMetrics.start();
     if(l.length==5){
       lc = l;
     }else{
@@ -168,6 +206,7 @@ public class MayanDate {
     mdc = unLongCount(lc);
     greg = mdcGREG(mdc);
     update();
+    MayanMetrics.stop(MayanMetrics.SET_LONG_COUNT,t);
   }
    
   public void today(){
@@ -189,6 +228,12 @@ public class MayanDate {
      setMDC(mdc-1);
   }
   
+  public void setCorrelation(Correlation c){
+    corr = c;
+    C_CONS = c.getConstant();
+    setMDC(mdc);
+  }
+  
   
   //Accessors ---------------------------------------------------------------
   
@@ -214,6 +259,21 @@ public class MayanDate {
     return out;
   }
   
+  public String lunarToString(){
+    int[] l = getLunar();
+    String out = "Moon: "+l[0]+" days old    Glyph C: "+l[1]+" ("+LunarSeries.PATRONS[l[2]]+")    Glyph A: "+l[3];
+    if(Math.abs(l[4])<=LunarSeries.SEASON){
+      out += "    Eclipse season: "+Math.abs(l[4])+((l[4]<0)?" days before the ":" days after the ")+
+        ((LunarSeries.node(mdc,C_CONS)==LunarSeries.ASCENDING)?"ascending node":"descending node");
+    }
+    return out;
+  }
+  
+  public String venusToString(){
+    int[] v = getVenus();
+    return "Venus: "+LunarSeries.VENUS_PHASES[v[1]]+" (day "+(v[2]+1)+" of "+LunarSeries.phaseLength(v[1])+")    Venus Round: "+v[0];
+  }
+  
   public String gregToString(){
     return gregCond(greg);
   }
@@ -234,6 +294,22 @@ public class MayanDate {
     return supp;
   }
   
+  public int[] getLunar(){
+    //Worked out on each call rather than in update(), which every new date goes through
+    int[] out = new int[5];
+    out[0] = LunarSeries.moonAge(mdc,C_CONS);
+    out[1] = LunarSeries.glyphC(mdc,C_CONS);
+    out[2] = LunarSeries.patron(mdc,C_CONS);
+    out[3] = LunarSeries.monthLength(mdc,C_CONS);
+    out[4] = LunarSeries.nodeDistance(mdc,C_CONS);
+    return out;
+  }
+  
+  public int[] getVenus(){
+    int[] out = {LunarSeries.venusPos(mdc),LunarSeries.venusPhase(mdc),LunarSeries.venusDay(mdc)};
+    return out;
+  }
+  
   public int[] getLongCount(){
     return lc;
   }
@@ -246,6 +322,10 @@ public class MayanDate {
     return mdc;
   }
   
+  public Correlation getCorrelation(){
+    return corr;
+  }
+  
   public int getCRD(){
     return crd;
   }
@@ -255,41 +335,94 @@ public class MayanDate {
   
   public int gregMDC(int day, int month, int year){
     //Gregorian to MDC
-    int a = floop((14-month)/12);
-    int y = year+4800-a;
-    int m = month+(12*a)-3;
-    int jday = day+floop(((153*m)+2)/5)+(365*y)+floop(y/4)-floop(y/100)+floop(y/400)-32045;
-    return jday-C_CONS;
+    long t = MayanMetrics.start();
+    int out = (int)(jdn(day,month,year)-C_CONS);
+    MayanMetrics.stop(MayanMetrics.GREG_MDC,t);
+    return out;
   }
   
   public int[] mdcGREG(int day){
     //MDC to Gregorian
-    int j = day+C_CONS;
-    int f = j + 1363 + (((4*j+274277)/146097)*3)/4;
-    int e = 4*f+3;
-    int g = (e%1461)/4;
-    int h = 5*g+2;
+    long t = MayanMetrics.start();
+    long j = (long)day+C_CONS;
     int[] out = new int[3];
-    out[0]=((h%153)/5)+1;
-    out[1]=(((h/153)+2)%12)+1;
-    out[2]=(e/1461)-4716+((14-out[1])/12);
+    if(j>=0&&j<FAST_LAST){
+      //Richards' int algorithm, the common path; civil() does the rest in long arithmetic
+      int f = (int)j + 1363 + (((4*(int)j+274277)/146097)*3)/4;
+      int e = 4*f+3;
+      int h = 5*((e%1461)/4)+2;
+      out[0]=((h%153)/5)+1;
+      out[1]=(((h/153)+2)%12)+1;
+      out[2]=(e/1461)-4716+((14-out[1])/12);
+    }else{
+      long c = civil(j);
+      out[0]=(int)(c&31);
+      out[1]=(int)((c>>5)&15);
+      out[2]=(int)(c>>9);
+    }
+    MayanMetrics.stop(MayanMetrics.MDC_GREG,t);
     return out;
   }
   
+  long packedGREG(int day){
+    //MDC to Gregorian packed as civil() packs it, for callers that must not allocate
+    long j = (long)day+C_CONS;
+    return packs(j)?packedJDN(j):civil(j);
+  }
+  
+  static int packedJDN(long j){
+    //Julian Day Number to Gregorian, packed as (year<<9 | month<<5 | day) in an int; only for Julian Days that packs(j)
+    if(j>=0&&j<FAST_LAST){
+      //Richards' int algorithm, as in mdcGREG
+      int f = (int)j + 1363 + (((4*(int)j+274277)/146097)*3)/4;
+      int e = 4*f+3;
+      int h = 5*((e%1461)/4)+2;
+      int m = (((h/153)+2)%12)+1;
+      return (((e/1461)-4716+((14-m)/12))<<9)|(m<<5)|(((h%153)/5)+1);
+    }
+    return (int)civil(j);
+  }
+  
+  static boolean packs(long j){
+    //Whether the Gregorian year of Julian Day j fits the 23 bits packedJDN leaves it (about 4.19 million years either way)
+    return j>=PACKED_FIRST&&j<=PACKED_LAST;
+  }
+  
+  static long jdn(long d, int m, long y){
+    //Gregorian to Julian Day Number, counting from 1 March of year 0 so that the leap day ends the counting year
+    long a = (14-m)/12;           //1 for January and February
+    y -= a;
+    long mp = m+12*a-3;           //Months since March
+    long era = Math.floorDiv(y,400);
+    long yoe = y-era*400;
+    return era*146097+365*yoe+yoe/4-yoe/100+(153*mp+2)/5+d+1721119;
+  }
+  
+  static long civil(long j){
+    //Julian Day Number to Gregorian, packed as (year<<9 | month<<5 | day) in a long
+    long z = j-1721120;
+    long era = Math.floorDiv(z,146097);
+    long doe = z-era*146097;                                  //Day of the 400-year era, 0-146096
+    long yoe = (doe-doe/1460+doe/36524-doe/146096)/365;       //Year of the era, 0-399
+    long doy = doe-(365*yoe+yoe/4-yoe/100);                   //Day of the year from 1 March, 0-365
+    long mp = (5*doy+2)/153;                                  //Months since March, 0-11
+    return ((yoe+era*400+(mp/10))<<9)|((mp+3-12*(mp/10))<<5)|(doy-(153*mp+2)/5+1);
+  }
+  
   public int[] longCount(int day){
-    //MDC to [Bak'tun,K'atun,Tun,Winal,K'in]
+    //MDC to [Bak'tun,K'atun,Tun,Winal,K'in]; before 0.0.0.0.0 the Bak'tun goes negative and the rest count on as usual
     int[] out = {0,0,0,0,0};
     //Bak'tun
-    out[0]=((day-(day%144000))/144000);
+    out[0]=Math.floorDiv(day,144000);
     day = day-(out[0]*144000);
     //K'atun
-    out[1]=((day-(day%7200))/7200);
+    out[1]=day/7200;
     day = day-(out[1]*7200);
     //Tun
-    out[2]=((day-(day%360))/360);
+    out[2]=day/360;
     day = day-(out[2]*360);
     //Winal
-    out[3]=((day-(day%20))/20);
+    out[3]=day/20;
     day = day-(out[3]*20);
     //K'in
     out[4]=day;
@@ -304,17 +437,16 @@ public class MayanDate {
   public int[] tzolkinOf(int day){
     //Tzolk'in from MDC
     int[] out = new int[3];      //[Position, Trecena, Veintena]
-    out[0] = (day+159)%260;      //Tzolk'in Position
-    out[1] = (out[0]+1)%13;      //Tzolk'in Trecena
-    if(out[1]==0)out[1]=13;
-    out[2]=Math.abs(out[0]+1)%20;        //Tzolk'in Veintena
+    out[0] = Math.floorMod(day+159L,260);  //Tzolk'in Position
+    out[1] = (out[0]%13)+1;      //Tzolk'in Trecena
+    out[2] = (out[0]+1)%20;      //Tzolk'in Veintena
     return out;
   }
   
   public int[] haabOf(int day){
     //Haab' from MDC
     int[] out = new int[3];      //[Position, Day, Month]
-    out[0] = (day+348)%365;      //Haab' Position
+    out[0] = Math.floorMod(day+348L,365);  //Haab' Position
     out[1] = out[0]%20;          //Haab' Day
     out[2] = out[0]/20;          //Haab' Month
     return out;
@@ -343,35 +475,30 @@ public class MayanDate {
   public int[] roundBorders(int day){
     //Calculates the Beginning and Ending MDC values of the Calendar Round containing the given MDC.
     int[] out = new int[2];
-    out[0]=day-(day%18980);
-    out[1]=(day-(day%18980))+18979;
+    out[0]=day-Math.floorMod(day,18980);
+    out[1]=out[0]+18979;
     return out;
   }
   
   public int[] estimate(int rd, int n){
     //Calculates n possible MDC values corresponding to a Calendar Round value, starting at 0.
+    long t = MayanMetrics.start();
     if(n<=0)n=1;
     int[] out = new int[n];
     for(int i=0;i<n;i++){
       out[i] = rd+(i*18980);
     }
+    MayanMetrics.stop(MayanMetrics.ESTIMATE,t,n,out.length);
     return out;
   }
   
   public int[] estimate(int rd, int n, int g){
     //Calculates n possible MDC values corresponding to a Calendar Round value, starting at 0, with a Lord of The Night g.
+    //Solved in closed form; an impossible Lord (outside 1-9) gives no values at all.
+    long t = MayanMetrics.start();
     if(n<=0)n=1;
-    if(g==9)g=0;
-    int[] out = new int[n];
-    int i=0;
-    int z=0;
-    while(i<n&&z<100000){
-      if((rd+(z*18980))%9==g){
-      out[i] = rd+(z*18980);
-      i++;
-      }
-      z++;
-    }
+    int[] out = Congruence.round(rd).and(Congruence.lord(g)).take(0,n);
+    MayanMetrics.stop(MayanMetrics.ESTIMATE,t,n,out.length);
     return out;
   }
   
@@ -388,66 +515,187 @@ public class MayanDate {
     pcr = ((pcr % 18980) + 18980) % 18980;
     return pcr;
   }
-  
+
+
+  //Batch Converters -----------------------------------------------------------
+  //Each reads the slice [off, off+len) of its input columns and writes the same indices of the output columns.
+
+  public void longCount(int[] days, int off, int len, int[] bak, int[] kat, int[] tun, int[] win, int[] kin){
+    //MDC column to [Bak'tun,K'atun,Tun,Winal,K'in] columns
+    for(int i=off;i<off+len;i++){
+      int day = days[i];
+      bak[i] = Math.floorDiv(day,144000);
+      day = day-bak[i]*144000;
+      kat[i] = day/7200;
+      day = day%7200;
+      tun[i] = day/360;
+      day = day%360;
+      win[i] = day/20;
+      kin[i] = day%20;
+    }
+  }
+
+  public void unLongCount(int[] bak, int[] kat, int[] tun, int[] win, int[] kin, int off, int len, int[] days){
+    //[Bak'tun,K'atun,Tun,Winal,K'in] columns to MDC column
+    for(int i=off;i<off+len;i++){
+      days[i] = kin[i]+(20*win[i])+(360*tun[i])+(7200*kat[i])+(144000*bak[i]);
+    }
+  }
+
+  public void mdcGREG(int[] days, int off, int len, int[] dd, int[] mm, int[] yy){
+    //MDC column to Gregorian [day, month, year] columns
+    for(int i=off;i<off+len;i++){
+      long c = packedGREG(days[i]);
+      dd[i] = (int)(c&31);
+      mm[i] = (int)((c>>5)&15);
+      yy[i] = (int)(c>>9);
+    }
+  }
+
+  public void mdcGREG(int[] days, int off, int len, Correlation[] cs, int[][] dd, int[][] mm, int[][] yy){
+    //MDC column to Gregorian [day, month, year] columns under each correlation, reading each MDC once
+    for(int i=off;i<off+len;i++){
+      int day = days[i];
+      for(int k=0;k<cs.length;k++){
+        long j = (long)day+cs[k].getConstant();
+        long c = packs(j)?packedJDN(j):civil(j);
+        dd[k][i] = (int)(c&31);
+        mm[k][i] = (int)((c>>5)&15);
+        yy[k][i] = (int)(c>>9);
+      }
+    }
+  }
+
+  public void gregMDC(int[] dd, int[] mm, int[] yy, int off, int len, int[] days){
+    //Gregorian [day, month, year] columns to MDC column
+    for(int i=off;i<off+len;i++){
+      days[i] = (int)(jdn(dd[i],mm[i],yy[i])-C_CONS);
+    }
+  }
+
+  public void tzolkinOf(int[] days, int off, int len, int[] trecena, int[] veintena){
+    //MDC column to Tzolk'in [Trecena, Veintena] columns
+    for(int i=off;i<off+len;i++){
+      int p = Math.floorMod(days[i]+159L,260);
+      trecena[i] = (p%13)+1;
+      veintena[i] = (p+1)%20;
+    }
+  }
+
+  public void haabOf(int[] days, int off, int len, int[] hday, int[] hmonth){
+    //MDC column to Haab' [Day, Month] columns
+    for(int i=off;i<off+len;i++){
+      int p = Math.floorMod(days[i]+348L,365);
+      hday[i] = p%20;
+      hmonth[i] = p/20;
+    }
+  }
+
+  public void lordOf(int[] days, int off, int len, int[] lord){
+    //MDC column to Lord of the Night column (G1-G9)
+    for(int i=off;i<off+len;i++){
+      lord[i] = Math.floorMod(days[i]-1L,9)+1;
+    }
+  }
+
+  public void eightOf(int[] days, int off, int len, int[] station, int[] quadrant){
+    //MDC column to 819-day cycle [Station Day, Color&Quadrant] columns
+    for(int i=off;i<off+len;i++){
+      long s = (long)days[i]-Math.floorMod(days[i]+3L,819);
+      station[i] = (int)s;
+      quadrant[i] = Math.floorMod(s+159,260)%4;
+    }
+  }
+
+  public void lunarOf(int[] days, int off, int len, int[] age, int[] glyphC, int[] length){
+    //MDC column to Lunar Series [Moon Age, Glyph C, Month Length] columns
+    LunarSeries.lunarOf(days,off,len,C_CONS,age,glyphC,length);
+  }
+
+  public void venusOf(int[] days, int off, int len, int[] phase, int[] venusDay){
+    //MDC column to Venus Round [Phase, Day of Phase] columns
+    LunarSeries.venusOf(days,off,len,phase,venusDay);
+  }
+
+  public void eclipseOf(int[] days, int off, int len, int[] distance){
+    //MDC column to signed lunar Node Distance column
+    LunarSeries.eclipseOf(days,off,len,C_CONS,distance);
+  }
+
   
   //Internal -----------------------------------------------------------------
   
   private void update(){
     //Updates the Calendar Round and Supplementary Series.
+    long t = MayanMetrics.start();
     //Calendar Round Position:
-    crd = mdc % 18980;
+    crd = Math.floorMod(mdc,18980);
+    if(CycleTables.isEnabled()){
+      //Table-driven path (see class CycleTables)
+      tzolkin = new int[3];
+      haab = new int[3];
+      eight = new int[3];
+      supp = new int[4];
+      CycleTables.fill(mdc,tzolkin,haab,eight,supp);
+      MayanMetrics.stop(MayanMetrics.UPDATE,t);
+      return;
+    }
     tzolkin = tzolkinOf(mdc);
     haab = haabOf(mdc);
     
     //819-day Cycle:
     eight = new int[3];                  //[Station Distance, Station Day, Color and Quadrant]
-    eight[0] = (mdc+3)%819;              //Distance from last station
+    eight[0] = Math.floorMod(mdc+3L,819); //Distance from last station
     eight[1] = mdc-eight[0];             //MDC of last station 
-    eight[2] = tzolkinOf(eight[1])[0]%4; //Color and Quandrant indices of last station
+    eight[2] = Math.floorMod((long)mdc-eight[0]+159,260)%4; //Color and Quandrant indices of last station (its Tzolk'in position mod 4)
     
     //Supplementary Series:
     supp = new int[4];                   //[Lord of the Night, Year Bearer Number, Year Bearer Name, Seven-Day Cycle]
-    supp[0] = mdc%9;                     //Lord of the Night
-    if(supp[0]==0)supp[0] = 9;
-    int zeroDay = mdc - ((mdc+348)%365);
-    supp[1] = tzolkinOf(zeroDay)[1];     //Year Bearer Number
-    supp[2] = tzolkinOf(zeroDay)[2];     //Year Bearer Name
-    if(mdc<360){
+    supp[0] = Math.floorMod(mdc-1L,9)+1;  //Lord of the Night
+    long zeroDay = (long)mdc-Math.floorMod(mdc+348L,365); //First day of the Haab' year, which may lie before the first int
+    int zeroPos = Math.floorMod(zeroDay+159,260); //Its Tzolk'in position
+    supp[1] = (zeroPos%13)+1;            //Year Bearer Number
+    supp[2] = (zeroPos+1)%20;            //Year Bearer Name
+    if(mdc>=0&&mdc<360){
       supp[1] = 8;
       supp[2] = 17;
     }
     supp[3] = eight[0]%7;                //7-day cycle
     if(supp[3]==0)supp[3] = 7;
-  }
-  
-  private int floop(double b){
-    //A less messy Math.floor()
-    return (int)Math.floor(b);
+    MayanMetrics.stop(MayanMetrics.UPDATE,t);
   }
   
   public String lcCond(int[] lco){
     //Condenses Long Count Dates
     if(lco.length!=5){
       return "ERROR: Not a Long Count";
-    }else{
-      return lco[0]+"."+lco[1]+"."+lco[2]+"."+lco[3]+"."+lco[4];
     }
+    long t = MayanMetrics.start();
+    String out = lco[0]+"."+lco[1]+"."+lco[2]+"."+lco[3]+"."+lco[4];
+    MayanMetrics.stop(MayanMetrics.FORMAT,t);
+    return out;
   }
   
   public String crCond(int[] tzool,int[] haabf){
     //Condenses Calendar Round Dates
-    return tzool[1]+" "+TZ_NAMES[tzool[2]]+" "+haabf[1]+" "+HA_NAMES[haabf[2]];
+    long t = MayanMetrics.start();
+    String out = tzool[1]+" "+TZ_NAMES[tzool[2]]+" "+haabf[1]+" "+HA_NAMES[haabf[2]];
+    MayanMetrics.stop(MayanMetrics.FORMAT,t);
+    return out;
   }
   
   public String gregCond(int[] gregor){
     //Condenses Gregorian Dates
+    long t = MayanMetrics.start();
     String trypp = " CE";
     int yearr = gregor[2];
     if(yearr<=0){
       trypp = " BCE";
       yearr = Math.abs(yearr-1);
     }
-    return GR_MONTHS[gregor[1]]+" "+gregor[0]+", "+yearr+trypp;
+    String out = GR_MONTHS[gregor[1]]+" "+gregor[0]+", "+yearr+trypp;
+    MayanMetrics.stop(MayanMetrics.FORMAT,t);
+    return out;
   }
   
 
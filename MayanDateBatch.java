@@ -0,0 +1,499 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+ * Mayan Date Batch Converter
+ * For use with classes MayanDate, MayanDay, MayanParser and MayanFormat
+ *
+ * Headless converter from a file of dates, one per line (or one per row of a CSV column), to full date records.
+ * The input is memory-mapped a bounded window at a time and the output written through a bounded buffer, so files
+ * of any size convert in constant memory. With -threads, windows are converted in parallel and written in order.
+ *
+ * Usage: java MayanDateBatch [options] <input file> <output file, or - for standard output>
+ *
+ * Options:
+ * -from auto|greg|lc|mdc -- Input date format (default auto), read by MayanParser:
+ *                             greg -- Gregorian, e.g. 21/12/2012, 11/8/3114 BCE or Aug 11, 3114 BCE
+ *                             lc   -- Long Count, e.g. 9.12.11.5.18
+ *                             mdc  -- MDC (number of days since August 11, 3114 BCE)
+ *                             auto -- Gregorian if the date has a letter or '/', Long Count if it has a '.', otherwise MDC
+ * -to csv|bin            -- Output format (default csv).
+ * -column <n>            -- Read the date from the n-th comma-separated column, counting from 0 (default: the whole line).
+ * -header                -- Skip the first line of the input.
+ * -threads <n>           -- Convert with n threads (default 1).
+ * -chunk <KB>            -- Input window size in kilobytes (default 256). At most threads+1 windows are converted or
+ *                           held at once, each taking up to about ten times its size in output.
+ * -correlation <list>    -- Comma-separated correlations (names or constants, see class Correlation; default GMT).
+ *                           Gregorian input is read under the first. Each gets its own Gregorian output, all found in
+ *                           the same pass, sharing the Long Count and Calendar Round work.
+ *
+ * CSV output has a header row and one row per input line:
+ *   mdc,long_count,gregorian,calendar_round,lord,station,bearer
+ *   1364360,9.9.9.16.0,7/2/623,1 Ajaw 18 K'ayab,G5,1363632,1 Ik'
+ * where gregorian is astronomical day/month/year and station is the MDC of the last 819-day station. With
+ * -correlation, gregorian is replaced by one column per correlation, named gregorian_<name>.
+ * Lines that cannot be read give a row with ERROR in the first column, and are reported on standard error with the
+ * parser's reason and column. So do dates whose Gregorian year, under any of the correlations, lies beyond some 4.19
+ * million years either way (MDCs past about 1.53 billion either way), which cannot be written.
+ *
+ * Binary output is one fixed-width 32-byte big-endian record per input line, with no header:
+ *   0  int   MDC                       20 int   Gregorian year (astronomical)
+ *   4  short Bak'tun                   24 byte  Gregorian month
+ *   6  byte  K'atun, Tun, Winal, K'in  25 byte  Gregorian day
+ *   10 byte  Trecena, Veintena         26 short 819-day Station Distance
+ *   12 byte  Haab' Day, Haab' Month    28 byte  819-day Color&Quadrant
+ *   14 byte  Lord of the Night         29 byte  7-day cycle
+ *   15 byte  Year Bearer Number, Name  30 byte  Status (0 = converted, 1 = unreadable line)
+ *   17-19    reserved (0)              31 byte  reserved (0)
+ * where the Gregorian date is under the first correlation. Each further correlation k (1, 2, ...) adds 8 bytes:
+ *   24+8k int Gregorian year           28+8k byte Gregorian month, 29+8k byte Gregorian day, 30+8k reserved (0)
+ */
+
+public class MayanDateBatch {
+
+  public static final int FROM_AUTO = 0, FROM_GREG = 1, FROM_LC = 2, FROM_MDC = 3;
+  public static final int RECORD = 32;
+
+  //The most unreadable lines reported per window
+  private static final int MAX_REPORT = 16;
+
+  private static final byte[][] TZ_BYTES = MayanFormat.encode(MayanDate.TZ_NAMES);
+  private static final byte[][] HA_BYTES = MayanFormat.encode(MayanDate.HA_NAMES);
+
+  private int from = FROM_AUTO;
+  private boolean binary = false;
+  private int column = -1;
+  private boolean header = false;
+  private int threads = 1;
+  private int chunk = 256<<10;
+  private Correlation[] correlations = {Correlation.GMT};
+
+  private long lines, errors;
+
+
+  public static void main(String[] args) throws Exception {
+    MayanDateBatch b = new MayanDateBatch();
+    int i = 0;
+    try{
+      for(;i<args.length&&args[i].startsWith("-")&&args[i].length()>1;i++){
+        String a = args[i];
+        if(a.equals("-from")){
+          String f = args[++i];
+          b.setFrom(f.equals("greg")?FROM_GREG:f.equals("lc")?FROM_LC:f.equals("mdc")?FROM_MDC:f.equals("auto")?FROM_AUTO:-1);
+        }else if(a.equals("-to")){
+          String t = args[++i];
+          if(!t.equals("csv")&&!t.equals("bin"))throw new IllegalArgumentException("Unknown output format: "+t);
+          b.setBinary(t.equals("bin"));
+        }else if(a.equals("-column")){
+          b.setColumn(Integer.parseInt(args[++i]));
+        }else if(a.equals("-header")){
+          b.setHeader(true);
+        }else if(a.equals("-threads")){
+          b.setThreads(Integer.parseInt(args[++i]));
+        }else if(a.equals("-chunk")){
+          b.setChunk(Integer.parseInt(args[++i])<<10);
+        }else if(a.equals("-correlation")){
+          String[] names = args[++i].split(",");
+          Correlation[] cs = new Correlation[names.length];
+          for(int k=0;k<names.length;k++){
+            cs[k] = Correlation.of(names[k]);
+          }
+          b.setCorrelations(cs);
+        }else{
+          throw new IllegalArgumentException("Unknown option: "+a);
+        }
+      }
+      if(args.length-i!=2)throw new IllegalArgumentException("Expected an input and an output file");
+    }catch(RuntimeException e){
+      System.err.println(e.getMessage());
+      System.err.println("Usage: java MayanDateBatch [-from auto|greg|lc|mdc] [-to csv|bin] [-column n] [-header] [-threads n] [-chunk KB] [-correlation list] <input> <output|->");
+      System.exit(2);
+    }
+    b.convert(args[i],args[i+1]);
+    if(b.getErrors()>0){
+      System.err.println(b.getErrors()+" of "+b.getLines()+" lines could not be read");
+      System.exit(1);
+    }
+  }
+
+
+  //Mutators -------------------------------------------------------------
+
+  public void setFrom(int f){
+    if(f<FROM_AUTO||f>FROM_MDC)throw new IllegalArgumentException("Unknown input format");
+    from = f;
+  }
+
+  public void setBinary(boolean b){
+    binary = b;
+  }
+
+  public void setColumn(int c){
+    if(c<-1)throw new IllegalArgumentException("Negative column: "+c);
+    column = c;
+  }
+
+  public void setHeader(boolean h){
+    header = h;
+  }
+
+  public void setThreads(int n){
+    if(n<1)throw new IllegalArgumentException("Need at least one thread");
+    threads = n;
+  }
+
+  public void setChunk(int bytes){
+    if(bytes<1024)throw new IllegalArgumentException("Chunk too small");
+    chunk = bytes;
+  }
+
+  public void setCorrelations(Correlation... cs){
+    if(cs.length<1)throw new IllegalArgumentException("Need at least one correlation");
+    correlations = cs.clone();
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public long getLines(){
+    return lines;
+  }
+
+  public long getErrors(){
+    return errors;
+  }
+
+
+  //Conversion -------------------------------------------------------------
+
+  public void convert(String in, String out) throws IOException {
+    //Converts the whole of file in to file out ("-" for standard output).
+    try(FileChannel ic = FileChannel.open(Paths.get(in),StandardOpenOption.READ);
+        WritableByteChannel oc = out.equals("-")?Channels.newChannel(System.out):
+          FileChannel.open(Paths.get(out),StandardOpenOption.WRITE,StandardOpenOption.CREATE,StandardOpenOption.TRUNCATE_EXISTING)){
+      convert(ic,oc);
+    }
+  }
+
+  public void convert(FileChannel in, WritableByteChannel out) throws IOException {
+    lines = 0;
+    errors = 0;
+    if(!binary){
+      byte[] head = csvHeader();
+      write(out,head,head.length);
+    }
+    long size = in.size();
+    long pos = 0;
+    if(header)pos = skipLine(in,0,size);
+    ExecutorService pool = (threads>1)?Executors.newFixedThreadPool(threads):null;
+    ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+    try{
+      while(pos<size){
+        //Map the next window, ending it after its last complete line.
+        long len = Math.min(chunk,size-pos);
+        MappedByteBuffer map = in.map(FileChannel.MapMode.READ_ONLY,pos,len);
+        int end = (int)len;
+        if(pos+len<size){
+          while(end>0&&map.get(end-1)!='\n')end--;
+          if(end==0)throw new IOException("Line at byte "+pos+" is longer than the "+(chunk>>10)+"KB chunk");
+        }
+        pos += end;
+        Converter c = new Converter(map,end);
+        if(pool==null){
+          emit(out,c.call());
+        }else{
+          if(pending.size()>threads)emit(out,pending.poll().get());
+          pending.add(pool.submit(c));
+        }
+      }
+      while(!pending.isEmpty()){
+        emit(out,pending.poll().get());
+      }
+    }catch(InterruptedException e){
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted",e);
+    }catch(java.util.concurrent.ExecutionException e){
+      throw new IOException(e.getCause());
+    }finally{
+      if(pool!=null)pool.shutdownNow();
+    }
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private void emit(WritableByteChannel out, Chunk c) throws IOException {
+    //Writes a converted window and reports its unreadable lines by their line number in the whole input.
+    long first = lines+(header?2:1);
+    for(int i=0;i<c.nbad&&i<MAX_REPORT;i++){
+      System.err.println("Line "+(first+c.bad[i])+", character "+(c.badPos[i]+1)+" of the date: "+c.why[i]);
+    }
+    if(c.nbad>MAX_REPORT)System.err.println("... and "+(c.nbad-MAX_REPORT)+" more between lines "+first+" and "+(first+c.lines-1));
+    lines += c.lines;
+    errors += c.nbad;
+    write(out,c.out,c.len);
+  }
+
+  private byte[] csvHeader(){
+    StringBuilder h = new StringBuilder("mdc,long_count,");
+    if(correlations.length==1&&correlations[0]==Correlation.GMT){
+      h.append("gregorian,");
+    }else{
+      for(Correlation c : correlations)h.append("gregorian_").append(c.getName()).append(',');
+    }
+    h.append("calendar_round,lord,station,bearer\n");
+    return h.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static void write(WritableByteChannel out, byte[] b, int len) throws IOException {
+    ByteBuffer buf = ByteBuffer.wrap(b,0,len);
+    while(buf.hasRemaining()){
+      out.write(buf);
+    }
+  }
+
+  private static long skipLine(FileChannel in, long pos, long size) throws IOException {
+    ByteBuffer one = ByteBuffer.allocate(1);
+    while(pos<size){
+      one.clear();
+      in.read(one,pos++);
+      if(one.get(0)=='\n')break;
+    }
+    return pos;
+  }
+
+  private static class Chunk {
+    byte[] out;
+    int len;
+    int lines;
+    int nbad;
+    int[] bad = new int[MAX_REPORT];      //Line within the window
+    int[] badPos = new int[MAX_REPORT];   //Character within the date
+    String[] why = new String[MAX_REPORT];
+  }
+
+  private class Converter implements java.util.concurrent.Callable<Chunk> {
+    //Converts one mapped window of whole lines.
+    private final ByteBuffer in;
+    private final int end;
+    private byte[] out;
+    private int len;
+    private final MayanParser parser = new MayanParser();
+    private final int size = RECORD+8*(correlations.length-1);   //Binary record size
+    private byte[] text = new byte[256];  //The date being read, copied out of the window
+    private boolean bad;                  //Set when the current line cannot be read
+    private boolean outOfRange;           //Set, with bad, when its date was read but cannot be written
+
+    Converter(ByteBuffer in, int end){
+      this.in = in;
+      this.end = end;
+      parser.setCorrelation(correlations[0]);
+      out = new byte[Math.max(4096,end*4)];
+    }
+
+    public Chunk call(){
+      Chunk c = new Chunk();
+      int s = 0;
+      while(s<end){
+        int e = s;
+        while(e<end&&in.get(e)!='\n')e++;
+        int day = parse(s,e);
+        if(bad){
+          if(c.nbad<MAX_REPORT){
+            c.bad[c.nbad] = c.lines;
+            c.badPos[c.nbad] = Math.max(parser.getErrorPos(),0);
+            c.why[c.nbad] = outOfRange?"Date out of range":(parser.getError()==null)?"Missing column":parser.getError();
+          }
+          c.nbad++;
+        }
+        if(binary){
+          putRecord(day);
+        }else{
+          putCSV(day);
+        }
+        c.lines++;
+        s = e+1;
+      }
+      c.out = out;
+      c.len = len;
+      return c;
+    }
+
+    //Parsing
+
+    private int parse(int s, int e){
+      //Reads the date in the chosen column of the line [s, e) as an MDC, setting bad if it cannot.
+      bad = false;
+      outOfRange = false;
+      if(column>=0){
+        for(int col=0;col<column;col++){
+          while(s<e&&in.get(s)!=',')s++;
+          if(s==e){
+            parser.parseMDC(text,0,0);
+            bad = true;
+            return 0;
+          }
+          s++;
+        }
+        int fe = s;
+        while(fe<e&&in.get(fe)!=',')fe++;
+        e = fe;
+      }
+      if(e-s>text.length)text = new byte[e-s];
+      for(int i=s;i<e;i++){
+        text[i-s] = in.get(i);
+      }
+      int n = e-s;
+      int day;
+      if(from==FROM_GREG){
+        day = parser.parseGreg(text,0,n);
+      }else if(from==FROM_LC){
+        day = parser.parseLongCount(text,0,n);
+      }else if(from==FROM_MDC){
+        day = parser.parseMDC(text,0,n);
+      }else{
+        day = parser.parseDate(text,0,n);
+      }
+      bad = !parser.ok();
+      for(int k=0;!bad&&k<correlations.length;k++){
+        //A year beyond the int packing of the Gregorian date would come out wrapped.
+        outOfRange = bad = !MayanDate.packs((long)day+correlations[k].getConstant());
+      }
+      return day;
+    }
+
+    //Output
+
+    private void putCSV(int day){
+      room(160+20*correlations.length);
+      if(bad){
+        putAscii("ERROR,,,,,");
+        for(int k=0;k<correlations.length;k++)put(',');
+        put('\n');
+        return;
+      }
+      MayanDay d = MayanDay.of(day);
+      putInt(day);
+      put(',');
+      putInt(d.getBaktun());
+      put('.');
+      putInt(d.getKatun());
+      put('.');
+      putInt(d.getTun());
+      put('.');
+      putInt(d.getWinal());
+      put('.');
+      putInt(d.getKin());
+      put(',');
+      for(Correlation c : correlations){
+        int g = MayanDate.packedJDN((long)day+c.getConstant());
+        putInt(g&31);
+        put('/');
+        putInt((g>>5)&15);
+        put('/');
+        putInt(g>>9);
+        put(',');
+      }
+      putInt(d.getTrecena());
+      put(' ');
+      put(TZ_BYTES[d.getVeintena()]);
+      put(' ');
+      putInt(d.getHaabDay());
+      put(' ');
+      put(HA_BYTES[d.getHaabMonth()]);
+      put(',');
+      put('G');
+      putInt(d.getLord());
+      put(',');
+      putInt(d.getStationDay());
+      put(',');
+      putInt(d.getBearerNumber());
+      put(' ');
+      put(TZ_BYTES[d.getBearerName()]);
+      put('\n');
+    }
+
+    private void putRecord(int day){
+      room(size);
+      ByteBuffer r = ByteBuffer.wrap(out);
+      if(bad){
+        r.put(len+30,(byte)1);
+      }else{
+        MayanDay d = MayanDay.of(day);
+        r.putInt(len,day);
+        r.putShort(len+4,(short)d.getBaktun());
+        r.put(len+6,(byte)d.getKatun());
+        r.put(len+7,(byte)d.getTun());
+        r.put(len+8,(byte)d.getWinal());
+        r.put(len+9,(byte)d.getKin());
+        r.put(len+10,(byte)d.getTrecena());
+        r.put(len+11,(byte)d.getVeintena());
+        r.put(len+12,(byte)d.getHaabDay());
+        r.put(len+13,(byte)d.getHaabMonth());
+        r.put(len+14,(byte)d.getLord());
+        r.put(len+15,(byte)d.getBearerNumber());
+        r.put(len+16,(byte)d.getBearerName());
+        for(int k=0;k<correlations.length;k++){
+          int g = MayanDate.packedJDN((long)day+correlations[k].getConstant());
+          int at = (k==0)?len+20:len+24+8*k;
+          r.putInt(at,g>>9);
+          r.put(at+4,(byte)((g>>5)&15));
+          r.put(at+5,(byte)(g&31));
+        }
+        r.putShort(len+26,(short)d.getStationDistance());
+        r.put(len+28,(byte)d.getQuadrant());
+        r.put(len+29,(byte)d.getSevenDay());
+      }
+      len += size;
+    }
+
+    private void room(int n){
+      if(len+n>out.length)out = java.util.Arrays.copyOf(out,Math.max(out.length*2,len+n));
+    }
+
+    private void put(char c){
+      out[len++] = (byte)c;
+    }
+
+    private void put(byte[] b){
+      System.arraycopy(b,0,out,len,b.length);
+      len += b.length;
+    }
+
+    private void putAscii(String s){
+      for(int i=0;i<s.length();i++){
+        out[len++] = (byte)s.charAt(i);
+      }
+    }
+
+    private void putInt(int v){
+      if(v<0){
+        out[len++] = '-';
+        if(v==Integer.MIN_VALUE){
+          putAscii("2147483648");
+          return;
+        }
+        v = -v;
+      }
+      int digits = 1;
+      for(int t=v;t>=10;t/=10)digits++;
+      for(int i=len+digits-1;i>=len;i--){
+        out[i] = (byte)('0'+(v%10));
+        v /= 10;
+      }
+      len += digits;
+    }
+  }
+
+}
@@ -1,10 +1,12 @@
 import java.awt.*;
 import java.awt.event.*;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
 import javax.swing.*;
 
 /*
  * Thomas Pinkava's Mayan Date GUI
- * For use with class MayanDate
+ * For use with classes MayanDate and DateCache
  * Written July of 2016
  */
 
@@ -12,28 +14,70 @@ public class MayanDateCalculator implements ActionListener {
   
   
   //The maximum number of lines the console will contain. Any additional lines added will result in the deletion of the least recent line.
-  private final int C_MAX = 500;
+  private final int C_MAX;
+  
+  //Console text written during the current action, not yet shown
+  private StringBuilder pending = new StringBuilder();
+  //Ring buffer of the lengths of the lines shown, the last one still open; each closed line's length counts its newline
+  private int[] lineLen;
+  private int lineHead, lineCount;
+  
+  //The job filling the console in the background, if any, and the number of the latest request; a job whose number is no longer the latest is stale and shows nothing
+  private SwingWorker<?,?> running;
+  private int generation;
+  
+  //The number of recovered dates gathered before they are handed to the console
+  private final int R_CHUNK = 256;
   
   //The Mayan Date
   private MayanDate da;
   
+  //Console text of the dates shown lately, by MDC, so that stepping back and forth over them rebuilds nothing
+  private final DateCache<String> info = new DateCache<String>(256,DateCache.LRU,d -> infoText(new MayanDate(d)));
+  
   //Declare each element present in the GUI
   private JFrame frame;
   private JTextArea console;
   private JTextField l1,l2,l3,l4,l5,gd,gm,gy,mdcin, recontzold, reconhaabd, reconn;
   private JComboBox gregBC, recontzolm, reconhaabm;
   private JScrollPane consolepane;
-  private JButton fromlc, fromgd, frommdc, minus, plus, recon, todaybutton;
+  private JButton fromlc, fromgd, frommdc, minus, plus, recon, cancel, todaybutton;
   private JPanel buttonsnorth, buttonssouth, superbuttons, inputs, longCountPanel, gregDatePanel, lcSuper, gregSuper, mdcSuper, reconPanel;
   private JLabel longCountLabel,gregDateLabel, mdcLabel, padding;
   
   
   public static void main(String[] args){
-    //On a static call, instantiate myself (?) and run as a window
-    MayanDateCalculator layout = new MayanDateCalculator();
+    //On a static call, instantiate myself (?) and run as a window; "-lines n" sets the console length, and "-metrics"
+    //times the calculator (see class MayanMetrics), showing it in jconsole and printing the timings on exit
+    int lines = 500;
+    for(int i=0;i<args.length;i++){
+      if(args[i].equals("-lines")&&i+1<args.length){
+        lines = Integer.parseInt(args[++i]);
+      }else if(args[i].equals("-metrics")){
+        MayanMetrics.setEnabled(true);
+        try{
+          MayanMetrics.register();
+        }catch(javax.management.JMException e){
+          System.err.println("No JMX: "+e.getMessage());
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.err.print(MayanMetrics.report())));
+      }
+    }
+    MayanDateCalculator layout = new MayanDateCalculator(lines);
     layout.start();
   }
   
+  public MayanDateCalculator(){
+    this(500);
+  }
+  
+  public MayanDateCalculator(int consoleLines){
+    if(consoleLines<2)throw new IllegalArgumentException("The console needs at least 2 lines");
+    C_MAX = consoleLines;
+    lineLen = new int[C_MAX];
+    lineCount = 1;
+  }
+  
   public void start(){
     //Set the frame
     frame = new JFrame("Mayan Date Suite");
@@ -154,6 +198,10 @@ public class MayanDateCalculator implements ActionListener {
     reconPanel.add(reconhaabm);
     reconPanel.add(reconn);
     reconPanel.add(recon);
+    cancel = new JButton("Cancel");
+    cancel.addActionListener(this);
+    cancel.setEnabled(false);
+    reconPanel.add(cancel);
     
     
     //Add the Console, Buttons, and Inputs
@@ -169,7 +217,8 @@ public class MayanDateCalculator implements ActionListener {
     //Instantiate the Mayan Date Object
     da = new MayanDate();
     fillFields();
-    infoDump();
+    write(info.get(da.getMDC()));
+    flush();
       
     //Show the frame
     frame.pack();
@@ -217,24 +266,33 @@ public class MayanDateCalculator implements ActionListener {
     }else if(e.getSource()==recon){
       //Recover
       recoverCR();
+    }else if(e.getSource()==cancel){
+      //Cancel
+      supersede();
+      write("\nCancelled.");
     }else if(e.getSource()==todaybutton){
       //Today
       da.today();
       fillFields();
       infoDump();
     }
+    flush();
   }
   
   private void fillFields(){
     //Backfills the input fields
-    l1.setText(da.getLongCount()[0]+"");
-    l2.setText(da.getLongCount()[1]+"");
-    l3.setText(da.getLongCount()[2]+"");
-    l4.setText(da.getLongCount()[3]+"");
-    l5.setText(da.getLongCount()[4]+"");
-    int temp1 = da.getGregDate()[0];
-    int temp2 = da.getGregDate()[1];
-    int temp3 = da.getGregDate()[2];
+    int[] lc = da.getLongCount();
+    int[] greg = da.getGregDate();
+    int[] tzolkin = da.getTzolkin();
+    int[] haab = da.getHaab();
+    l1.setText(lc[0]+"");
+    l2.setText(lc[1]+"");
+    l3.setText(lc[2]+"");
+    l4.setText(lc[3]+"");
+    l5.setText(lc[4]+"");
+    int temp1 = greg[0];
+    int temp2 = greg[1];
+    int temp3 = greg[2];
     if (temp3<=0){
       gregBC.setSelectedIndex(1);
       temp3 = Math.abs(temp3-1);
@@ -245,51 +303,159 @@ public class MayanDateCalculator implements ActionListener {
     gm.setText(temp2+"");
     gy.setText(temp3+"");
     mdcin.setText(da.getMDC()+"");
-    recontzold.setText(da.getTzolkin()[1]+"");
-    reconhaabd.setText(da.getHaab()[1]+"");
-    recontzolm.setSelectedIndex(da.getTzolkin()[2]);
-    reconhaabm.setSelectedIndex(da.getHaab()[2]);
+    recontzold.setText(tzolkin[1]+"");
+    reconhaabd.setText(haab[1]+"");
+    recontzolm.setSelectedIndex(tzolkin[2]);
+    reconhaabm.setSelectedIndex(haab[2]);
   }
   
   private void infoDump(){
-    //Dumps the given day's information to the Console.
-    write("\n=======================\n");
-    write(da.gregToString()+"\n\n");
-    write("Long Count: "+da.lcToString()+"\n");
-    write("Calendar Round: "+da.crToString()+"\n\n");
-    write(da.suppToString()+"\n");
+    //Dumps the given day's information to the Console, building the text in the background unless it is cached.
+    final int mdc = da.getMDC();
+    final long t = MayanMetrics.start();
+    launch(new Job(){
+      protected Void doInBackground(){
+        publish(info.get(mdc));
+        MayanMetrics.stop(MayanMetrics.GUI_INFO,t);
+        return null;
+      }
+    });
+  }
+  
+  private String infoText(MayanDate da){
+    //The given day's information, as shown in the Console
+    StringBuilder out = new StringBuilder();
+    out.append("\n=======================\n");
+    out.append(da.gregToString()+"\n\n");
+    out.append("Long Count: "+da.lcToString()+"\n");
+    out.append("Calendar Round: "+da.crToString()+"\n\n");
+    out.append(da.suppToString()+"\n");
     int eightpos = da.getEight()[1];
-    write("819-day cycle: "+da.lcCond(da.longCount(eightpos))+"   "+da.crCond(da.tzolkinOf(eightpos),da.haabOf(eightpos))+"\n");
-    write(da.eightToString()+"\n\n");
-    write("Mayan Day: "+da.getMDC()+"    Calendar Round: "+da.getCRD()+"\n");
-    write("Tzolk'in Day: "+da.getTzolkin()[0]+"   Haab' Day: "+da.getHaab()[0]+"\n");
-    write("Round began: "+da.roundBorders(da.getMDC())[0]+"   Round will end: "+da.roundBorders(da.getMDC())[1]);
-    write("\n\n"+da.omenDay(da.getTzolkin()[2]));
-    write("\nYear Omens: "+da.omenYear(da.getSupp()[1],da.getSupp()[2]));
+    out.append("819-day cycle: "+da.lcCond(da.longCount(eightpos))+"   "+da.crCond(da.tzolkinOf(eightpos),da.haabOf(eightpos))+"\n");
+    out.append(da.eightToString()+"\n");
+    out.append(da.lunarToString()+"\n");
+    out.append(da.venusToString()+"\n\n");
+    out.append("Mayan Day: "+da.getMDC()+"    Calendar Round: "+da.getCRD()+"\n");
+    out.append("Tzolk'in Day: "+da.getTzolkin()[0]+"   Haab' Day: "+da.getHaab()[0]+"\n");
+    int[] round = da.roundBorders(da.getMDC());
+    out.append("Round began: "+round[0]+"   Round will end: "+round[1]);
+    out.append("\n\n"+da.omenDay(da.getTzolkin()[2]));
+    out.append("\nYear Omens: "+da.omenYear(da.getSupp()[1],da.getSupp()[2]));
+    return out.toString();
   }
   
   private void recoverCR(){
-    //Writes dates recovered from Calendar Round
-    if(Integer.parseInt(recontzold.getText())>0&&Integer.parseInt(recontzold.getText())<14&&Integer.parseInt(reconn.getText())<(C_MAX-1)){
-      if(Integer.parseInt(reconhaabd.getText())>=0&&Integer.parseInt(reconhaabd.getText())<20){
-        int[] possible = da.estimate(da.roundPos(Integer.parseInt(recontzold.getText()),recontzolm.getSelectedIndex(),Integer.parseInt(reconhaabd.getText()),reconhaabm.getSelectedIndex()),Integer.parseInt(reconn.getText()));
-        write("\n=======================\n"+reconn.getText()+" possible instances of "+da.crCond(da.tzolkinOf(possible[0]),da.haabOf(possible[0])));
-        for(int i=0;i<possible.length;i++){
-          int pif = possible[i]%9;
-          if(pif==0)pif=9;
-          write("\n"+(i+1)+"   "+da.lcCond(da.longCount(possible[i]))+"          "+da.gregCond(da.mdcGREG(possible[i]))+"      G"+pif);
-        }
+    //Writes dates recovered from Calendar Round, R_CHUNK at a time as they are found
+    final int trecena = Integer.parseInt(recontzold.getText());
+    final int veintena = recontzolm.getSelectedIndex();
+    final int hday = Integer.parseInt(reconhaabd.getText());
+    final int hmonth = reconhaabm.getSelectedIndex();
+    final int n = Integer.parseInt(reconn.getText());
+    if(trecena>0&&trecena<14&&n>0){
+      if(hday>=0&&hday<20){
+        launch(new Job(){
+          protected Void doInBackground(){
+            MayanDate conv = new MayanDate(0);
+            int[] possible = conv.estimate(conv.roundPos(trecena,veintena,hday,hmonth),n);
+            StringBuilder out = new StringBuilder();
+            out.append("\n=======================\n"+n+" possible instances of "+conv.crCond(conv.tzolkinOf(possible[0]),conv.haabOf(possible[0])));
+            for(int i=0;i<possible.length;i++){
+              if(isCancelled())return null;
+              int pif = possible[i]%9;
+              if(pif==0)pif=9;
+              out.append("\n"+(i+1)+"   "+conv.lcCond(conv.longCount(possible[i]))+"          "+conv.gregCond(conv.mdcGREG(possible[i]))+"      G"+pif);
+              if((i+1)%R_CHUNK==0){
+                publish(out.toString());
+                out.setLength(0);
+              }
+            }
+            publish(out.toString());
+            return null;
+          }
+        });
+      }
+    }
+  }
+  
+  private void launch(Job job){
+    //Runs a console job in the background in place of any earlier one
+    supersede();
+    job.gen = generation;
+    running = job;
+    cancel.setEnabled(true);
+    job.execute();
+  }
+  
+  private void supersede(){
+    //Stops the running job, and makes anything it has yet to show stale
+    generation++;
+    if(running!=null){
+      running.cancel(true);
+      running = null;
+    }
+    cancel.setEnabled(false);
+  }
+  
+  private abstract class Job extends SwingWorker<Void,String> {
+    //A background job whose published text is written to the console, unless a newer request has superseded it
+    int gen;
+    
+    protected void process(List<String> chunks){
+      if(gen!=generation)return;
+      for(String s : chunks)write(s);
+      flush();
+    }
+    
+    protected void done(){
+      if(gen!=generation)return;
+      running = null;
+      cancel.setEnabled(false);
+      if(isCancelled())return;
+      try{
+        get();
+      }catch(InterruptedException e){
+        Thread.currentThread().interrupt();
+      }catch(ExecutionException e){
+        write("\nError: "+e.getCause());
+        flush();
       }
     }
   }
   
   private void write(String a){
-    //Protected system for console appending
-    if(console.getText().split("\n").length>C_MAX-1){
-      //If the console is overflowing
-      console.setText(console.getText().substring(console.getText().indexOf("\n")+1));
+    //Protected system for console appending; the text is shown when the action ends
+    pending.append(a);
+  }
+  
+  private void flush(){
+    //Shows the pending text, dropping the least recent lines past C_MAX with a single removal
+    if(pending.length()==0)return;
+    long t = MayanMetrics.start();
+    int shown = console.getDocument().getLength();
+    int drop = 0;
+    for(int i=0;i<pending.length();i++){
+      lineLen[(lineHead+lineCount-1)%C_MAX]++;
+      if(pending.charAt(i)=='\n'){
+        if(lineCount==C_MAX){
+          //If the console is overflowing
+          drop += lineLen[lineHead];
+          lineHead = (lineHead+1)%C_MAX;
+          lineCount--;
+        }
+        lineLen[(lineHead+lineCount)%C_MAX] = 0;
+        lineCount++;
+      }
+    }
+    if(drop>=shown){
+      //Everything shown scrolls away, along with the start of the new text
+      console.setText(pending.substring(drop-shown));
+    }else{
+      console.append(pending.toString());
+      console.replaceRange(null,0,drop);
     }
-    console.setText(console.getText()+a);
+    pending.setLength(0);
+    console.setCaretPosition(console.getDocument().getLength());
+    MayanMetrics.stop(MayanMetrics.GUI_WRITE,t);
   }
   
   
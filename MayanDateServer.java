@@ -0,0 +1,576 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/*
+ * Mayan Date Conversion Server
+ * For use with classes MayanDate, MayanDay, MayanParser, MayanFormat, Congruence, DateCache and MayanMetrics
+ *
+ * Small embedded HTTP server (com.sun.net.httpserver, no other dependencies) that converts dates for other services.
+ * Requests are handled on virtual threads where the JVM has them (Java 21 and later), otherwise on a cached pool.
+ * Batch and recovery responses are streamed a record at a time, so their size is bounded only by the client.
+ *
+ * Usage: java MayanDateServer [-host <address>] [-port <n>] [-cache <n>] [-policy lru|tinylfu] [-metrics]
+ * The server listens on 127.0.0.1:8080 by default; -port 0 picks a free port. The /convert responses of the 4096 most
+ * popular dates (by default; -cache 0 turns it off) under GMT are kept ready in a DateCache, evicting by W-TinyLFU
+ * (by default) or LRU. -metrics times the calculator's entry points (see class MayanMetrics) for /metrics and jconsole.
+ *
+ * Endpoints:
+ * GET  /convert?date=<date>[&from=auto|greg|lc|mdc]
+ *        -- The full record of one date as a JSON object. The date may be a Gregorian date, Long Count or MDC, in any
+ *           form MayanParser reads (from=auto, the default, tells them apart).
+ * POST /batch[?from=auto|greg|lc|mdc][&format=jsonl|csv]
+ *        -- The full record of every date in the request body, one date per line (blank lines are skipped), as JSON lines
+ *           (the default) or CSV with a header row. An unreadable line gives {"line":n,"error":"...","position":p},
+ *           or an ERROR row in CSV, and the batch carries on.
+ * GET  /recover?round=<Calendar Round>[&n=<count>][&lord=<g>][&after=<MDC>][&format=jsonl|csv]
+ *        -- The first n (default 1, at most 1000000) dates on or after MDC after (default 0) with the given Calendar
+ *           Round, such as "4 Ajaw 8 Kumk'u", and optionally Lord of the Night g, as JSON lines or CSV. The list
+ *           stops short at the first date out of range (see below).
+ * GET  /stats
+ *        -- The /convert cache's size and counters, as {"size":n,"max_size":n,"policy":"tinylfu","hits":n,"misses":n,
+ *           "evictions":n,"hit_rate":r}, or {"size":0,"max_size":0} with the cache off.
+ * GET  /metrics
+ *        -- MayanMetrics' table of calls, throughput and latency percentiles per operation, as text (empty unless the
+ *           metrics are on).
+ *
+ * Every endpoint also takes correlation=<name or constant> (see class Correlation; default GMT), under which Gregorian
+ * dates are read and written.
+ *
+ * A record holds what the GUI's console shows for the date: the MDC, Long Count, Gregorian date, Calendar Round,
+ * NonLunar Supplementary Series, 819-day station and Color&Quadrant, Calendar Round position and borders, and omens.
+ * Bad requests get status 400 and a JSON object {"error":"...","position":p}. Dates whose Gregorian year lies beyond
+ * some 4.19 million years either way (MDCs past about 1.53 billion either way, under GMT) cannot be written and are
+ * refused as "Date out of range", by /convert with status 400 and by /batch as an unreadable line.
+ *
+ * Methods:
+ * MayanDateServer(InetSocketAddress address) -- A server bound to the given address, not yet started.
+ * MayanDateServer(InetSocketAddress address, int cacheSize, int policy) -- Ditto, caching cacheSize /convert responses
+ *   (none if 0) under the given DateCache policy.
+ * void start() -- Starts serving.
+ * void stop(int seconds) -- Stops serving, giving open exchanges up to the given time to finish.
+ * int getPort() -- The port the server is bound to.
+ * DateCache<byte[]> getCache() -- The /convert cache, or null if there is none.
+ */
+
+public class MayanDateServer {
+
+  public static final int MAX_RECOVER = 1000000;
+  private static final String OUT_OF_RANGE = "Date out of range";
+
+  private static final MayanDate CONV = new MayanDate(0);
+
+  private static final String CSV_HEADER = "mdc,long_count,gregorian,calendar_round,lord,seven_day,year_bearer,"
+    +"station,station_long_count,station_calendar_round,quadrant,color,round_position,tzolkin_day,haab_day,"
+    +"round_began,round_ends,day_omen,year_omens\n";
+
+  private final HttpServer server;
+  private final ExecutorService pool;
+  private final DateCache<byte[]> records;    //GMT /convert response bodies, by MDC
+
+
+  public static void main(String[] args) throws IOException {
+    String host = "127.0.0.1";
+    int port = 8080;
+    int cache = 4096;
+    int policy = DateCache.TINY_LFU;
+    for(int i=0;i<args.length;i++){
+      if(args[i].equals("-host")&&i+1<args.length){
+        host = args[++i];
+      }else if(args[i].equals("-port")&&i+1<args.length){
+        port = Integer.parseInt(args[++i]);
+      }else if(args[i].equals("-cache")&&i+1<args.length){
+        cache = Integer.parseInt(args[++i]);
+      }else if(args[i].equals("-policy")&&i+1<args.length&&DateCache.policy(args[i+1])>=0){
+        policy = DateCache.policy(args[++i]);
+      }else if(args[i].equals("-metrics")){
+        MayanMetrics.setEnabled(true);
+        try{
+          MayanMetrics.register();
+        }catch(javax.management.JMException e){
+          System.err.println("No JMX: "+e.getMessage());
+        }
+      }else{
+        System.err.println("Usage: java MayanDateServer [-host <address>] [-port <n>] [-cache <n>] [-policy lru|tinylfu] [-metrics]");
+        System.exit(2);
+      }
+    }
+    MayanDateServer s = new MayanDateServer(new InetSocketAddress(host,port),cache,policy);
+    s.start();
+    System.out.println("Serving on http://"+host+":"+s.getPort()+"/");
+  }
+
+  public MayanDateServer(InetSocketAddress address) throws IOException {
+    this(address,4096,DateCache.TINY_LFU);
+  }
+
+  public MayanDateServer(InetSocketAddress address, int cacheSize, int policy) throws IOException {
+    records = (cacheSize>0)?new DateCache<byte[]>(cacheSize,policy,MayanDateServer::record):null;
+    server = HttpServer.create(address,0);
+    pool = executor();
+    server.setExecutor(pool);
+    server.createContext("/convert",new Convert(records));
+    server.createContext("/batch",new Batch());
+    server.createContext("/recover",new Recover());
+    server.createContext("/stats",new Stats(records));
+    server.createContext("/metrics",new Metrics());
+  }
+
+  public void start(){
+    server.start();
+  }
+
+  public void stop(int seconds){
+    server.stop(seconds);
+    pool.shutdown();
+  }
+
+  public int getPort(){
+    return server.getAddress().getPort();
+  }
+
+  public DateCache<byte[]> getCache(){
+    return records;
+  }
+
+
+  //Endpoints ---------------------------------------------------------------
+
+  private static class Convert implements HttpHandler {
+    private final DateCache<byte[]> records;
+
+    Convert(DateCache<byte[]> records){
+      this.records = records;
+    }
+
+    public void handle(HttpExchange ex) throws IOException {
+      try{
+        if(!method(ex,"GET"))return;
+        Map<String,String> q = query(ex);
+        String date = q.get("date");
+        if(date==null){
+          error(ex,400,"Missing date",-1);
+          return;
+        }
+        int from = from(ex,q);
+        if(from<0)return;
+        Correlation c = correlation(ex,q);
+        if(c==null)return;
+        MayanParser parser = new MayanParser();
+        parser.setCorrelation(c);
+        int day = parse(parser,from,date);
+        if(!parser.ok()){
+          error(ex,400,parser.getError(),parser.getErrorPos());
+          return;
+        }
+        if(!writable(day,c)){
+          error(ex,400,OUT_OF_RANGE,-1);
+          return;
+        }
+        byte[] body;
+        if(records!=null&&c.equals(Correlation.GMT)){
+          body = records.get(day);
+        }else{
+          StringBuilder out = new StringBuilder(1024);
+          json(out,day,c);
+          out.append('\n');
+          body = out.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        ex.getResponseHeaders().set("Content-Type","application/json; charset=utf-8");
+        ex.sendResponseHeaders(200,body.length);
+        ex.getResponseBody().write(body);
+      }finally{
+        ex.close();
+      }
+    }
+  }
+
+  private static class Batch implements HttpHandler {
+    public void handle(HttpExchange ex) throws IOException {
+      try{
+        if(!method(ex,"POST"))return;
+        Map<String,String> q = query(ex);
+        int from = from(ex,q);
+        if(from<0)return;
+        Boolean csv = csv(ex,q);
+        if(csv==null)return;
+        Correlation c = correlation(ex,q);
+        if(c==null)return;
+        BufferedReader in = new BufferedReader(new InputStreamReader(ex.getRequestBody(),StandardCharsets.UTF_8));
+        Writer out = stream(ex,csv);
+        MayanParser parser = new MayanParser();
+        parser.setCorrelation(c);
+        String line;
+        int n = 0;
+        while((line = in.readLine())!=null){
+          n++;
+          if(line.trim().isEmpty())continue;
+          int day = parse(parser,from,line);
+          boolean ok = parser.ok()&&writable(day,c);
+          if(ok){
+            if(csv){
+              csv(out,day,c);
+            }else{
+              json(out,day,c);
+            }
+          }else if(csv){
+            out.append("ERROR,,,,,,,,,,,,,,,,,,");
+          }else{
+            out.append("{\"line\":").append(Integer.toString(n));
+            out.append(",\"error\":\"");
+            escape(out,parser.ok()?OUT_OF_RANGE:parser.getError(),'\\');
+            out.append("\",\"position\":").append(Integer.toString(parser.getErrorPos())).append('}');
+          }
+          out.append('\n');
+        }
+        out.flush();
+      }finally{
+        ex.close();
+      }
+    }
+  }
+
+  private static class Recover implements HttpHandler {
+    public void handle(HttpExchange ex) throws IOException {
+      try{
+        if(!method(ex,"GET"))return;
+        Map<String,String> q = query(ex);
+        String round = q.get("round");
+        if(round==null){
+          error(ex,400,"Missing round",-1);
+          return;
+        }
+        MayanParser parser = new MayanParser();
+        int rd = parser.parseCalendarRound(round,0,round.length());
+        if(!parser.ok()){
+          error(ex,400,parser.getError(),parser.getErrorPos());
+          return;
+        }
+        int n, after, lord;
+        try{
+          n = Integer.parseInt(q.getOrDefault("n","1"));
+          after = Integer.parseInt(q.getOrDefault("after","0"));
+          lord = Integer.parseInt(q.getOrDefault("lord","-1"));
+        }catch(NumberFormatException e){
+          error(ex,400,"Expected a number",-1);
+          return;
+        }
+        if(n<1||n>MAX_RECOVER){
+          error(ex,400,"n must be from 1 to "+MAX_RECOVER,-1);
+          return;
+        }
+        Congruence c = Congruence.round(rd);
+        if(lord>=0){
+          if(lord<1||lord>9){
+            error(ex,400,"No such Lord of the Night",-1);
+            return;
+          }
+          c = c.and(Congruence.lord(lord));
+        }
+        Boolean csv = csv(ex,q);
+        if(csv==null)return;
+        Correlation corr = correlation(ex,q);
+        if(corr==null)return;
+        Writer out = stream(ex,csv);
+        long t = MayanMetrics.start();
+        long day = c.first(after);
+        int i = 0;
+        for(;i<n&&day==(int)day&&writable((int)day,corr);i++){
+          if(csv){
+            csv(out,(int)day,corr);
+          }else{
+            json(out,(int)day,corr);
+          }
+          out.append('\n');
+          day += c.getModulus();
+        }
+        out.flush();
+        MayanMetrics.stop(MayanMetrics.RECOVER,t,i,i);
+      }finally{
+        ex.close();
+      }
+    }
+  }
+
+  private static class Stats implements HttpHandler {
+    private final DateCache<byte[]> records;
+
+    Stats(DateCache<byte[]> records){
+      this.records = records;
+    }
+
+    public void handle(HttpExchange ex) throws IOException {
+      try{
+        if(!method(ex,"GET"))return;
+        StringBuilder out = new StringBuilder(160);
+        if(records==null){
+          out.append("{\"size\":0,\"max_size\":0}\n");
+        }else{
+          out.append("{\"size\":").append(records.size());
+          out.append(",\"max_size\":").append(records.getMaxSize());
+          out.append(",\"policy\":\"").append(records.getPolicy()==DateCache.LRU?"lru":"tinylfu");
+          out.append("\",\"hits\":").append(records.getHits());
+          out.append(",\"misses\":").append(records.getMisses());
+          out.append(",\"evictions\":").append(records.getEvictions());
+          out.append(",\"hit_rate\":").append(records.getHitRate()).append("}\n");
+        }
+        byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type","application/json; charset=utf-8");
+        ex.sendResponseHeaders(200,body.length);
+        ex.getResponseBody().write(body);
+      }finally{
+        ex.close();
+      }
+    }
+  }
+
+  private static class Metrics implements HttpHandler {
+    public void handle(HttpExchange ex) throws IOException {
+      try{
+        if(!method(ex,"GET"))return;
+        byte[] body = (MayanMetrics.isEnabled()?MayanMetrics.report():"").getBytes(StandardCharsets.UTF_8);
+        ex.getResponseHeaders().set("Content-Type","text/plain; charset=utf-8");
+        ex.sendResponseHeaders(200,body.length==0?-1:body.length);
+        if(body.length>0)ex.getResponseBody().write(body);
+      }finally{
+        ex.close();
+      }
+    }
+  }
+
+
+  //Records -----------------------------------------------------------------
+
+  static byte[] record(int day){
+    //The /convert response body for the given MDC under GMT, as kept in the cache
+    StringBuilder out = new StringBuilder(1024);
+    try{
+      json(out,day,Correlation.GMT);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    out.append('\n');
+    return out.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  static void json(Appendable out, int day, Correlation c) throws IOException {
+    //Writes the full record of the given MDC as one JSON object, with its Gregorian date under correlation c.
+    MayanDay d = MayanDay.of(day);
+    int g = MayanDate.packedJDN((long)day+c.getConstant());
+    int station = d.getStationDay();
+    int q = d.getQuadrant();
+    out.append("{\"mdc\":");
+    MayanFormat.number(out,day);
+    out.append(",\"long_count\":\"");
+    MayanFormat.longCount(out,day);
+    out.append("\",\"gregorian\":\"");
+    MayanFormat.greg(out,g&31,(g>>5)&15,g>>9);
+    out.append("\",\"calendar_round\":\"");
+    MayanFormat.calendarRound(out,day);
+    out.append("\",\"lord\":");
+    MayanFormat.number(out,d.getLord());
+    out.append(",\"seven_day\":");
+    MayanFormat.number(out,d.getSevenDay());
+    out.append(",\"year_bearer\":\"");
+    MayanFormat.number(out,d.getBearerNumber());
+    out.append(' ').append(MayanDate.TZ_NAMES[d.getBearerName()]);
+    out.append("\",\"station\":{\"mdc\":");
+    MayanFormat.number(out,station);
+    out.append(",\"long_count\":\"");
+    MayanFormat.longCount(out,station);
+    out.append("\",\"calendar_round\":\"");
+    MayanFormat.calendarRound(out,station);
+    out.append("\"},\"quadrant\":[\"").append(MayanDate.EI_QUADRANTS[q]).append("\",\"").append(MayanDate.EI_QUADRANTS[q+4]);
+    out.append("\"],\"color\":[\"").append(MayanDate.EI_COLORS[q]).append("\",\"").append(MayanDate.EI_COLORS[q+4]);
+    out.append("\"],\"round_position\":");
+    MayanFormat.number(out,d.getCRD());
+    out.append(",\"tzolkin_day\":");
+    MayanFormat.number(out,d.getTzolkinPos());
+    out.append(",\"haab_day\":");
+    MayanFormat.number(out,d.getHaabPos());
+    out.append(",\"round_began\":");
+    MayanFormat.number(out,day-d.getCRD());
+    out.append(",\"round_ends\":");
+    MayanFormat.number(out,day-d.getCRD()+18979);
+    out.append(",\"day_omen\":\"");
+    escape(out,CONV.omenDay(d.getVeintena()),'\\');
+    out.append("\",\"year_omens\":\"");
+    escape(out,CONV.omenYear(d.getBearerNumber(),d.getBearerName()),'\\');
+    out.append("\"}");
+  }
+
+  static void csv(Appendable out, int day, Correlation c) throws IOException {
+    //Writes the full record of the given MDC as one CSV row, in the columns of CSV_HEADER.
+    MayanDay d = MayanDay.of(day);
+    int g = MayanDate.packedJDN((long)day+c.getConstant());
+    int station = d.getStationDay();
+    int q = d.getQuadrant();
+    MayanFormat.number(out,day);
+    out.append(',');
+    MayanFormat.longCount(out,day);
+    out.append(",\"");
+    MayanFormat.greg(out,g&31,(g>>5)&15,g>>9);
+    out.append("\",");
+    MayanFormat.calendarRound(out,day);
+    out.append(",G");
+    MayanFormat.number(out,d.getLord());
+    out.append(',');
+    MayanFormat.number(out,d.getSevenDay());
+    out.append(',');
+    MayanFormat.number(out,d.getBearerNumber());
+    out.append(' ').append(MayanDate.TZ_NAMES[d.getBearerName()]);
+    out.append(',');
+    MayanFormat.number(out,station);
+    out.append(',');
+    MayanFormat.longCount(out,station);
+    out.append(',');
+    MayanFormat.calendarRound(out,station);
+    out.append(',').append(MayanDate.EI_QUADRANTS[q+4]);
+    out.append(',').append(MayanDate.EI_COLORS[q+4]);
+    out.append(',');
+    MayanFormat.number(out,d.getCRD());
+    out.append(',');
+    MayanFormat.number(out,d.getTzolkinPos());
+    out.append(',');
+    MayanFormat.number(out,d.getHaabPos());
+    out.append(',');
+    MayanFormat.number(out,day-d.getCRD());
+    out.append(',');
+    MayanFormat.number(out,day-d.getCRD()+18979);
+    out.append(",\"");
+    escape(out,CONV.omenDay(d.getVeintena()).replace('\n',' '),'"');
+    out.append("\",\"");
+    escape(out,CONV.omenYear(d.getBearerNumber(),d.getBearerName()).replace('\n',' '),'"');
+    out.append('"');
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private static ExecutorService executor(){
+    //Virtual threads where the JVM has them (looked up by name so that the class still compiles and runs on Java 17)
+    try{
+      return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }catch(ReflectiveOperationException e){
+      return Executors.newCachedThreadPool();
+    }
+  }
+
+  private static boolean writable(int day, Correlation c){
+    //Whether the date's Gregorian year fits the packed form records are written from
+    return MayanDate.packs((long)day+c.getConstant());
+  }
+
+  private static int parse(MayanParser parser, int from, String date){
+    if(from==MayanDateBatch.FROM_GREG)return parser.parseGreg(date,0,date.length());
+    if(from==MayanDateBatch.FROM_LC)return parser.parseLongCount(date,0,date.length());
+    if(from==MayanDateBatch.FROM_MDC)return parser.parseMDC(date,0,date.length());
+    return parser.parseDate(date,0,date.length());
+  }
+
+  private static int from(HttpExchange ex, Map<String,String> q) throws IOException {
+    //The from parameter as a MayanDateBatch input format; answers the request and returns -1 if it is not one
+    String f = q.getOrDefault("from","auto");
+    if(f.equals("auto"))return MayanDateBatch.FROM_AUTO;
+    if(f.equals("greg"))return MayanDateBatch.FROM_GREG;
+    if(f.equals("lc"))return MayanDateBatch.FROM_LC;
+    if(f.equals("mdc"))return MayanDateBatch.FROM_MDC;
+    error(ex,400,"Unknown input format: "+f,-1);
+    return -1;
+  }
+
+  private static Correlation correlation(HttpExchange ex, Map<String,String> q) throws IOException {
+    //The correlation parameter; answers the request and returns null if it is not one
+    try{
+      return Correlation.of(q.getOrDefault("correlation","GMT"));
+    }catch(IllegalArgumentException e){
+      error(ex,400,e.getMessage(),-1);
+      return null;
+    }
+  }
+
+  private static Boolean csv(HttpExchange ex, Map<String,String> q) throws IOException {
+    //Whether the format parameter asks for CSV; answers the request and returns null if it is neither format
+    String f = q.getOrDefault("format","jsonl");
+    if(f.equals("jsonl"))return Boolean.FALSE;
+    if(f.equals("csv"))return Boolean.TRUE;
+    error(ex,400,"Unknown output format: "+f,-1);
+    return null;
+  }
+
+  private static Writer stream(HttpExchange ex, boolean csv) throws IOException {
+    //Starts a chunked response and returns a buffered writer onto it
+    ex.getResponseHeaders().set("Content-Type",csv?"text/csv; charset=utf-8":"application/x-ndjson; charset=utf-8");
+    ex.sendResponseHeaders(200,0);
+    Writer out = new BufferedWriter(new OutputStreamWriter(ex.getResponseBody(),StandardCharsets.UTF_8),1<<14);
+    if(csv)out.append(CSV_HEADER);
+    return out;
+  }
+
+  private static boolean method(HttpExchange ex, String m) throws IOException {
+    if(ex.getRequestMethod().equals(m))return true;
+    ex.getResponseHeaders().set("Allow",m);
+    error(ex,405,"Use "+m,-1);
+    return false;
+  }
+
+  private static void error(HttpExchange ex, int status, String why, int pos) throws IOException {
+    StringBuilder out = new StringBuilder("{\"error\":\"");
+    escape(out,why,'\\');
+    out.append("\",\"position\":").append(pos).append("}\n");
+    byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+    ex.getResponseHeaders().set("Content-Type","application/json; charset=utf-8");
+    ex.sendResponseHeaders(status,body.length);
+    OutputStream o = ex.getResponseBody();
+    o.write(body);
+  }
+
+  private static Map<String,String> query(HttpExchange ex){
+    Map<String,String> out = new HashMap<String,String>();
+    String raw = ex.getRequestURI().getRawQuery();
+    if(raw==null)return out;
+    for(String pair : raw.split("&")){
+      int eq = pair.indexOf('=');
+      if(eq<0){
+        out.put(URLDecoder.decode(pair,StandardCharsets.UTF_8),"");
+      }else{
+        out.put(URLDecoder.decode(pair.substring(0,eq),StandardCharsets.UTF_8),URLDecoder.decode(pair.substring(eq+1),StandardCharsets.UTF_8));
+      }
+    }
+    return out;
+  }
+
+  private static void escape(Appendable out, String s, char esc) throws IOException {
+    //Escapes quotes for JSON (esc '\\', with control characters as \n or \\u00XX) or CSV (esc '"', doubling quotes)
+    for(int i=0;i<s.length();i++){
+      char c = s.charAt(i);
+      if(c=='"'){
+        out.append(esc).append('"');
+      }else if(esc=='\\'&&c=='\\'){
+        out.append("\\\\");
+      }else if(esc=='\\'&&c=='\n'){
+        out.append("\\n");
+      }else if(esc=='\\'&&c<0x20){
+        out.append(String.format("\\u%04x",(int)c));
+      }else{
+        out.append(c);
+      }
+    }
+  }
+
+}
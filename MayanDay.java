@@ -0,0 +1,303 @@
+import java.util.Calendar;
+
+/*
+ * Immutable Mayan Date
+ * For use with class MayanDate
+ *
+ * A MayanDay holds nothing but its MDC. The Long Count, Calendar Round, 819-day cycle and Supplementary Series
+ * are worked out from it only when asked for, and the Gregorian date is derived once and kept packed in a single int
+ * (or, for the years beyond 4 million either way that do not fit one, derived again each time).
+ * Values are immutable and may be shared freely between threads.
+ *
+ * Factories:
+ * MayanDay of(int days) -- The date with the given MDC (number of days since August 11, 3114 BCE).
+ * MayanDay ofLongCount(int[] longCount) -- The date with the given 5-digit standard Long Count. Nonstandard dates will default to 0.
+ * MayanDay ofGregDate(int day, int month, int year, boolean bc) -- The date with the given Gregorian date.
+ * MayanDay ofGregDate(int day, int month, int year) -- The date with the given astronomical Gregorian date.
+ * MayanDay today() -- The current date.
+ * MayanDay plus(int days) -- The date the given number of days later (or earlier, if negative).
+ *
+ * Accessors:
+ * int getMDC() -- Returns the MDC.
+ * int getCRD() -- Returns the position within the Calendar Round.
+ * int getBaktun(), getKatun(), getTun(), getWinal(), getKin() -- Return single Long Count places.
+ * int getDay(), getMonth(), getYear() -- Return single Gregorian fields (under the GMT correlation). Note: the year is astronomical.
+ * int getTrecena(), getVeintena(), getTzolkinPos() -- Return single Tzolk'in fields.
+ * int getHaabDay(), getHaabMonth(), getHaabPos() -- Return single Haab' fields.
+ * int getStationDistance(), getStationDay(), getQuadrant() -- Return single 819-day cycle fields.
+ * int getLord(), getBearerNumber(), getBearerName(), getSevenDay() -- Return single Supplementary Series fields.
+ * int getMoonAge(), getGlyphC(), getPatron(), getMonthLength(), getNodeDistance() -- Return single Lunar Series fields (under GMT, see class LunarSeries).
+ * int getVenusPos(), getVenusPhase(), getVenusDay() -- Return single Venus Round fields.
+ * int[] getLongCount(), getGregDate(), getTzolkin(), getHaab(), getEight(), getSupp(), getLunar(), getVenus() -- Return fresh arrays laid out exactly as MayanDate's accessors.
+ * int[] getGregDate(Correlation c) -- Returns a fresh Gregorian [day, month, year] under correlation c.
+ * MayanDate toMayanDate() -- Returns a new mutable MayanDate set to this date.
+ * String toString() -- Returns a String containing the Long Count, Tzolk'in, and Haab'.
+ */
+
+public final class MayanDay implements Comparable<MayanDay> {
+
+  //Shared converter; its conversion methods never touch its own date, so one instance serves every thread.
+  private static final MayanDate CONV = new MayanDate(0);
+  private static final int GMT_CONS = Correlation.GMT.getConstant();
+
+  private final int mdc;
+  private int greg;       //Packed Gregorian date (year<<9 | month<<5 | day), 0 until first derived or if it does not fit
+
+  private MayanDay(int days){
+    mdc = days;
+  }
+
+
+  //Factories -------------------------------------------------------------
+
+  public static MayanDay of(int days){
+    return new MayanDay(days);
+  }
+
+  static MayanDay of(int days, long packedGreg){
+    //For callers that already know the Gregorian date, packed as (year<<9 | month<<5 | day)
+    MayanDay out = new MayanDay(days);
+    if(packedGreg==(int)packedGreg)out.greg = (int)packedGreg;
+    return out;
+  }
+
+  public static MayanDay ofLongCount(int[] l){
+    if(l.length!=5)return new MayanDay(0);
+    return new MayanDay(CONV.unLongCount(l));
+  }
+
+  public static MayanDay ofGregDate(int d, int m, int y, boolean bc){
+    if(bc){
+      y = (0-y)+1;
+    }
+    return ofGregDate(d,m,y);
+  }
+
+  public static MayanDay ofGregDate(int d, int m, int y){
+    return of(CONV.gregMDC(d,m,y),((long)y<<9)|(m<<5)|d);
+  }
+
+  public static MayanDay today(){
+    Calendar cal = Calendar.getInstance();
+    return ofGregDate(cal.get(Calendar.DATE),cal.get(Calendar.MONTH)+1,cal.get(Calendar.YEAR));
+  }
+
+  public MayanDay plus(int days){
+    return new MayanDay(mdc+days);
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public int getMDC(){
+    return mdc;
+  }
+
+  public int getCRD(){
+    return Math.floorMod(mdc,18980);
+  }
+
+  public int getBaktun(){
+    return Math.floorDiv(mdc,144000);
+  }
+
+  public int getKatun(){
+    return Math.floorMod(mdc,144000)/7200;
+  }
+
+  public int getTun(){
+    return Math.floorMod(mdc,7200)/360;
+  }
+
+  public int getWinal(){
+    return Math.floorMod(mdc,360)/20;
+  }
+
+  public int getKin(){
+    return Math.floorMod(mdc,20);
+  }
+
+  public int getDay(){
+    return (int)(packedGreg()&31);
+  }
+
+  public int getMonth(){
+    return (int)((packedGreg()>>5)&15);
+  }
+
+  public int getYear(){
+    return (int)(packedGreg()>>9);
+  }
+
+  public int getTzolkinPos(){
+    return Math.floorMod(mdc+159L,260);
+  }
+
+  public int getTrecena(){
+    return (getTzolkinPos()%13)+1;
+  }
+
+  public int getVeintena(){
+    return (getTzolkinPos()+1)%20;
+  }
+
+  public int getHaabPos(){
+    return Math.floorMod(mdc+348L,365);
+  }
+
+  public int getHaabDay(){
+    return getHaabPos()%20;
+  }
+
+  public int getHaabMonth(){
+    return getHaabPos()/20;
+  }
+
+  public int getStationDistance(){
+    return Math.floorMod(mdc+3L,819);
+  }
+
+  public int getStationDay(){
+    return mdc-getStationDistance();
+  }
+
+  public int getQuadrant(){
+    return Math.floorMod((long)mdc-getStationDistance()+159,260)%4;
+  }
+
+  public int getLord(){
+    return Math.floorMod(mdc-1L,9)+1;
+  }
+
+  public int getBearerNumber(){
+    if(mdc>=0&&mdc<360)return 8;
+    return (bearerPos()%13)+1;
+  }
+
+  public int getBearerName(){
+    if(mdc>=0&&mdc<360)return 17;
+    return (bearerPos()+1)%20;
+  }
+
+  public int getSevenDay(){
+    int s = getStationDistance()%7;
+    return (s==0)?7:s;
+  }
+
+  public int getMoonAge(){
+    return LunarSeries.moonAge(mdc,GMT_CONS);
+  }
+
+  public int getGlyphC(){
+    return LunarSeries.glyphC(mdc,GMT_CONS);
+  }
+
+  public int getPatron(){
+    return LunarSeries.patron(mdc,GMT_CONS);
+  }
+
+  public int getMonthLength(){
+    return LunarSeries.monthLength(mdc,GMT_CONS);
+  }
+
+  public int getNodeDistance(){
+    return LunarSeries.nodeDistance(mdc,GMT_CONS);
+  }
+
+  public int getVenusPos(){
+    return LunarSeries.venusPos(mdc);
+  }
+
+  public int getVenusPhase(){
+    return LunarSeries.venusPhase(mdc);
+  }
+
+  public int getVenusDay(){
+    return LunarSeries.venusDay(mdc);
+  }
+
+  public int[] getLongCount(){
+    int[] out = {getBaktun(),getKatun(),getTun(),getWinal(),getKin()};
+    return out;
+  }
+
+  public int[] getGregDate(){
+    int[] out = {getDay(),getMonth(),getYear()};
+    return out;
+  }
+
+  public int[] getGregDate(Correlation c){
+    long p = MayanDate.civil((long)mdc+c.getConstant());
+    int[] out = {(int)(p&31),(int)((p>>5)&15),(int)(p>>9)};
+    return out;
+  }
+
+  public int[] getTzolkin(){
+    int[] out = {getTzolkinPos(),getTrecena(),getVeintena()};
+    return out;
+  }
+
+  public int[] getHaab(){
+    int[] out = {getHaabPos(),getHaabDay(),getHaabMonth()};
+    return out;
+  }
+
+  public int[] getEight(){
+    int[] out = {getStationDistance(),getStationDay(),getQuadrant()};
+    return out;
+  }
+
+  public int[] getSupp(){
+    int[] out = {getLord(),getBearerNumber(),getBearerName(),getSevenDay()};
+    return out;
+  }
+
+  public int[] getLunar(){
+    int[] out = {getMoonAge(),getGlyphC(),getPatron(),getMonthLength(),getNodeDistance()};
+    return out;
+  }
+
+  public int[] getVenus(){
+    int[] out = {getVenusPos(),getVenusPhase(),getVenusDay()};
+    return out;
+  }
+
+  public MayanDate toMayanDate(){
+    return new MayanDate(mdc);
+  }
+
+  public String toString(){
+    return CONV.lcCond(getLongCount())+"  "+CONV.crCond(getTzolkin(),getHaab());
+  }
+
+  public boolean equals(Object o){
+    return (o instanceof MayanDay) && ((MayanDay)o).mdc==mdc;
+  }
+
+  public int hashCode(){
+    return mdc;
+  }
+
+  public int compareTo(MayanDay o){
+    return Integer.compare(mdc,o.mdc);
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private long packedGreg(){
+    //Racing threads may both derive the date, but they always store the same value.
+    int p = greg;
+    if(p!=0)return p;
+    long g = CONV.packedGREG(mdc);
+    if(g==(int)g)greg = (int)g;
+    return g;
+  }
+
+  private int bearerPos(){
+    //Tzolk'in position of the first day of this date's Haab' year
+    long zeroDay = (long)mdc-getHaabPos();
+    return Math.floorMod(zeroDay+159,260);
+  }
+
+}
@@ -0,0 +1,340 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/*
+ * Mayan Date Formatter
+ * For use with classes MayanDate, MayanDay and CycleTables
+ *
+ * Writes the same text as MayanDate's String methods, but straight into a caller's StringBuilder, Appendable or
+ * (as UTF-8, from pre-encoded names) ByteBuffer, so that no intermediate String is created.
+ * The Calendar Round and Supplementary Series come from the CycleTables lookups.
+ *
+ * Methods (each has a StringBuilder form returning the builder, an Appendable form, and a ByteBuffer form returning the buffer):
+ * longCount(out, int day) -- The Long Count of the given MDC, as MayanDate.lcCond.
+ * calendarRound(out, int day) -- The Tzolk'in and Haab' of the given MDC, as MayanDate.crCond.
+ * greg(out, int day, int month, int year) -- The given astronomical Gregorian date, as MayanDate.gregCond.
+ * supp(out, int day) -- The NonLunar Supplementary Series of the given MDC, as MayanDate.suppToString.
+ * eight(out, int day) -- The 819-day cycle Quadrant and Color of the given MDC, as MayanDate.eightToString.
+ * date(out, int day) -- The Long Count, Tzolk'in and Haab' of the given MDC, as MayanDate.toString.
+ * record(out, MayanDay d) -- The full date on one line: date, Gregorian date, Supplementary Series and 819-day cycle, separated by two spaces.
+ *
+ * A ByteBuffer without room for the text throws a BufferOverflowException, with its position left part-way.
+ */
+
+public final class MayanFormat {
+
+  private static final byte[][] TZ = encode(MayanDate.TZ_NAMES);
+  private static final byte[][] HA = encode(MayanDate.HA_NAMES);
+  private static final byte[][] QU = encode(MayanDate.EI_QUADRANTS);
+  private static final byte[][] CO = encode(MayanDate.EI_COLORS);
+  private static final byte[][] GR = encode(MayanDate.GR_MONTHS);
+  private static final byte[] LORD = ascii("Lord of the Night: G");
+  private static final byte[] SEVEN = ascii("    7-Cycle: ");
+  private static final byte[] BEARER = ascii("    Year Bearer: ");
+  private static final byte[] QUADRANT = ascii("Quadrant: ");
+  private static final byte[] COLOR = ascii(")   Color: ");
+  private static final byte[] CE = ascii(" CE");
+  private static final byte[] BCE = ascii(" BCE");
+
+  private MayanFormat(){
+  }
+
+
+  //StringBuilder ---------------------------------------------------------
+
+  public static StringBuilder longCount(StringBuilder out, int day){
+    try{
+      longCount((Appendable)out,day);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    return out;
+  }
+
+  public static StringBuilder calendarRound(StringBuilder out, int day){
+    try{
+      calendarRound((Appendable)out,day);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    return out;
+  }
+
+  public static StringBuilder greg(StringBuilder out, int d, int m, int y){
+    try{
+      greg((Appendable)out,d,m,y);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    return out;
+  }
+
+  public static StringBuilder supp(StringBuilder out, int day){
+    try{
+      supp((Appendable)out,day);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    return out;
+  }
+
+  public static StringBuilder eight(StringBuilder out, int day){
+    try{
+      eight((Appendable)out,day);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    return out;
+  }
+
+  public static StringBuilder date(StringBuilder out, int day){
+    try{
+      date((Appendable)out,day);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    return out;
+  }
+
+  public static StringBuilder record(StringBuilder out, MayanDay d){
+    try{
+      record((Appendable)out,d);
+    }catch(IOException e){
+      throw new UncheckedIOException(e);
+    }
+    return out;
+  }
+
+
+  //Appendable -------------------------------------------------------------
+
+  public static void longCount(Appendable out, int day) throws IOException {
+    number(out,Math.floorDiv(day,144000));
+    out.append('.');
+    number(out,Math.floorMod(day,144000)/7200);
+    out.append('.');
+    number(out,Math.floorMod(day,7200)/360);
+    out.append('.');
+    number(out,Math.floorMod(day,360)/20);
+    out.append('.');
+    number(out,Math.floorMod(day,20));
+  }
+
+  public static void calendarRound(Appendable out, int day) throws IOException {
+    number(out,CycleTables.trecena(day));
+    out.append(' ');
+    out.append(MayanDate.TZ_NAMES[CycleTables.veintena(day)]);
+    out.append(' ');
+    number(out,CycleTables.haabDay(day));
+    out.append(' ');
+    out.append(MayanDate.HA_NAMES[CycleTables.haabMonth(day)]);
+  }
+
+  public static void greg(Appendable out, int d, int m, int y) throws IOException {
+    out.append(MayanDate.GR_MONTHS[m]);
+    out.append(' ');
+    number(out,d);
+    out.append(", ");
+    if(y<=0){
+      number(out,1-y);
+      out.append(" BCE");
+    }else{
+      number(out,y);
+      out.append(" CE");
+    }
+  }
+
+  public static void supp(Appendable out, int day) throws IOException {
+    out.append("Lord of the Night: G");
+    number(out,CycleTables.lord(day));
+    out.append("    7-Cycle: ");
+    number(out,CycleTables.sevenDay(day));
+    out.append("    Year Bearer: ");
+    number(out,CycleTables.bearerNumber(day));
+    out.append(' ');
+    out.append(MayanDate.TZ_NAMES[CycleTables.bearerName(day)]);
+  }
+
+  public static void eight(Appendable out, int day) throws IOException {
+    int q = CycleTables.quadrant(day);
+    out.append("Quadrant: ");
+    out.append(MayanDate.EI_QUADRANTS[q]);
+    out.append(" (");
+    out.append(MayanDate.EI_QUADRANTS[q+4]);
+    out.append(")   Color: ");
+    out.append(MayanDate.EI_COLORS[q]);
+    out.append(" (");
+    out.append(MayanDate.EI_COLORS[q+4]);
+    out.append(')');
+  }
+
+  public static void date(Appendable out, int day) throws IOException {
+    longCount(out,day);
+    out.append("  ");
+    calendarRound(out,day);
+  }
+
+  public static void record(Appendable out, MayanDay d) throws IOException {
+    long t = MayanMetrics.start();
+    int day = d.getMDC();
+    date(out,day);
+    out.append("  ");
+    greg(out,d.getDay(),d.getMonth(),d.getYear());
+    out.append("  ");
+    supp(out,day);
+    out.append("  ");
+    eight(out,day);
+    MayanMetrics.stop(MayanMetrics.FORMAT,t);
+  }
+
+
+  //ByteBuffer -------------------------------------------------------------
+
+  public static ByteBuffer longCount(ByteBuffer out, int day){
+    number(out,Math.floorDiv(day,144000));
+    out.put((byte)'.');
+    number(out,Math.floorMod(day,144000)/7200);
+    out.put((byte)'.');
+    number(out,Math.floorMod(day,7200)/360);
+    out.put((byte)'.');
+    number(out,Math.floorMod(day,360)/20);
+    out.put((byte)'.');
+    number(out,Math.floorMod(day,20));
+    return out;
+  }
+
+  public static ByteBuffer calendarRound(ByteBuffer out, int day){
+    number(out,CycleTables.trecena(day));
+    out.put((byte)' ');
+    out.put(TZ[CycleTables.veintena(day)]);
+    out.put((byte)' ');
+    number(out,CycleTables.haabDay(day));
+    out.put((byte)' ');
+    out.put(HA[CycleTables.haabMonth(day)]);
+    return out;
+  }
+
+  public static ByteBuffer greg(ByteBuffer out, int d, int m, int y){
+    out.put(GR[m]);
+    out.put((byte)' ');
+    number(out,d);
+    out.put((byte)',');
+    out.put((byte)' ');
+    if(y<=0){
+      number(out,1-y);
+      out.put(BCE);
+    }else{
+      number(out,y);
+      out.put(CE);
+    }
+    return out;
+  }
+
+  public static ByteBuffer supp(ByteBuffer out, int day){
+    out.put(LORD);
+    number(out,CycleTables.lord(day));
+    out.put(SEVEN);
+    number(out,CycleTables.sevenDay(day));
+    out.put(BEARER);
+    number(out,CycleTables.bearerNumber(day));
+    out.put((byte)' ');
+    out.put(TZ[CycleTables.bearerName(day)]);
+    return out;
+  }
+
+  public static ByteBuffer eight(ByteBuffer out, int day){
+    int q = CycleTables.quadrant(day);
+    out.put(QUADRANT);
+    out.put(QU[q]);
+    out.put((byte)' ');
+    out.put((byte)'(');
+    out.put(QU[q+4]);
+    out.put(COLOR);
+    out.put(CO[q]);
+    out.put((byte)' ');
+    out.put((byte)'(');
+    out.put(CO[q+4]);
+    out.put((byte)')');
+    return out;
+  }
+
+  public static ByteBuffer date(ByteBuffer out, int day){
+    longCount(out,day);
+    out.put((byte)' ');
+    out.put((byte)' ');
+    return calendarRound(out,day);
+  }
+
+  public static ByteBuffer record(ByteBuffer out, MayanDay d){
+    long t = MayanMetrics.start();
+    int day = d.getMDC();
+    date(out,day);
+    out.put((byte)' ');
+    out.put((byte)' ');
+    greg(out,d.getDay(),d.getMonth(),d.getYear());
+    out.put((byte)' ');
+    out.put((byte)' ');
+    supp(out,day);
+    out.put((byte)' ');
+    out.put((byte)' ');
+    eight(out,day);
+    MayanMetrics.stop(MayanMetrics.FORMAT,t);
+    return out;
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  static void number(Appendable out, int v) throws IOException {
+    //Writes a decimal integer one character at a time (StringBuilder does this itself without allocating).
+    if(out instanceof StringBuilder){
+      ((StringBuilder)out).append(v);
+      return;
+    }
+    if(v<0){
+      out.append('-');
+    }else{
+      v = -v;                         //Count in negatives so that Integer.MIN_VALUE needs no special case
+    }
+    int div = 1;
+    while(v/div<=-10)div *= 10;
+    while(div!=0){
+      out.append((char)('0'-((v/div)%10)));
+      div /= 10;
+    }
+  }
+
+  static void number(ByteBuffer out, int v){
+    //Writes a decimal integer, last digit first, into the room it will take.
+    if(v<0){
+      out.put((byte)'-');
+    }else{
+      v = -v;
+    }
+    int digits = 1;
+    for(int t=v;t<=-10;t/=10)digits++;
+    int p = out.position();
+    if(out.remaining()<digits)throw new java.nio.BufferOverflowException();
+    for(int i=p+digits-1;i>=p;i--){
+      out.put(i,(byte)('0'-(v%10)));
+      v /= 10;
+    }
+    out.position(p+digits);
+  }
+
+  static byte[][] encode(String[] names){
+    //UTF-8 bytes of each name, for the writers that copy names straight into byte buffers (also MayanDateBatch, MayanAlmanac)
+    byte[][] out = new byte[names.length][];
+    for(int i=0;i<names.length;i++){
+      out[i] = names[i].getBytes(StandardCharsets.UTF_8);
+    }
+    return out;
+  }
+
+  private static byte[] ascii(String s){
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+}
@@ -0,0 +1,164 @@
+/*
+ * Mayan Date Arithmetic on 64 Bits
+ * For use with classes MayanDate and Correlation
+ *
+ * The calendar arithmetic of MayanDate on long MDCs, for mythological dates before the creation and the long Distance
+ * Numbers of the inscriptions. Every cycle position comes from floor division and floor modulo, so days before
+ * 0.0.0.0.0 count back through the cycles exactly as days after it count forward (day -1 is 13.19.19.17.19 of the
+ * previous Bak'tun cycle, written -1.19.19.17.19 here, and 3 Kawak 7 Kumk'u). All of it is straight-line arithmetic.
+ *
+ * Long Counts have any number of places from 5 up, the last being the K'in. Above the Winal (18 K'in) every place is
+ * 20 of the one below: Tun, K'atun, Bak'tun, Piktun, Kalabtun, K'inchiltun, Alawtun. The highest place takes all that
+ * is left over and carries the sign; every lower place is between 0 and its base.
+ *
+ * Methods:
+ * long[] longCount(long day) -- The standard 5-place Long Count [Bak'tun, K'atun, Tun, Winal, K'in] of the given MDC.
+ * long[] longCount(long day, int places) -- The Long Count of the given MDC with the given number of places (5 or more).
+ * long unLongCount(long[] l) -- The MDC of a Long Count of any length.
+ * long unit(int place) -- The number of days in one unit of the given place, counting the K'in as place 0 (below MAX_PLACES).
+ *
+ * long gregMDC(long day, int month, long year) -- Gregorian date to MDC (GMT). The year is astronomical, and the calendar
+ *   proleptic; years beyond 4 million either way do not fit mdcGREG's result.
+ * long gregMDC(long day, int month, long year, Correlation c) -- Ditto, under correlation c.
+ * long[] mdcGREG(long day) -- MDC to Gregorian [day, month, year] (GMT).
+ * long[] mdcGREG(long day, Correlation c) -- Ditto, under correlation c.
+ *
+ * int tzolkinPos(long day), trecena(long day), veintena(long day) -- Tzolk'in [Position, Trecena, Veintena].
+ * int haabPos(long day), haabDay(long day), haabMonth(long day) -- Haab' [Position, Day, Month].
+ * int roundPos(long day) -- Position within the Calendar Round.
+ * int stationDistance(long day), quadrant(long day) -- 819-day cycle Station Distance and Color&Quadrant.
+ * long stationDay(long day) -- MDC of the last 819-day station.
+ * int lord(long day), sevenDay(long day), bearerNumber(long day), bearerName(long day) -- NonLunar Supplementary Series.
+ */
+
+public final class MayanLong {
+
+  //Days in one unit of each place, K'in first
+  private static final long[] UNITS = {1L,20L,360L,7200L,144000L,2880000L,57600000L,1152000000L,23040000000L,
+    460800000000L,9216000000000L,184320000000000L,3686400000000000L,73728000000000000L};
+  //The most places a Long Count or Distance Number can have
+  public static final int MAX_PLACES = UNITS.length;
+
+  private MayanLong(){
+  }
+
+
+  //Long Count --------------------------------------------------------------
+
+  public static long[] longCount(long day){
+    return longCount(day,5);
+  }
+
+  public static long[] longCount(long day, int places){
+    if(places<5||places>UNITS.length)throw new IllegalArgumentException("A Long Count has 5 to "+UNITS.length+" places");
+    //Constant bases, so that each floor division compiles to a multiply
+    long[] out = new long[places];
+    out[places-1] = Math.floorMod(day,20);
+    day = Math.floorDiv(day,20);
+    out[places-2] = Math.floorMod(day,18);
+    day = Math.floorDiv(day,18);
+    for(int i=places-3;i>0;i--){
+      out[i] = Math.floorMod(day,20);
+      day = Math.floorDiv(day,20);
+    }
+    out[0] = day;
+    return out;
+  }
+
+  public static long unLongCount(long[] l){
+    long out = 0;
+    for(int i=0;i<l.length;i++){
+      out += l[i]*UNITS[l.length-1-i];
+    }
+    return out;
+  }
+
+  public static long unit(int place){
+    return UNITS[place];
+  }
+
+
+  //Gregorian ---------------------------------------------------------------
+
+  public static long gregMDC(long d, int m, long y){
+    return gregMDC(d,m,y,Correlation.GMT);
+  }
+
+  public static long gregMDC(long d, int m, long y, Correlation c){
+    return MayanDate.jdn(d,m,y)-c.getConstant();
+  }
+
+  public static long[] mdcGREG(long day){
+    return mdcGREG(day,Correlation.GMT);
+  }
+
+  public static long[] mdcGREG(long day, Correlation c){
+    long g = MayanDate.civil(day+c.getConstant());
+    long[] out = {g&31,(g>>5)&15,g>>9};
+    return out;
+  }
+
+
+  //Cycles ------------------------------------------------------------------
+
+  public static int tzolkinPos(long day){
+    return Math.floorMod(day+159,260);
+  }
+
+  public static int trecena(long day){
+    //(Position+1) mod 13, with 13 in place of 0
+    return (tzolkinPos(day)%13)+1;
+  }
+
+  public static int veintena(long day){
+    return (tzolkinPos(day)+1)%20;
+  }
+
+  public static int haabPos(long day){
+    return Math.floorMod(day+348,365);
+  }
+
+  public static int haabDay(long day){
+    return haabPos(day)%20;
+  }
+
+  public static int haabMonth(long day){
+    return haabPos(day)/20;
+  }
+
+  public static int roundPos(long day){
+    return Math.floorMod(day,18980);
+  }
+
+  public static int stationDistance(long day){
+    return Math.floorMod(day+3,819);
+  }
+
+  public static long stationDay(long day){
+    return day-stationDistance(day);
+  }
+
+  public static int quadrant(long day){
+    return tzolkinPos(stationDay(day))%4;
+  }
+
+  public static int lord(long day){
+    return Math.floorMod(day-1,9)+1;
+  }
+
+  public static int sevenDay(long day){
+    return Math.floorMod(day+2,7)+1;
+  }
+
+  public static int bearerNumber(long day){
+    //MayanDate counts the first (partial) year of the era as an 8 Kab'an year.
+    if(day>=0&&day<360)return 8;
+    return trecena(day-haabPos(day));
+  }
+
+  public static int bearerName(long day){
+    if(day>=0&&day<360)return 17;
+    return veintena(day-haabPos(day));
+  }
+
+}
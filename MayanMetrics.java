@@ -0,0 +1,414 @@
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/*
+ * Mayan Date Metrics
+ * For use with classes MayanDate, MayanFormat, MayanService, DateReconstructor, MayanDateServer and MayanDateCalculator
+ *
+ * Counts and times the calculator's main entry points while it runs inside a service, with nothing but the JDK:
+ * a call count, total and maximum time and a latency histogram per operation, plus the iterations made and results
+ * found by the searches, and optionally a JDK Flight Recorder event per call. Each instrumented method brackets its
+ * work with
+ *   long t = MayanMetrics.start();  ...  MayanMetrics.stop(MayanMetrics.GREG_MDC,t);
+ * While both switches are off, start() is a single read of a static field and stop() a compare, and no clock is read.
+ * Counters are striped (LongAdder) or atomic, so any number of threads may record at once.
+ *
+ * Latencies fall into buckets of 8 per power of two, so a percentile is exact below 8ns and otherwise reported as the
+ * top of its bucket, at most 12.5% high.
+ *
+ * The metrics start on if the system property mayandate.metrics is "true", and the events if mayandate.jfr is "true";
+ * events are then written whenever a recording takes them (java -XX:StartFlightRecording, jcmd JFR.start), under
+ * "Mayan Date Calculator".
+ *
+ * Operations:
+ * GREG_MDC, MDC_GREG -- MayanDate.gregMDC and mdcGREG.
+ * SET_LONG_COUNT     -- MayanDate.setLongCount.
+ * UPDATE             -- MayanDate's derivation of the Calendar Round and Supplementary Series from a new MDC.
+ * ESTIMATE           -- MayanDate.estimate (iterations: dates asked for; found: dates returned).
+ * RECOVER            -- Calendar Round recovery and reconstruction searches: MayanService.recover, DateReconstructor
+ *                       and the server's /recover (iterations: days tried; found: dates returned).
+ * FORMAT             -- The String formatters MayanDate.lcCond, crCond and gregCond, and MayanFormat.record.
+ * GUI_WRITE          -- The GUI's console writes (the text written during an action, shown as it ends).
+ * GUI_INFO           -- The GUI's date information, from request to text (cached or built).
+ *
+ * Switches:
+ * boolean isEnabled(), void setEnabled(boolean on) -- Whether calls are counted and timed.
+ * boolean isEventsEnabled(), void setEventsEnabled(boolean on) -- Whether calls are written as JFR events.
+ * void reset() -- Zeroes every counter, and restarts the throughput clock.
+ *
+ * Recording (for instrumented methods):
+ * long start() -- A start time for stop(), or a marker that nothing is being recorded.
+ * void stop(int op, long start) -- Records one call of op begun at start.
+ * void stop(int op, long start, long iterations, long found) -- Ditto, for a search.
+ *
+ * Reading:
+ * String name(int op) -- The name of op, as "gregMDC".
+ * long getCalls(int op), getIterations(int op), getFound(int op) -- Counters of op.
+ * double getThroughput(int op) -- Calls of op per second since the metrics were enabled or reset.
+ * double getMeanNanos(int op) -- Mean latency of op.
+ * long getPercentileNanos(int op, double p) -- Latency of op at percentile p (0-100), as the top of its bucket.
+ * long getMaxNanos(int op) -- Slowest call of op.
+ * String report(), void report(Appendable out) -- A table of every operation called so far.
+ * void register() -- Registers an MXBean per operation (MayanDate:type=Metrics,name=gregMDC ...) and one for the whole
+ *   (MayanDate:type=Metrics,name=all, with the report and the switch) with the platform MBean server, for jconsole.
+ */
+
+public final class MayanMetrics {
+
+  public static final int GREG_MDC = 0;
+  public static final int MDC_GREG = 1;
+  public static final int SET_LONG_COUNT = 2;
+  public static final int UPDATE = 3;
+  public static final int ESTIMATE = 4;
+  public static final int RECOVER = 5;
+  public static final int FORMAT = 6;
+  public static final int GUI_WRITE = 7;
+  public static final int GUI_INFO = 8;
+  private static final String[] NAMES = {"gregMDC","mdcGREG","setLongCount","update","estimate","recover","format",
+    "gui.write","gui.infoDump"};
+
+  //Switch bits, and the start() marker for a call that is not recorded
+  private static final int METRICS = 1, EVENTS = 2;
+  private static final long OFF = Long.MIN_VALUE;
+
+  //8 buckets per power of two up to 2^62ns
+  private static final int BUCKETS = 61*8;
+
+  private static volatile int mode = (Boolean.getBoolean("mayandate.metrics")?METRICS:0)
+    |(Boolean.getBoolean("mayandate.jfr")?EVENTS:0);
+  private static volatile long since = System.nanoTime();
+
+  private static final Op[] OPS = new Op[NAMES.length];
+
+  static {
+    for(int i=0;i<OPS.length;i++){
+      OPS[i] = new Op(i);
+    }
+  }
+
+  private MayanMetrics(){
+  }
+
+
+  //Switches ---------------------------------------------------------------
+
+  public static boolean isEnabled(){
+    return (mode&METRICS)!=0;
+  }
+
+  public static synchronized void setEnabled(boolean on){
+    if(on&&(mode&METRICS)==0)since = System.nanoTime();
+    mode = on?(mode|METRICS):(mode&~METRICS);
+  }
+
+  public static boolean isEventsEnabled(){
+    return (mode&EVENTS)!=0;
+  }
+
+  public static synchronized void setEventsEnabled(boolean on){
+    mode = on?(mode|EVENTS):(mode&~EVENTS);
+  }
+
+  public static void reset(){
+    for(Op o : OPS){
+      o.reset();
+    }
+    since = System.nanoTime();
+  }
+
+
+  //Recording ---------------------------------------------------------------
+
+  public static long start(){
+    return (mode==0)?OFF:System.nanoTime();
+  }
+
+  public static void stop(int op, long start){
+    if(start!=OFF)record(op,System.nanoTime()-start,0,0);
+  }
+
+  public static void stop(int op, long start, long iterations, long found){
+    if(start!=OFF)record(op,System.nanoTime()-start,iterations,found);
+  }
+
+
+  //Reading ---------------------------------------------------------------
+
+  public static String name(int op){
+    return NAMES[op];
+  }
+
+  public static long getCalls(int op){
+    return OPS[op].getCalls();
+  }
+
+  public static long getIterations(int op){
+    return OPS[op].getIterations();
+  }
+
+  public static long getFound(int op){
+    return OPS[op].getFound();
+  }
+
+  public static double getThroughput(int op){
+    return OPS[op].getThroughput();
+  }
+
+  public static double getMeanNanos(int op){
+    return OPS[op].getMeanNanos();
+  }
+
+  public static long getPercentileNanos(int op, double p){
+    return OPS[op].percentile(p);
+  }
+
+  public static long getMaxNanos(int op){
+    return OPS[op].getMaxNanos();
+  }
+
+  public static String report(){
+    StringBuilder out = new StringBuilder(1024);
+    try{
+      report(out);
+    }catch(IOException e){
+      //A StringBuilder does not throw
+    }
+    return out.toString();
+  }
+
+  public static void report(Appendable out) throws IOException {
+    out.append(String.format("%-14s %12s %12s %10s %8s %8s %8s %9s %10s %12s %10s%n","operation","calls","calls/s",
+      "mean ns","p50","p90","p99","p99.9","max","iterations","found"));
+    for(Op o : OPS){
+      long n = o.getCalls();
+      if(n==0)continue;
+      out.append(String.format("%-14s %12d %12.0f %10.1f %8d %8d %8d %9d %10d %12d %10d%n",o.getName(),n,
+        o.getThroughput(),o.getMeanNanos(),o.percentile(50),o.percentile(90),o.percentile(99),o.percentile(99.9),
+        o.getMaxNanos(),o.getIterations(),o.getFound()));
+    }
+  }
+
+  public static synchronized void register() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName all = new ObjectName("MayanDate:type=Metrics,name=all");
+    if(server.isRegistered(all))return;
+    server.registerMBean(new All(),all);
+    for(Op o : OPS){
+      server.registerMBean(o,new ObjectName("MayanDate:type=Metrics,name="+o.getName()));
+    }
+  }
+
+
+  //JMX -----------------------------------------------------------------------
+
+  public interface OperationMXBean {
+    String getName();
+    long getCalls();
+    double getThroughput();
+    double getMeanNanos();
+    long getP50Nanos();
+    long getP90Nanos();
+    long getP99Nanos();
+    long getP999Nanos();
+    long getMaxNanos();
+    long getIterations();
+    long getFound();
+  }
+
+  public interface MetricsMXBean {
+    boolean isEnabled();
+    void setEnabled(boolean on);
+    boolean isEventsEnabled();
+    void setEventsEnabled(boolean on);
+    String getReport();
+    void reset();
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private static void record(int op, long nanos, long iterations, long found){
+    int m = mode;
+    if((m&METRICS)!=0)OPS[op].add(nanos,iterations,found);
+    if((m&EVENTS)!=0)event(op,nanos,iterations,found);
+  }
+
+  private static void event(int op, long nanos, long iterations, long found){
+    //Kept apart from record() so that the JFR classes are loaded only once events are turned on
+    OperationEvent e = new OperationEvent();
+    if(!e.isEnabled())return;
+    e.operation = NAMES[op];
+    e.elapsed = nanos;
+    e.iterations = iterations;
+    e.found = found;
+    e.commit();
+  }
+
+  private static int bucket(long nanos){
+    //Values below 8 have a bucket each; above, the top 4 bits (the leading 1 and 3 more) pick the bucket
+    if(nanos<8)return (int)Math.max(0,nanos);
+    int e = 63-Long.numberOfLeadingZeros(nanos);
+    return Math.min(BUCKETS-1,((e-2)*8)+(int)((nanos>>>(e-3))&7));
+  }
+
+  private static long top(int b){
+    //The largest value of bucket b
+    if(b<8)return b;
+    int e = (b/8)+2;
+    return ((8L+(b%8)+1)<<(e-3))-1;
+  }
+
+  private static final class Op implements OperationMXBean {
+    private final int id;
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+    private final LongAdder calls = new LongAdder(), nanos = new LongAdder(), iterations = new LongAdder(),
+      found = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    Op(int id){
+      this.id = id;
+    }
+
+    void add(long ns, long it, long f){
+      calls.increment();
+      nanos.add(ns);
+      histogram.incrementAndGet(bucket(ns));
+      if(ns>max.get())max.accumulateAndGet(ns,Math::max);
+      if(it!=0)iterations.add(it);
+      if(f!=0)found.add(f);
+    }
+
+    void reset(){
+      calls.reset();
+      nanos.reset();
+      iterations.reset();
+      found.reset();
+      max.set(0);
+      for(int i=0;i<BUCKETS;i++){
+        histogram.set(i,0);
+      }
+    }
+
+    long percentile(double p){
+      //The top of the bucket holding the call ranked p% of the way up, counted from a snapshot of the histogram
+      long[] h = new long[BUCKETS];
+      long n = 0;
+      for(int i=0;i<BUCKETS;i++){
+        h[i] = histogram.get(i);
+        n += h[i];
+      }
+      if(n==0)return 0;
+      long rank = Math.max(1,(long)Math.ceil(n*Math.min(100,Math.max(0,p))/100.0));
+      long seen = 0;
+      for(int i=0;i<BUCKETS;i++){
+        seen += h[i];
+        if(seen>=rank)return Math.min(top(i),max.get());
+      }
+      return max.get();
+    }
+
+    public String getName(){
+      return NAMES[id];
+    }
+
+    public long getCalls(){
+      return calls.sum();
+    }
+
+    public double getThroughput(){
+      double s = (System.nanoTime()-since)/1e9;
+      return (s<=0)?0:calls.sum()/s;
+    }
+
+    public double getMeanNanos(){
+      long n = calls.sum();
+      return (n==0)?0:(double)nanos.sum()/n;
+    }
+
+    public long getP50Nanos(){
+      return percentile(50);
+    }
+
+    public long getP90Nanos(){
+      return percentile(90);
+    }
+
+    public long getP99Nanos(){
+      return percentile(99);
+    }
+
+    public long getP999Nanos(){
+      return percentile(99.9);
+    }
+
+    public long getMaxNanos(){
+      return max.get();
+    }
+
+    public long getIterations(){
+      return iterations.sum();
+    }
+
+    public long getFound(){
+      return found.sum();
+    }
+  }
+
+  private static final class All implements MetricsMXBean {
+    public boolean isEnabled(){
+      return MayanMetrics.isEnabled();
+    }
+
+    public void setEnabled(boolean on){
+      MayanMetrics.setEnabled(on);
+    }
+
+    public boolean isEventsEnabled(){
+      return MayanMetrics.isEventsEnabled();
+    }
+
+    public void setEventsEnabled(boolean on){
+      MayanMetrics.setEventsEnabled(on);
+    }
+
+    public String getReport(){
+      return MayanMetrics.report();
+    }
+
+    public void reset(){
+      MayanMetrics.reset();
+    }
+  }
+
+  @Name("mayandate.Operation")
+  @Label("Mayan Date Operation")
+  @Category("Mayan Date Calculator")
+  @Description("One call of an instrumented calculator entry point")
+  static final class OperationEvent extends Event {
+    @Label("Operation")
+    String operation;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Iterations")
+    long iterations;
+
+    @Label("Found")
+    long found;
+  }
+
+}
@@ -0,0 +1,483 @@
+/*
+ * Mayan Date Parser
+ * For use with classes MayanDate and MayanDay
+ *
+ * Reads dates from text straight into MDC or Calendar Round values, without creating substrings. Every method reads
+ * the range [start, end) of a CharSequence or of a byte[] of ASCII/UTF-8 text, ignoring surrounding blanks.
+ * Day and month names are matched by a hash lookup that ignores case and apostrophes (straight or curly), and also
+ * knows the older colonial spellings (Ahau, Cauac, Zotz', Cumku and so on).
+ *
+ * Forms read:
+ * Long Count      -- 9.12.11.5.18 (five places)
+ * Calendar Round  -- 6 Etz'nab' 11 Yax
+ * Gregorian       -- Aug 11, 3114 BCE / August 11 3114 BC / 11 August 3114 BCE / 11/8/3114 BCE / 11/8/-3113
+ *                    (years without BCE/BC or CE/AD are astronomical; month names may be abbreviated to three letters)
+ * MDC             -- 1386478
+ *
+ * Methods:
+ * int parseLongCount(text, int start, int end) -- Returns the MDC of a Long Count.
+ * int parseCalendarRound(text, int start, int end) -- Returns the Calendar Round position (as MayanDate.roundPos) of a Calendar Round.
+ * int parseGreg(text, int start, int end) -- Returns the MDC of a Gregorian date.
+ * int parseMDC(text, int start, int end) -- Returns an MDC.
+ * int parseDate(text, int start, int end) -- Returns the MDC of a Long Count, Gregorian date or MDC, whichever the text is.
+ * int tzolkinName(text, int start, int end), haabName(...), monthName(...) -- Return the index of a single name, or -1.
+ *
+ * void setCorrelation(Correlation c) -- Reads Gregorian dates under correlation c (GMT unless set).
+ *
+ * A parser is reusable but not thread-safe: after each call,
+ * boolean ok() -- Whether the text was read.
+ * int getErrorPos() -- Where in the text reading failed (-1 if it did not).
+ * String getError() -- Why reading failed (null if it did not).
+ * Dates whose MDC does not fit an int, or whose Gregorian year does not fit MayanDate's packing (see MayanDate.packs),
+ * fail with "out of range" rather than wrap.
+ * A failed parse returns 0; no exception is thrown, so bad rows in bulk input cost no more than good ones.
+ */
+
+public final class MayanParser {
+
+  private static final MayanDate CONV = new MayanDate(0);
+
+  private static final NameTable TZOLKIN = new NameTable(MayanDate.TZ_NAMES,
+    "Ahau","Imix","Ik","Akbal","Kan","Chicchan","Cimi","Manik","Lamat","Muluc","Oc","Chuen","Eb","Ben","Ix","Men","Cib","Caban","Etznab","Cauac");
+  private static final NameTable HAAB = new NameTable(MayanDate.HA_NAMES,
+    "Pop","Uo","Zip","Zotz","Tzec","Xul","Yaxkin","Mol","Chen","Yax","Zac","Ceh","Mac","Kankin","Muan","Pax","Kayab","Cumku","Uayeb");
+  private static final NameTable MONTHS = new NameTable(MayanDate.GR_MONTHS,
+    "","Jan","Feb","Mar","Apr","May","Jun","Jul","Aug","Sep","Oct","Nov","Dec");
+  private static final int[] PLACES = {144000,7200,360,20,1};
+  private static final int[] MONTH_DAYS = {0,31,28,31,30,31,30,31,31,30,31,30,31};
+
+  //Current source: exactly one of cs and bs is set
+  private CharSequence cs;
+  private byte[] bs;
+  private int p, end;
+
+  private String error;
+  private int errorPos = -1;
+
+  private MayanDate greg = CONV;     //Converter for Gregorian dates, under the chosen correlation
+
+
+  //CharSequence -----------------------------------------------------------
+
+  public int parseLongCount(CharSequence text, int start, int end){
+    open(text,start,end);
+    return longCount();
+  }
+
+  public int parseCalendarRound(CharSequence text, int start, int end){
+    open(text,start,end);
+    return calendarRound();
+  }
+
+  public int parseGreg(CharSequence text, int start, int end){
+    open(text,start,end);
+    return greg();
+  }
+
+  public int parseMDC(CharSequence text, int start, int end){
+    open(text,start,end);
+    return mdc();
+  }
+
+  public int parseDate(CharSequence text, int start, int end){
+    open(text,start,end);
+    return date();
+  }
+
+  public int tzolkinName(CharSequence text, int start, int end){
+    open(text,start,end);
+    return whole(TZOLKIN);
+  }
+
+  public int haabName(CharSequence text, int start, int end){
+    open(text,start,end);
+    return whole(HAAB);
+  }
+
+  public int monthName(CharSequence text, int start, int end){
+    open(text,start,end);
+    return whole(MONTHS);
+  }
+
+
+  //byte[] -----------------------------------------------------------------
+
+  public int parseLongCount(byte[] text, int start, int end){
+    open(text,start,end);
+    return longCount();
+  }
+
+  public int parseCalendarRound(byte[] text, int start, int end){
+    open(text,start,end);
+    return calendarRound();
+  }
+
+  public int parseGreg(byte[] text, int start, int end){
+    open(text,start,end);
+    return greg();
+  }
+
+  public int parseMDC(byte[] text, int start, int end){
+    open(text,start,end);
+    return mdc();
+  }
+
+  public int parseDate(byte[] text, int start, int end){
+    open(text,start,end);
+    return date();
+  }
+
+  public int tzolkinName(byte[] text, int start, int end){
+    open(text,start,end);
+    return whole(TZOLKIN);
+  }
+
+  public int haabName(byte[] text, int start, int end){
+    open(text,start,end);
+    return whole(HAAB);
+  }
+
+  public int monthName(byte[] text, int start, int end){
+    open(text,start,end);
+    return whole(MONTHS);
+  }
+
+
+  //Mutators ---------------------------------------------------------------
+
+  public void setCorrelation(Correlation c){
+    greg = c.equals(Correlation.GMT)?CONV:new MayanDate(0,c);
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public boolean ok(){
+    return error==null;
+  }
+
+  public int getErrorPos(){
+    return errorPos;
+  }
+
+  public String getError(){
+    return error;
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private void open(CharSequence text, int start, int e){
+    cs = text;
+    bs = null;
+    reset(start,e);
+  }
+
+  private void open(byte[] text, int start, int e){
+    cs = null;
+    bs = text;
+    reset(start,e);
+  }
+
+  private void reset(int start, int e){
+    p = start;
+    end = e;
+    error = null;
+    errorPos = -1;
+    while(end>p&&blank(at(end-1)))end--;
+    skip();
+  }
+
+  private char at(int i){
+    return (cs!=null)?cs.charAt(i):(char)(bs[i]&0xff);
+  }
+
+  private int fail(String why){
+    if(error==null){
+      error = why;
+      errorPos = p;
+    }
+    return 0;
+  }
+
+  private int longCount(){
+    int start = p;
+    long day = 0;
+    for(int i=0;i<5&&error==null;i++){
+      if(i>0)expect('.',"Expected '.' between Long Count places");
+      int at = p;
+      int v = number();
+      if(i>0&&(v<0||v>=((i==3)?18:20))&&error==null){
+        //Places after the Bak'tun run 0-19, except the Winal which runs 0-17
+        p = at;
+        return fail("Long Count place out of range");
+      }
+      day += (long)v*PLACES[i];
+    }
+    done();
+    if(error==null&&day!=(int)day){
+      p = start;
+      return fail("Long Count out of range");
+    }
+    return (error==null)?(int)day:0;
+  }
+
+  private int calendarRound(){
+    int tn0 = p;
+    int tn = number();
+    if(error==null&&(tn<1||tn>13)){
+      p = tn0;
+      return fail("Tzolk'in number must be 1-13");
+    }
+    int tname = name(TZOLKIN,"Expected a Tzolk'in day name");
+    int hd0 = p;
+    int hd = number();
+    int hmonth = name(HAAB,"Expected a Haab' month name");
+    done();
+    if(error!=null)return 0;
+    if(hd<0||hd>19||(hmonth==18&&hd>4)){
+      p = hd0;
+      return fail("Haab' day out of range");
+    }
+    int pos = CONV.roundPos(tn,tname,hd,hmonth);
+    MayanDay check = MayanDay.of(pos);
+    if(check.getTrecena()!=tn||check.getVeintena()!=tname||check.getHaabDay()!=hd||check.getHaabMonth()!=hmonth){
+      p = tn0;
+      return fail("No such Calendar Round");
+    }
+    return pos;
+  }
+
+  private int greg(){
+    int d, m, y;
+    if(p<end&&letter(at(p))){
+      //Month d, y
+      m = name(MONTHS,"Expected a month name");
+      if(p<end&&at(p)=='.')p++;
+      skip();
+      d = number();
+      if(p<end&&at(p)==','){
+        p++;
+        skip();
+      }
+      y = number();
+    }else{
+      d = number();
+      if(p<end&&at(p)=='/'){
+        //d/m/y
+        p++;
+        m = number();
+        expect('/',"Expected '/' between month and year");
+      }else{
+        //d Month y
+        m = name(MONTHS,"Expected a month name");
+        if(p<end&&at(p)=='.')p++;
+        skip();
+      }
+      y = number();
+    }
+    if(error!=null)return 0;
+    int era = p;
+    if(p<end){
+      if(word("BCE")||word("BC")){
+        if(y<1){
+          p = era;
+          return fail("BCE years start at 1");
+        }
+        y = 1-y;
+      }else if(!word("CE")&&!word("AD")){
+        return fail("Expected BCE, BC, CE or AD");
+      }
+    }
+    done();
+    if(error!=null)return 0;
+    if(m<1||m>12){
+      p = era;
+      return fail("Month must be 1-12");
+    }
+    boolean leap = (Math.floorMod(y,4)==0&&Math.floorMod(y,100)!=0)||Math.floorMod(y,400)==0;
+    if(d<1||d>MONTH_DAYS[m]+((m==2&&leap)?1:0)){
+      p = era;
+      return fail("No such day in that month");
+    }
+    //Only dates with an int MDC and a year that packs (see MayanDate.packs) can be written back out
+    long j = MayanDate.jdn(d,m,y);
+    long day = j-greg.getCorrelation().getConstant();
+    if(!MayanDate.packs(j)||day!=(int)day){
+      p = era;
+      return fail("Date out of range");
+    }
+    return (int)day;
+  }
+
+  private int mdc(){
+    int v = number();
+    done();
+    return (error==null)?v:0;
+  }
+
+  private int date(){
+    //Long Count if there is a '.' between digits, Gregorian if there is a letter or '/', otherwise MDC.
+    int start = p;
+    boolean dot = false;
+    for(int i=p;i<end;i++){
+      char c = at(i);
+      if(c=='/'||letter(c))return greg();
+      if(c=='.')dot = true;
+    }
+    p = start;
+    return dot?longCount():mdc();
+  }
+
+  private int number(){
+    //Reads a signed decimal integer and the blanks after it.
+    if(error!=null)return 0;
+    boolean neg = false;
+    if(p<end&&(at(p)=='-'||at(p)=='+')){
+      neg = at(p)=='-';
+      p++;
+    }
+    int start = p;
+    long v = 0;
+    while(p<end&&at(p)>='0'&&at(p)<='9'){
+      v = (v*10)+(at(p)-'0');
+      if(v>Integer.MAX_VALUE)return fail("Number too large");
+      p++;
+    }
+    if(p==start)return fail("Expected a number");
+    skip();
+    return (int)(neg?-v:v);
+  }
+
+  private int name(NameTable t, String why){
+    //Reads a name from the table and the blanks after it.
+    if(error!=null)return 0;
+    int start = p;
+    while(p<end&&(letter(at(p))||apostrophe(at(p))))p++;
+    int i = t.find(this,start,p);
+    if(i<0){
+      p = start;
+      return fail(why);
+    }
+    skip();
+    return i;
+  }
+
+  private int whole(NameTable t){
+    int start = p;
+    int i = t.find(this,start,end);
+    if(i<0){
+      fail("Unknown name");
+      errorPos = start;
+    }
+    return i;
+  }
+
+  private boolean word(String w){
+    //Consumes the given upper-case word, in any case, if it is the next whole word.
+    int n = w.length();
+    if(end-p<n||(p+n<end&&letter(at(p+n))))return false;
+    for(int i=0;i<n;i++){
+      if(Character.toUpperCase(at(p+i))!=w.charAt(i))return false;
+    }
+    p += n;
+    skip();
+    return true;
+  }
+
+  private void expect(char c, String why){
+    if(error!=null)return;
+    if(p<end&&at(p)==c){
+      p++;
+      skip();
+    }else{
+      fail(why);
+    }
+  }
+
+  private void done(){
+    if(error==null&&p<end)fail("Unexpected text");
+  }
+
+  private void skip(){
+    while(p<end&&blank(at(p)))p++;
+  }
+
+  private static boolean blank(char c){
+    return c==' '||c=='\t'||c=='\r'||c=='\n';
+  }
+
+  private static boolean letter(char c){
+    return (c>='a'&&c<='z')||(c>='A'&&c<='Z');
+  }
+
+  private static boolean apostrophe(char c){
+    //Straight and curly apostrophes; in UTF-8 bytes the curly one arrives as three bytes of 0x80 and up.
+    return c=='\''||c=='\u2019'||c=='`'||(c>=0x80&&c<=0xff);
+  }
+
+
+  private static final class NameTable {
+    //Open-addressed hash of the names, folded to lower case and stripped of apostrophes.
+    private final char[][] keys = new char[128][];
+    private final int[] values = new int[128];
+
+    NameTable(String[] names, String... aliases){
+      for(int i=0;i<names.length;i++){
+        add(names[i],i);
+      }
+      for(int i=0;i<aliases.length;i++){
+        if(aliases[i].length()>0)add(aliases[i],i);
+      }
+    }
+
+    private void add(String name, int value){
+      StringBuilder sb = new StringBuilder();
+      for(int i=0;i<name.length();i++){
+        char c = name.charAt(i);
+        if(letter(c))sb.append(Character.toLowerCase(c));
+      }
+      char[] k = sb.toString().toCharArray();
+      int h = 0;
+      for(char c : k)h = (h*31)+c;
+      int slot = mix(h);
+      while(keys[slot]!=null){
+        if(java.util.Arrays.equals(keys[slot],k))return;
+        slot = (slot+1)&127;
+      }
+      keys[slot] = k;
+      values[slot] = value;
+    }
+
+    int find(MayanParser src, int start, int stop){
+      int h = 0;
+      int n = 0;
+      for(int i=start;i<stop;i++){
+        char c = src.at(i);
+        if(letter(c)){
+          h = (h*31)+(c|0x20);
+          n++;
+        }else if(!apostrophe(c)){
+          return -1;
+        }
+      }
+      if(n==0)return -1;
+      for(int slot=mix(h);keys[slot]!=null;slot=(slot+1)&127){
+        char[] k = keys[slot];
+        if(k.length!=n)continue;
+        int j = 0;
+        for(int i=start;i<stop&&j>=0;i++){
+          char c = src.at(i);
+          if(letter(c))j = ((c|0x20)==k[j])?j+1:-1;
+        }
+        if(j==n)return values[slot];
+      }
+      return -1;
+    }
+
+    private static int mix(int h){
+      return (h^(h>>>7)^(h>>>14))&127;
+    }
+  }
+
+}
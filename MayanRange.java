@@ -0,0 +1,162 @@
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+ * Range of Mayan Dates
+ * For use with class MayanDay
+ *
+ * A sized, splittable source of MayanDays over a span of MDCs, for walking many days (say the 13 Bak'tun of the era)
+ * with the Stream API, in parallel if wanted. Of a MayanDay's fields only the Gregorian date takes more than a division
+ * or two to find, so the range rolls it forward a day at a time instead, and each split works out its own starting
+ * date once.
+ *
+ * Methods:
+ * MayanRange(int from, int to) -- The days from MDC from up to but not including MDC to (at most Integer.MAX_VALUE days).
+ * static MayanRange era() -- The 13 Bak'tun of the current era, 0.0.0.0.0 up to 13.0.0.0.0.
+ * int getFrom(), getTo(), size() -- The bounds and number of days.
+ * Stream<MayanDay> stream() -- A sequential stream of the days in order; call parallel() on it to split the range across threads.
+ * Spliterator<MayanDay> spliterator() -- The spliterator behind stream().
+ * Iterator<MayanDay> iterator() -- The days in order, for use in a for-each loop.
+ */
+
+public final class MayanRange implements Iterable<MayanDay> {
+
+  private static final MayanDate CONV = new MayanDate(0);
+
+  private final int from, to;
+
+  public MayanRange(int from, int to){
+    if(to<from)throw new IllegalArgumentException("Range ends before it starts: "+from+" to "+to);
+    if((long)to-from>Integer.MAX_VALUE)throw new IllegalArgumentException("Range of more than "+Integer.MAX_VALUE+" days: "+from+" to "+to);
+    this.from = from;
+    this.to = to;
+  }
+
+  public static MayanRange era(){
+    return new MayanRange(0,1872000);
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public int getFrom(){
+    return from;
+  }
+
+  public int getTo(){
+    return to;
+  }
+
+  public int size(){
+    return (int)((long)to-from);
+  }
+
+  public Stream<MayanDay> stream(){
+    return StreamSupport.stream(spliterator(),false);
+  }
+
+  public Spliterator<MayanDay> spliterator(){
+    return new Days(from,to);
+  }
+
+  public Iterator<MayanDay> iterator(){
+    return Spliterators.iterator(spliterator());
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private static final class Days implements Spliterator<MayanDay> {
+
+    //Splits below this size cost more than they save
+    private static final int MIN_SPLIT = 1024;
+
+    private int next;
+    private final int end;
+    private int d, m, y;      //Gregorian date of next, found when first needed
+
+    Days(int next, int end){
+      this.next = next;
+      this.end = end;
+    }
+
+    public boolean tryAdvance(Consumer<? super MayanDay> action){
+      if(next>=end)return false;
+      if(d==0)seek();
+      action.accept(emit());
+      return true;
+    }
+
+    public void forEachRemaining(Consumer<? super MayanDay> action){
+      if(next>=end)return;
+      if(d==0)seek();
+      while(next<end){
+        action.accept(emit());
+      }
+    }
+
+    public Spliterator<MayanDay> trySplit(){
+      long n = (long)end-next;
+      if(n<MIN_SPLIT)return null;
+      int mid = (int)(next+(n>>>1));
+      Days head = new Days(next,mid);
+      if(d!=0){
+        head.d = d;
+        head.m = m;
+        head.y = y;
+        d = 0;
+      }
+      next = mid;
+      return head;
+    }
+
+    public long estimateSize(){
+      return (long)end-next;
+    }
+
+    public int characteristics(){
+      return ORDERED|SORTED|DISTINCT|SIZED|SUBSIZED|NONNULL|IMMUTABLE;
+    }
+
+    public Comparator<? super MayanDay> getComparator(){
+      //Natural order
+      return null;
+    }
+
+    private void seek(){
+      long p = CONV.packedGREG(next);
+      d = (int)(p&31);
+      m = (int)((p>>5)&15);
+      y = (int)(p>>9);
+    }
+
+    private MayanDay emit(){
+      //Hands out the next day and rolls the Gregorian date on to the one after it
+      MayanDay out = MayanDay.of(next,((long)y<<9)|(m<<5)|d);
+      next++;
+      if(d<monthLength(m,y)){
+        d++;
+      }else{
+        d = 1;
+        if(m<12){
+          m++;
+        }else{
+          m = 1;
+          y++;
+        }
+      }
+      return out;
+    }
+
+    private static int monthLength(int m, int y){
+      if(m==2)return ((y%4==0&&y%100!=0)||y%400==0)?29:28;
+      return (m==4||m==6||m==9||m==11)?30:31;
+    }
+  }
+
+}
@@ -0,0 +1,160 @@
+import java.util.Calendar;
+
+/*
+ * Mayan Date Conversion Service
+ * For use with classes MayanDate, MayanDay and DateCache
+ *
+ * Stateless, thread-safe front to MayanDate's converters and cycle functions, for code that serves many threads at once
+ * (a MayanDate, being mutable, cannot be shared between them). Every method may be called from any thread without
+ * locking. Dates come back as immutable MayanDays; arrays come back freshly allocated and belong to the caller.
+ *
+ * Dates come from a shared DateCache of MayanDays (4096 of them, W-TinyLFU, by default), so that the same popular dates
+ * asked for again and again are converted once. A Gregorian date that does not exist (such as 31 February) is not
+ * cached, and keeps the fields it was given, as MayanDay.ofGregDate.
+ *
+ * Dates:
+ * MayanDay day(int days) -- The date with the given MDC.
+ * MayanDay fromGreg(int day, int month, int year, boolean bc) -- The date with the given Gregorian date.
+ * MayanDay fromGreg(int day, int month, int year) -- The date with the given astronomical Gregorian date.
+ * MayanDay fromLongCount(int[] longCount) -- The date with the given standard Long Count. Nonstandard dates will default to 0.
+ * MayanDay today() -- The current date.
+ *
+ * Converters (as the MayanDate methods of the same names):
+ * int gregMDC(int day, int month, int year), int[] mdcGREG(int day)
+ * int[] longCount(int day), int unLongCount(int[] l)
+ * int[] tzolkinOf(int day), int[] haabOf(int day)
+ * int roundPos(int tn, int td, int hn, int hm), int[] roundBorders(int day)
+ * int[] getDistance(int firstDate, int secondDate), int[] giveDistance(int firstDate, int distance)
+ *
+ * Recovery:
+ * int[] estimate(int round, int n) -- The first n MDC values with the given Calendar Round position.
+ * int[] estimate(int round, int n, int g) -- Ditto, with Lord of the Night g. Returns an empty array if g is not a Lord.
+ * MayanDay[] recover(int tn, int td, int hn, int hm, int n) -- The first n dates with the given Calendar Round.
+ *
+ * Cache:
+ * DateCache<MayanDay> getCache() -- The cache dates come from, for its counters; null if caching is off.
+ * void setCache(DateCache<MayanDay> cache) -- Takes dates from the given cache from now on; null turns caching off.
+ */
+
+public final class MayanService {
+
+  //Shared converter; the conversion methods read nothing of it but its fixed correlation constant.
+  private static final MayanDate CONV = new MayanDate(0);
+
+  private static volatile DateCache<MayanDay> cache = DateCache.days(4096,DateCache.TINY_LFU);
+
+  private MayanService(){
+  }
+
+
+  //Dates -------------------------------------------------------------------
+
+  public static MayanDay day(int days){
+    DateCache<MayanDay> c = cache;
+    return (c==null)?MayanDay.of(days):c.get(days);
+  }
+
+  public static MayanDay fromGreg(int d, int m, int y, boolean bc){
+    if(bc){
+      y = (0-y)+1;
+    }
+    return fromGreg(d,m,y);
+  }
+
+  public static MayanDay fromGreg(int d, int m, int y){
+    DateCache<MayanDay> c = cache;
+    if(c==null)return MayanDay.ofGregDate(d,m,y);
+    //The cached date is the real one; a date that does not exist keeps its fields uncached
+    MayanDay out = c.get(CONV.gregMDC(d,m,y));
+    if(out.getDay()==d&&out.getMonth()==m&&out.getYear()==y)return out;
+    return MayanDay.ofGregDate(d,m,y);
+  }
+
+  public static MayanDay fromLongCount(int[] l){
+    if(l.length!=5)return day(0);
+    return day(CONV.unLongCount(l));
+  }
+
+  public static MayanDay today(){
+    Calendar cal = Calendar.getInstance();
+    return fromGreg(cal.get(Calendar.DATE),cal.get(Calendar.MONTH)+1,cal.get(Calendar.YEAR));
+  }
+
+
+  //Converters --------------------------------------------------------------
+
+  public static int gregMDC(int d, int m, int y){
+    return CONV.gregMDC(d,m,y);
+  }
+
+  public static int[] mdcGREG(int day){
+    return CONV.mdcGREG(day);
+  }
+
+  public static int[] longCount(int day){
+    return CONV.longCount(day);
+  }
+
+  public static int unLongCount(int[] l){
+    return CONV.unLongCount(l);
+  }
+
+  public static int[] tzolkinOf(int day){
+    return CONV.tzolkinOf(day);
+  }
+
+  public static int[] haabOf(int day){
+    return CONV.haabOf(day);
+  }
+
+  public static int roundPos(int tn, int td, int hn, int hm){
+    return CONV.roundPos(tn,td,hn,hm);
+  }
+
+  public static int[] roundBorders(int day){
+    return CONV.roundBorders(day);
+  }
+
+  public static int[] getDistance(int da, int db){
+    return CONV.getDistance(da,db);
+  }
+
+  public static int[] giveDistance(int da, int db){
+    return CONV.giveDistance(da,db);
+  }
+
+
+  //Recovery ----------------------------------------------------------------
+
+  public static int[] estimate(int rd, int n){
+    return CONV.estimate(rd,n);
+  }
+
+  public static int[] estimate(int rd, int n, int g){
+    return CONV.estimate(rd,n,g);
+  }
+
+  public static MayanDay[] recover(int tn, int td, int hn, int hm, int n){
+    //Recovered dates are seldom asked for twice, so they bypass the cache rather than crowd it
+    long t = MayanMetrics.start();
+    int[] days = CONV.estimate(CONV.roundPos(tn,td,hn,hm),n);
+    MayanDay[] out = new MayanDay[days.length];
+    for(int i=0;i<days.length;i++){
+      out[i] = MayanDay.of(days[i]);
+    }
+    MayanMetrics.stop(MayanMetrics.RECOVER,t,days.length,out.length);
+    return out;
+  }
+
+
+  //Cache -------------------------------------------------------------------
+
+  public static DateCache<MayanDay> getCache(){
+    return cache;
+  }
+
+  public static void setCache(DateCache<MayanDay> c){
+    cache = c;
+  }
+
+}
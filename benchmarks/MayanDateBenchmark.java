@@ -0,0 +1,484 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/*
+ * Mayan Date Benchmark Harness
+ * For use with class MayanDate
+ *
+ * Times every MayanDate hot path over realistic date distributions and reports nanoseconds and bytes allocated per
+ * operation. Each benchmark runs in its own forked JVM so that one benchmark's profile cannot skew another's.
+ *
+ * Compile and run from the repository root:
+ *   javac -d build *.java benchmarks/*.java
+ *   java -cp build MayanDateBenchmark [options]
+ *
+ * Options:
+ * -b <text>      Only run benchmarks whose name contains the text (may be repeated).
+ * -d <dist>      Only run the given date distribution: era, classic or modern (may be repeated).
+ * -w <n>         Warmup iterations (default 5).
+ * -i <n>         Measurement iterations (default 10).
+ * -t <ms>        Milliseconds per iteration (default 200).
+ * -o <file>      Save the results to the given file.
+ * -c <file>      Compare the results against a saved file and flag regressions.
+ * -r <percent>   Slowdown (or allocation growth) that counts as a regression (default 10).
+ * -l             List the benchmarks and exit.
+ * -nofork        Run every benchmark in this JVM.
+ * -scale <n>     Instead of the benchmarks, run the MayanService stress test on 1 to n threads: reports throughput and
+ *                speedup at each thread count, checks every result against single-threaded answers, and exits 1 on a mismatch.
+ *
+ * Date distributions:
+ * era     -- Uniform over the current 13-bak'tun era (0.0.0.0.0 to 13.0.0.0.0).
+ * classic -- Uniform over the Classic period inscriptions (8.0.0.0.0 to 10.4.0.0.0).
+ * modern  -- Uniform over 1900 CE to 2100 CE.
+ *
+ * Benchmarks whose names end in .tables run with the cycle lookup tables enabled (see class CycleTables).
+ * Benchmarks whose names start with engine. run on DateEngine.get(): to time the SIMD engine, compile incubator/ as
+ * described in class VectorDateEngine and add --add-modules jdk.incubator.vector to the java command.
+ * Benchmarks whose names start with era. read a table of the current era (see class EraTable), written to
+ * mayan-benchmark.era in the temporary directory the first time it is needed. Modern dates past 13.0.0.0.0 fall back
+ * to arithmetic.
+ *
+ * The baseline results kept in benchmarks/baseline.txt were recorded with the default options.
+ */
+
+public class MayanDateBenchmark {
+
+  //Benchmark operation over the i-th prepared input; the result is folded into a sink so that it cannot be optimized away.
+  interface Op {
+    int run(int i);
+  }
+
+  private static final int SIZE = 4096;          //Number of prepared inputs (a power of two)
+  private static final String[] DISTS = {"era","classic","modern"};
+
+  //Prepared inputs
+  private static MayanDate da = new MayanDate(0);
+  private static int[] mdc = new int[SIZE];
+  private static int[][] lc = new int[SIZE][];
+  private static int[][] greg = new int[SIZE][];
+  private static int[][] tzolkin = new int[SIZE][];
+  private static int[][] haab = new int[SIZE][];
+  private static int[] crd = new int[SIZE];
+  private static int[] lord = new int[SIZE];
+  private static int[] skew = new int[SIZE];     //Cache lookups: half from 64 popular dates, half from all the inputs
+
+  //Batch columns
+  private static int[] c1 = new int[SIZE], c2 = new int[SIZE], c3 = new int[SIZE], c4 = new int[SIZE], c5 = new int[SIZE];
+  private static final Correlation[] CORRELATIONS = Correlation.known();
+  private static int[][] cd = new int[4][SIZE], cm = new int[4][SIZE], cy = new int[4][SIZE];
+  private static int[] gd = new int[SIZE], gm = new int[SIZE], gy = new int[SIZE];
+  private static DateEngine engine = DateEngine.get();
+
+  //Caches of 256 server records, for the cache. benchmarks
+  private static DateCache<byte[]> lru = new DateCache<byte[]>(256,DateCache.LRU,MayanDateServer::record);
+  private static DateCache<byte[]> tinyLfu = new DateCache<byte[]>(256,DateCache.TINY_LFU,MayanDateServer::record);
+
+  //Era table record targets, as MayanDate's arrays
+  private static int[] flc = new int[5], fgreg = new int[3], ftz = new int[3], fhaab = new int[3], feight = new int[3],
+    fsupp = new int[4];
+
+  //Reused formatter targets
+  private static StringBuilder sb = new StringBuilder(256);
+  private static java.nio.ByteBuffer bb = java.nio.ByteBuffer.allocate(256);
+
+  private static int sink;
+
+
+  public static void main(String[] args) throws Exception {
+    List<String> only = new ArrayList<String>();
+    List<String> dists = new ArrayList<String>();
+    int warm = 5;
+    int iters = 10;
+    int ms = 200;
+    String save = null;
+    String compare = null;
+    double threshold = 10;
+    boolean fork = true;
+    boolean list = false;
+    int scale = 0;
+    for(int i=0;i<args.length;i++){
+      String a = args[i];
+      if(a.equals("-b")){
+        only.add(args[++i]);
+      }else if(a.equals("-d")){
+        dists.add(args[++i]);
+      }else if(a.equals("-w")){
+        warm = Integer.parseInt(args[++i]);
+      }else if(a.equals("-i")){
+        iters = Integer.parseInt(args[++i]);
+      }else if(a.equals("-t")){
+        ms = Integer.parseInt(args[++i]);
+      }else if(a.equals("-o")){
+        save = args[++i];
+      }else if(a.equals("-c")){
+        compare = args[++i];
+      }else if(a.equals("-r")){
+        threshold = Double.parseDouble(args[++i]);
+      }else if(a.equals("-nofork")){
+        fork = false;
+      }else if(a.equals("-scale")){
+        scale = Integer.parseInt(args[++i]);
+      }else if(a.equals("-l")){
+        list = true;
+      }else if(a.equals("-run")){
+        //Internal: run a single benchmark in this (forked) JVM and print its result line
+        String[] r = args[++i].split("/");
+        CycleTables.setEnabled(r[0].endsWith(".tables"));
+        prepare(r[1]);
+        System.out.println(measure(r[0],r[1],ops().get(r[0]),warm,iters,ms));
+        return;
+      }else{
+        System.err.println("Unknown option: "+a);
+        System.exit(2);
+      }
+    }
+    if(dists.isEmpty())dists.addAll(Arrays.asList(DISTS));
+    if(scale>0){
+      prepare(dists.get(0));
+      System.exit(scaling(scale,iters,ms)?0:1);
+    }
+
+    List<String> names = new ArrayList<String>();
+    for(String n : ops().keySet()){
+      boolean pick = only.isEmpty();
+      for(String o : only){
+        if(n.contains(o))pick = true;
+      }
+      if(pick)names.add(n);
+    }
+    if(list){
+      for(String n : names)System.out.println(n);
+      return;
+    }
+
+    Map<String,double[]> base = (compare==null)?null:load(compare);
+    List<String> lines = new ArrayList<String>();
+    String head = String.format("%-24s %-8s %12s %12s %10s","benchmark","dist","ns/op","error","B/op");
+    System.out.println(head);
+    int regressions = 0;
+    for(String n : names){
+      for(String d : dists){
+        String line;
+        if(fork){
+          line = forked(n,d,warm,iters,ms);
+        }else{
+          CycleTables.setEnabled(n.endsWith(".tables"));
+          prepare(d);
+          line = measure(n,d,ops().get(n),warm,iters,ms);
+        }
+        lines.add(line);
+        String note = "";
+        if(base!=null){
+          double[] now = parse(line);
+          double[] then = base.get(n+"/"+d);
+          if(then!=null){
+            double dt = 100.0*(now[0]-then[0])/then[0];
+            note = String.format("   %+6.1f%% time",dt);
+            if(dt>threshold||now[2]>then[2]*(1+threshold/100.0)+0.5){
+              note = note+"   REGRESSION";
+              regressions++;
+            }
+          }
+        }
+        System.out.println(line+note);
+      }
+    }
+    if(save!=null){
+      PrintWriter out = new PrintWriter(new FileWriter(save));
+      out.println("# MayanDateBenchmark  java "+System.getProperty("java.version")+"  "+System.getProperty("os.arch")+"  "+Runtime.getRuntime().availableProcessors()+" cpus  -w "+warm+" -i "+iters+" -t "+ms);
+      out.println(head);
+      for(String l : lines)out.println(l);
+      out.close();
+    }
+    if(regressions>0){
+      System.out.println(regressions+" regression(s) against "+compare);
+      System.exit(1);
+    }
+  }
+
+
+  //Benchmarks -------------------------------------------------------------
+
+  static Map<String,Op> ops(){
+    Map<String,Op> m = new LinkedHashMap<String,Op>();
+    m.put("gregMDC", i -> da.gregMDC(greg[i][0],greg[i][1],greg[i][2]));
+    m.put("mdcGREG", i -> da.mdcGREG(mdc[i])[0]);
+    m.put("longCount", i -> da.longCount(mdc[i])[2]);
+    m.put("unLongCount", i -> da.unLongCount(lc[i]));
+    m.put("tzolkinOf", i -> da.tzolkinOf(mdc[i])[1]);
+    m.put("haabOf", i -> da.haabOf(mdc[i])[2]);
+    m.put("roundPos", i -> da.roundPos(tzolkin[i][1],tzolkin[i][2],haab[i][1],haab[i][2]));
+    m.put("estimate", i -> da.estimate(crd[i],16)[15]);
+    m.put("estimateLord", i -> da.estimate(crd[i],16,lord[i])[15]);
+    m.put("setMDC", i -> {da.setMDC(mdc[i]); return da.getCRD();});
+    m.put("setMDC.tables", i -> {da.setMDC(mdc[i]); return da.getCRD();});
+    m.put("lcCond", i -> da.lcCond(lc[i]).length());
+    m.put("crCond", i -> da.crCond(tzolkin[i],haab[i]).length());
+    m.put("gregCond", i -> da.gregCond(greg[i]).length());
+    m.put("format.date", i -> {sb.setLength(0); return MayanFormat.date(sb,mdc[i]).length();});
+    m.put("format.record", i -> {bb.clear(); return MayanFormat.record(bb,MayanDay.of(mdc[i])).position();});
+    m.put("batch.longCount", i -> {
+      //One call per SIZE ops, amortised over the column
+      if(i==0)da.longCount(mdc,0,SIZE,c1,c2,c3,c4,c5);
+      return c3[i];
+    });
+    m.put("batch.mdcGREG", i -> {
+      if(i==0)da.mdcGREG(mdc,0,SIZE,c1,c2,c3);
+      return c1[i];
+    });
+    m.put("batch.mdcGREG.corr4", i -> {
+      //The four known correlations in one pass, amortised over the column (one op per input, not per correlation)
+      if(i==0)da.mdcGREG(mdc,0,SIZE,CORRELATIONS,cd,cm,cy);
+      return cd[3][i];
+    });
+    m.put("batch.lunar", i -> {
+      if(i==0)da.lunarOf(mdc,0,SIZE,c1,c2,c3);
+      return c1[i];
+    });
+    m.put("batch.venus", i -> {
+      if(i==0)da.venusOf(mdc,0,SIZE,c1,c2);
+      return c2[i];
+    });
+    m.put("engine.longCount", i -> {
+      //DateEngine.get(): the vector engine when it is on the classpath and the module is added, else scalar
+      if(i==0)engine.longCount(mdc,0,SIZE,c1,c2,c3,c4,c5);
+      return c3[i];
+    });
+    m.put("engine.mdcGREG", i -> {
+      if(i==0)engine.mdcGREG(mdc,0,SIZE,c1,c2,c3);
+      return c1[i];
+    });
+    m.put("engine.gregMDC", i -> {
+      if(i==0)engine.gregMDC(gd,gm,gy,0,SIZE,c1);
+      return c1[i];
+    });
+    m.put("long.longCount", i -> (int)MayanLong.longCount(mdc[i])[2]);
+    m.put("long.longCount8", i -> (int)MayanLong.longCount(mdc[i],8)[5]);
+    m.put("long.mdcGREG", i -> (int)MayanLong.mdcGREG(mdc[i])[0]);
+    m.put("long.gregMDC", i -> (int)MayanLong.gregMDC(greg[i][0],greg[i][1],greg[i][2]));
+    m.put("long.round", i -> MayanLong.trecena(mdc[i])+MayanLong.haabPos(mdc[i]));
+    m.put("MayanDay.longCount", i -> MayanDay.of(mdc[i]).getTun());
+    m.put("MayanDay.greg", i -> MayanDay.of(mdc[i]).getDay());
+    m.put("MayanDay.moon", i -> MayanDay.of(mdc[i]).getMoonAge());
+    m.put("MayanDay.node", i -> MayanDay.of(mdc[i]).getNodeDistance());
+    m.put("era.fill", i -> {
+      //Every field setMDC derives, from the mapped table
+      Era.TABLE.fill(mdc[i],flc,fgreg,ftz,fhaab,feight,fsupp);
+      return flc[2]+fgreg[0]+ftz[1]+fhaab[2]+feight[2]+fsupp[3];
+    });
+    m.put("era.lord", i -> Era.TABLE.getLord(mdc[i]));
+    m.put("server.record", i -> MayanDateServer.record(skew[i]).length);
+    m.put("cache.lru", i -> lru.get(skew[i]).length);
+    m.put("cache.tinylfu", i -> tinyLfu.get(skew[i]).length);
+    m.put("range.greg", i -> {
+      //SIZE consecutive days from the first input, walked once per SIZE ops
+      if(i==0){
+        int base = mdc[0];
+        for(MayanDay d : new MayanRange(base,base+SIZE))c1[d.getMDC()-base] = d.getDay();
+      }
+      return c1[i];
+    });
+    return m;
+  }
+
+
+  //Scaling ------------------------------------------------------------------
+
+  static boolean scaling(int maxThreads, int iters, int ms) throws InterruptedException {
+    //Runs the MayanService round trip on 1 to maxThreads threads at once and reports the best of iters timed runs at each count.
+    System.out.println(String.format("%-8s %14s %10s %12s","threads","ops/s","speedup","mismatches"));
+    double single = 0;
+    long allBad = 0;
+    for(int t=1;t<=maxThreads;t++){
+      double best = 0;
+      long bad = 0;
+      for(int it=0;it<iters;it++){
+        final long[] done = new long[t];
+        final long[] wrong = new long[t];
+        final long end = System.nanoTime()+ms*1000000L;
+        Thread[] pool = new Thread[t];
+        for(int k=0;k<t;k++){
+          final int id = k;
+          pool[k] = new Thread(() -> {
+            long n = 0;
+            long w = 0;
+            int i = id*(SIZE/maxThreads);
+            while(System.nanoTime()<end){
+              for(int j=0;j<256;j++){
+                i = (i+1)&(SIZE-1);
+                w += roundTrip(i);
+              }
+              n += 256;
+            }
+            done[id] = n;
+            wrong[id] = w;
+          });
+        }
+        for(Thread th : pool)th.start();
+        for(Thread th : pool)th.join();
+        long n = 0;
+        for(int k=0;k<t;k++){
+          n += done[k];
+          bad += wrong[k];
+        }
+        best = Math.max(best,n*1000.0/ms);
+      }
+      if(t==1)single = best;
+      allBad += bad;
+      System.out.println(String.format("%-8d %14.0f %10.2f %12d",t,best,best/single,bad));
+    }
+    return allBad==0;
+  }
+
+  static int roundTrip(int i){
+    //One request's worth of MayanService calls on the i-th input; returns the number of answers that differ from the prepared ones.
+    int w = 0;
+    MayanDay d = MayanService.fromGreg(greg[i][0],greg[i][1],greg[i][2]);
+    if(d.getMDC()!=mdc[i])w++;
+    if(!Arrays.equals(MayanService.longCount(mdc[i]),lc[i]))w++;
+    if(MayanService.unLongCount(lc[i])!=mdc[i])w++;
+    if(!Arrays.equals(MayanService.day(mdc[i]).getGregDate(),greg[i]))w++;
+    if(MayanService.roundPos(tzolkin[i][1],tzolkin[i][2],haab[i][1],haab[i][2])!=crd[i])w++;
+    int[] e = MayanService.estimate(crd[i],4);
+    if(e[3]!=crd[i]+3*18980)w++;
+    return w;
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  static class Era {
+    //The era table, opened (and written, if need be) only by the benchmarks that read it
+    static final EraTable TABLE = open();
+
+    private static EraTable open(){
+      java.nio.file.Path p = java.nio.file.Paths.get(System.getProperty("java.io.tmpdir"),"mayan-benchmark.era");
+      try{
+        try{
+          return EraTable.open(p);
+        }catch(IOException e){
+          EraTable.write(p,0,(13*144000)-1,Correlation.GMT);
+          return EraTable.open(p);
+        }
+      }catch(IOException e){
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  static void prepare(String dist){
+    //Fills the inputs from the named distribution with a fixed seed, so that every run sees the same dates.
+    int lo, hi;
+    if(dist.equals("classic")){
+      lo = 8*144000;
+      hi = 10*144000+4*7200;
+    }else if(dist.equals("modern")){
+      lo = da.gregMDC(1,1,1900);
+      hi = da.gregMDC(1,1,2100);
+    }else{
+      lo = 0;
+      hi = 13*144000;
+    }
+    Random r = new Random(20160701L);
+    for(int i=0;i<SIZE;i++){
+      int d = lo+r.nextInt(hi-lo);
+      mdc[i] = d;
+      lc[i] = da.longCount(d);
+      greg[i] = da.mdcGREG(d);
+      gd[i] = greg[i][0];
+      gm[i] = greg[i][1];
+      gy[i] = greg[i][2];
+      tzolkin[i] = da.tzolkinOf(d);
+      haab[i] = da.haabOf(d);
+      crd[i] = da.roundPos(tzolkin[i][1],tzolkin[i][2],haab[i][1],haab[i][2]);
+      lord[i] = 1+(d%9);
+    }
+    for(int i=0;i<SIZE;i++){
+      skew[i] = mdc[r.nextBoolean()?r.nextInt(64):r.nextInt(SIZE)];
+    }
+  }
+
+  static String measure(String name, String dist, Op op, int warm, int iters, int ms){
+    //Runs warm+iters timed iterations of op, and reports the mean time and allocation over the measured ones.
+    com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+    long tid = Thread.currentThread().getId();
+    double[] nsop = new double[iters];
+    double bytes = 0;
+    long allOps = 0;
+    for(int it=0;it<warm+iters;it++){
+      long end = System.nanoTime()+ms*1000000L;
+      long n = 0;
+      long a0 = mx.getThreadAllocatedBytes(tid);
+      long t0 = System.nanoTime();
+      long t1;
+      int s = 0;
+      do{
+        for(int i=0;i<SIZE;i++){
+          s += op.run(i);
+        }
+        n += SIZE;
+        t1 = System.nanoTime();
+      }while(t1<end);
+      long a1 = mx.getThreadAllocatedBytes(tid);
+      sink += s;
+      if(it>=warm){
+        nsop[it-warm] = (t1-t0)/(double)n;
+        bytes += a1-a0;
+        allOps += n;
+      }
+    }
+    double mean = 0;
+    for(double v : nsop)mean += v;
+    mean /= iters;
+    double var = 0;
+    for(double v : nsop)var += (v-mean)*(v-mean);
+    double err = (iters>1)?Math.sqrt(var/(iters-1)):0;
+    return String.format("%-24s %-8s %12.3f %12.3f %10.1f",name,dist,mean,err,bytes/allOps);
+  }
+
+  static String forked(String name, String dist, int warm, int iters, int ms) throws Exception {
+    //Runs one benchmark in a fresh JVM with this JVM's classpath and returns its result line.
+    //Added modules and system properties are passed on, so that the fork picks the same DateEngine.
+    String java = ProcessHandle.current().info().command().orElse("java");
+    List<String> cmd = new ArrayList<String>();
+    cmd.add(java);
+    for(String a : ManagementFactory.getRuntimeMXBean().getInputArguments()){
+      if(a.startsWith("--add-modules")||a.startsWith("-D"))cmd.add(a);
+    }
+    cmd.addAll(Arrays.asList("-cp",System.getProperty("java.class.path"),"MayanDateBenchmark",
+      "-w",""+warm,"-i",""+iters,"-t",""+ms,"-run",name+"/"+dist));
+    ProcessBuilder pb = new ProcessBuilder(cmd);
+    pb.redirectErrorStream(true);
+    Process p = pb.start();
+    BufferedReader in = new BufferedReader(new InputStreamReader(p.getInputStream()));
+    String line;
+    String last = null;
+    while((line = in.readLine())!=null){
+      last = line;
+    }
+    if(p.waitFor()!=0||last==null)throw new IOException("Forked benchmark "+name+"/"+dist+" failed: "+last);
+    return last;
+  }
+
+  static double[] parse(String line){
+    //[ns/op, error, B/op] of a result line
+    String[] f = line.trim().split("\\s+");
+    double[] out = {Double.parseDouble(f[2]),Double.parseDouble(f[3]),Double.parseDouble(f[4])};
+    return out;
+  }
+
+  static Map<String,double[]> load(String file) throws IOException {
+    Map<String,double[]> out = new HashMap<String,double[]>();
+    BufferedReader in = new BufferedReader(new FileReader(file));
+    String line;
+    while((line = in.readLine())!=null){
+      if(line.startsWith("#")||line.startsWith("benchmark")||line.trim().isEmpty())continue;
+      String[] f = line.trim().split("\\s+");
+      out.put(f[0]+"/"+f[1],parse(line));
+    }
+    in.close();
+    return out;
+  }
+
+}
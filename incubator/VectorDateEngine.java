@@ -0,0 +1,310 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/*
+ * Mayan Date SIMD Batch Engine
+ * For use with class DateEngine
+ *
+ * The DateEngine column converters on the incubating Vector API, as many dates at a time as the CPU has double lanes
+ * (8 with AVX-512, 4 with AVX2). The hardware has no vector integer division, so each lane is widened to a double,
+ * where every value the converters meet is exact, and floorDiv(x, c) becomes x/c + (0.5/c - 0.5) rounded to the nearest
+ * integer: one fused multiply-add by 1/c, then adding and subtracting 1.5 * 2^52. For integral x that sum lies at least
+ * 0.5/c from a tie, far more than the rounding error while |x| is below 2^51, so the result is exact. No lane branches.
+ * Results go back to int through the bits of the double (see store) rather than by a D2I cast.
+ * The tail of a column shorter than a vector goes to the scalar engine.
+ *
+ * Each converter's loop is a method of its own, short enough for the JIT to compile with every vector kept in a
+ * register; mdcGREG, the longest, makes two passes over each block of the column to stay so. The JIT must also compile
+ * each loop on its own rather than inline it into its caller, where it can run out of room partway through; the loops
+ * of longCount and gregMDC are written out in full to be too long to inline, and the others compile too large to be.
+ *
+ * The engine refuses to load (throwing UnsupportedOperationException) where the CPU has fewer than 4 double lanes, for
+ * there the scalar path is faster; DateEngine.get() then falls back to it.
+ *
+ * Compile and run from the repository root (the rest of the tree builds without the module):
+ *   javac -d build *.java
+ *   javac --add-modules jdk.incubator.vector -cp build -d build incubator/*.java
+ *   java --add-modules jdk.incubator.vector -cp build VectorDateEngine [from to]
+ *
+ * main checks every converter against the scalar engine for every MDC in [from, to) (default the whole int range; the
+ * Gregorian dates of those MDCs are the inputs of gregMDC), under each known correlation in turn, and then times both
+ * engines. It prints the first mismatch of each converter and exits 1 if there was one.
+ */
+
+public final class VectorDateEngine implements DateEngine {
+
+  private static final VectorSpecies<Double> DS = DoubleVector.SPECIES_PREFERRED;
+  //Int lanes to match: half the width of the doubles
+  private static final VectorSpecies<Integer> IS = VectorSpecies.of(int.class,VectorShape.forBitSize(DS.length()*32));
+  private static final int LANES = DS.length();
+  //Dates per pass of a converter that makes more than one (three columns of it fit in the L1 cache)
+  private static final int BLOCK = 1024;
+  //1.5 * 2^52: adding and then subtracting it rounds any double below 2^51 to the nearest integer
+  //(as a vector, for a broadcast in every call costs the JIT enough to stop it inlining a long converter)
+  private static final DoubleVector ROUND = DoubleVector.broadcast(DS,6755399441055744.0);
+
+  private final Correlation corr;
+  private final double cons;
+  private final DateEngine tail;
+
+  public VectorDateEngine(Correlation c){
+    if(LANES<4)throw new UnsupportedOperationException("Only "+LANES+" double lanes");
+    corr = c;
+    cons = c.getConstant();
+    tail = DateEngine.scalar(c);
+  }
+
+
+  //Batch Converters -------------------------------------------------------------
+
+  public void longCount(int[] days, int off, int len, int[] bak, int[] kat, int[] tun, int[] win, int[] kin){
+    int end = off+IS.loopBound(len);
+    longCounts(days,off,end,bak,kat,tun,win,kin);
+    tail.longCount(days,end,off+len-end,bak,kat,tun,win,kin);
+  }
+
+  private static void longCounts(int[] days, int from, int to, int[] bak, int[] kat, int[] tun, int[] win, int[] kin){
+    //Each place from the day of the Bak'tun directly rather than from the place above, to keep the chain short.
+    //Written out in full rather than through load, floorDiv and store, which puts it over the JIT's limit for
+    //inlining a hot method: otherwise the JIT inlines it into longCount and runs out of room partway through, and
+    //the vectors of the rest go to the heap.
+    for(int i=from;i<to;i+=LANES){
+      DoubleVector x = (DoubleVector)IntVector.fromArray(IS,days,i).convertShape(VectorOperators.I2D,DS,0);
+      DoubleVector b = x.fma(1.0/144000,0.5/144000-0.5).add(ROUND).sub(ROUND);
+      x = x.sub(b.mul(144000));
+      DoubleVector k = x.fma(1.0/7200,0.5/7200-0.5).add(ROUND).sub(ROUND);
+      DoubleVector t = x.fma(1.0/360,0.5/360-0.5).add(ROUND).sub(ROUND);
+      DoubleVector w = x.fma(1.0/20,0.5/20-0.5).add(ROUND).sub(ROUND);
+      ((IntVector)b.add(ROUND).reinterpretAsLongs().convertShape(VectorOperators.L2I,IS,0)).intoArray(bak,i);
+      ((IntVector)k.add(ROUND).reinterpretAsLongs().convertShape(VectorOperators.L2I,IS,0)).intoArray(kat,i);
+      ((IntVector)t.sub(k.mul(20)).add(ROUND).reinterpretAsLongs().convertShape(VectorOperators.L2I,IS,0)).intoArray(tun,i);
+      ((IntVector)w.sub(t.mul(18)).add(ROUND).reinterpretAsLongs().convertShape(VectorOperators.L2I,IS,0)).intoArray(win,i);
+      ((IntVector)x.sub(w.mul(20)).add(ROUND).reinterpretAsLongs().convertShape(VectorOperators.L2I,IS,0)).intoArray(kin,i);
+    }
+  }
+
+  public void mdcGREG(int[] days, int off, int len, int[] dd, int[] mm, int[] yy){
+    //In two passes over each block, both short enough for the JIT to compile whole: the first leaves the day of the
+    //year in dd and the year it starts in yy, and the second turns them into the day, month and year.
+    int end = off+IS.loopBound(len);
+    for(int b=off;b<end;b+=BLOCK){
+      int e = Math.min(b+BLOCK,end);
+      civilYears(days,b,e,cons,dd,yy);
+      civilMonths(b,e,dd,mm,yy);
+    }
+    tail.mdcGREG(days,end,off+len-end,dd,mm,yy);
+  }
+
+  private static void civilYears(int[] days, int from, int to, double cons, int[] doy, int[] yy){
+    //MayanDate.civil to the day of the year, but splitting the day of the era by century and then by 4-year cycle
+    //(after Baum), which takes three floor divisions to the four of civil's one-step year
+    for(int i=from;i<to;i+=LANES){
+      DoubleVector z = load(days,i).add(cons-1721120);
+      DoubleVector era = floorDiv(z,146097);
+      DoubleVector doe = z.sub(era.mul(146097));
+      DoubleVector c = floorDiv(doe.mul(4).add(3),146097);        //Century of the era, 0-3
+      DoubleVector doc = doe.sub(c.mul(36524));                    //Day of the century
+      DoubleVector yoc = floorDiv(doc.mul(4).add(3),1461);        //Year of the century, 0-99
+      store(doc.sub(yoc.mul(365)).sub(floorDiv(yoc,4)),doy,i);
+      store(era.mul(400).add(c.mul(100)).add(yoc),yy,i);
+    }
+  }
+
+  private static void civilMonths(int from, int to, int[] dd, int[] mm, int[] yy){
+    //The rest of MayanDate.civil, from the day of the year in dd
+    for(int i=from;i<to;i+=LANES){
+      DoubleVector doy = load(dd,i);
+      DoubleVector mp = floorDiv(doy.mul(5).add(2),153);
+      DoubleVector q = floorDiv(mp,10);
+      store(doy.sub(floorDiv(mp.mul(153).add(2),5)).add(1),dd,i);
+      store(mp.add(3).sub(q.mul(12)),mm,i);
+      store(load(yy,i).add(q),yy,i);
+    }
+  }
+
+  public void gregMDC(int[] dd, int[] mm, int[] yy, int off, int len, int[] days){
+    int end = off+IS.loopBound(len);
+    julianDays(dd,mm,yy,off,end,cons,days);
+    tail.gregMDC(dd,mm,yy,end,off+len-end,days);
+  }
+
+  private static void julianDays(int[] dd, int[] mm, int[] yy, int from, int to, double cons, int[] days){
+    //MayanDate.jdn, lane-wise, written out in full like longCounts
+    for(int i=from;i<to;i+=LANES){
+      DoubleVector m = (DoubleVector)IntVector.fromArray(IS,mm,i).convertShape(VectorOperators.I2D,DS,0);
+      DoubleVector y = (DoubleVector)IntVector.fromArray(IS,yy,i).convertShape(VectorOperators.I2D,DS,0);
+      DoubleVector d = (DoubleVector)IntVector.fromArray(IS,dd,i).convertShape(VectorOperators.I2D,DS,0);
+      DoubleVector a = m.neg().add(14).fma(1.0/12,0.5/12-0.5).add(ROUND).sub(ROUND);
+      y = y.sub(a);
+      DoubleVector mp = m.add(a.mul(12)).sub(3);
+      DoubleVector era = y.fma(1.0/400,0.5/400-0.5).add(ROUND).sub(ROUND);
+      DoubleVector yoe = y.sub(era.mul(400));
+      DoubleVector j = era.mul(146097).add(yoe.mul(365))
+        .add(yoe.fma(1.0/4,0.5/4-0.5).add(ROUND).sub(ROUND))
+        .sub(yoe.fma(1.0/100,0.5/100-0.5).add(ROUND).sub(ROUND))
+        .add(mp.mul(153).add(2).fma(1.0/5,0.5/5-0.5).add(ROUND).sub(ROUND)).add(d);
+      ((IntVector)j.add(1721119-cons).add(ROUND).reinterpretAsLongs().convertShape(VectorOperators.L2I,IS,0))
+        .intoArray(days,i);
+    }
+  }
+
+  public void tzolkinOf(int[] days, int off, int len, int[] trecena, int[] veintena){
+    int end = off+IS.loopBound(len);
+    tzolkins(days,off,end,trecena,veintena);
+    tail.tzolkinOf(days,end,off+len-end,trecena,veintena);
+  }
+
+  private static void tzolkins(int[] days, int from, int to, int[] trecena, int[] veintena){
+    for(int i=from;i<to;i+=LANES){
+      DoubleVector p = floorMod(load(days,i).add(159),260);
+      store(floorMod(p,13).add(1),trecena,i);
+      store(floorMod(p.add(1),20),veintena,i);
+    }
+  }
+
+  public void haabOf(int[] days, int off, int len, int[] hday, int[] hmonth){
+    int end = off+IS.loopBound(len);
+    haabs(days,off,end,hday,hmonth);
+    tail.haabOf(days,end,off+len-end,hday,hmonth);
+  }
+
+  private static void haabs(int[] days, int from, int to, int[] hday, int[] hmonth){
+    for(int i=from;i<to;i+=LANES){
+      DoubleVector p = floorMod(load(days,i).add(348),365);
+      DoubleVector m = floorDiv(p,20);
+      store(p.sub(m.mul(20)),hday,i);
+      store(m,hmonth,i);
+    }
+  }
+
+
+  //Accessors ---------------------------------------------------------------
+
+  public String getName(){
+    return "vector"+LANES;
+  }
+
+  public Correlation getCorrelation(){
+    return corr;
+  }
+
+
+  //Internal -----------------------------------------------------------------
+
+  private static DoubleVector load(int[] a, int i){
+    return (DoubleVector)IntVector.fromArray(IS,a,i).convertShape(VectorOperators.I2D,DS,0);
+  }
+
+  private static void store(DoubleVector v, int[] a, int i){
+    //D2I is not compiled to a vector instruction on every JDK. Plus ROUND, an integral double below 2^31 holds its
+    //value as two's complement in the low 32 bits, which the narrowing L2I keeps.
+    ((IntVector)v.add(ROUND).reinterpretAsLongs().convertShape(VectorOperators.L2I,IS,0)).intoArray(a,i);
+  }
+
+  private static DoubleVector floorDiv(DoubleVector x, double c){
+    //Exact for integral |x| below 2^51 and c above 1 (see the class comment)
+    return x.fma(1.0/c,0.5/c-0.5).add(ROUND).sub(ROUND);
+  }
+
+  private static DoubleVector floorMod(DoubleVector x, double c){
+    return x.sub(floorDiv(x,c).mul(c));
+  }
+
+
+  //Equivalence check ---------------------------------------------------------
+
+  public static void main(String[] args){
+    long from = Integer.MIN_VALUE;
+    long to = Integer.MAX_VALUE+1L;
+    if(args.length>=2){
+      from = Long.parseLong(args[0]);
+      to = Long.parseLong(args[1]);
+    }
+    final int n = 1<<16;
+    int[] days = new int[n];
+    int[][] s = new int[5][n], v = new int[5][n];
+    long bad = 0;
+    System.out.println("Checking "+new VectorDateEngine(Correlation.GMT).getName()+" against scalar over MDC ["+from+", "+to+")");
+    for(Correlation c : Correlation.known()){
+      DateEngine se = DateEngine.scalar(c);
+      DateEngine ve = new VectorDateEngine(c);
+      boolean[] seen = new boolean[4];
+      for(long b=from;b<to;b+=n){
+        int len = (int)Math.min(n,to-b);
+        for(int i=0;i<len;i++)days[i] = (int)(b+i);
+        se.longCount(days,0,len,s[0],s[1],s[2],s[3],s[4]);
+        ve.longCount(days,0,len,v[0],v[1],v[2],v[3],v[4]);
+        bad += compare("longCount",c,days,len,s,v,5,seen,0);
+        se.tzolkinOf(days,0,len,s[0],s[1]);
+        ve.tzolkinOf(days,0,len,v[0],v[1]);
+        se.haabOf(days,0,len,s[2],s[3]);
+        ve.haabOf(days,0,len,v[2],v[3]);
+        bad += compare("tzolkinOf/haabOf",c,days,len,s,v,4,seen,1);
+        se.mdcGREG(days,0,len,s[0],s[1],s[2]);
+        ve.mdcGREG(days,0,len,v[0],v[1],v[2]);
+        bad += compare("mdcGREG",c,days,len,s,v,3,seen,2);
+        //The scalar Gregorian dates of the days, back again
+        se.gregMDC(s[0],s[1],s[2],0,len,s[3]);
+        ve.gregMDC(s[0],s[1],s[2],0,len,v[3]);
+        bad += compare("gregMDC",c,days,len,new int[][]{s[3],days},new int[][]{v[3],v[3]},2,seen,3);
+      }
+    }
+    System.out.println(bad==0?"All converters agree":bad+" mismatch(es)");
+    timing();
+    if(bad!=0)System.exit(1);
+  }
+
+  private static long compare(String what, Correlation c, int[] days, int len, int[][] s, int[][] v, int cols, boolean[] seen, int k){
+    long bad = 0;
+    for(int i=0;i<len;i++){
+      for(int j=0;j<cols;j++){
+        if(s[j][i]!=v[j][i]){
+          if(!seen[k]){
+            seen[k] = true;
+            System.out.println(what+" under "+c.getName()+" differs at MDC "+days[i]+", column "+j+": scalar "+s[j][i]+", vector "+v[j][i]);
+          }
+          bad++;
+          break;
+        }
+      }
+    }
+    return bad;
+  }
+
+  private static void timing(){
+    //Nanoseconds per date over a 4096-day column of the era, best of 20 runs of 200 passes
+    final int n = 4096;
+    int[] days = new int[n];
+    java.util.Random r = new java.util.Random(17);
+    for(int i=0;i<n;i++)days[i] = r.nextInt(1872000);
+    int[] a = new int[n], b = new int[n], c = new int[n], d = new int[n], e = new int[n], f = new int[n], g = new int[n], h = new int[n];
+    DateEngine[] engines = {DateEngine.scalar(Correlation.GMT),new VectorDateEngine(Correlation.GMT)};
+    String[] ops = {"longCount","mdcGREG","gregMDC","tzolkinOf","haabOf"};
+    System.out.println(String.format("%-12s %12s %12s %9s","ns/date",engines[0].getName(),engines[1].getName(),"speedup"));
+    engines[0].mdcGREG(days,0,n,c,d,e);
+    for(String op : ops){
+      double[] best = {Double.MAX_VALUE,Double.MAX_VALUE};
+      for(int run=0;run<20;run++){
+        for(int k=0;k<2;k++){
+          DateEngine en = engines[k];
+          long t0 = System.nanoTime();
+          for(int p=0;p<200;p++){
+            switch(op){
+              case "longCount": en.longCount(days,0,n,a,b,f,g,h); break;
+              case "mdcGREG": en.mdcGREG(days,0,n,a,b,f); break;
+              case "gregMDC": en.gregMDC(c,d,e,0,n,a); break;
+              case "tzolkinOf": en.tzolkinOf(days,0,n,a,b); break;
+              default: en.haabOf(days,0,n,a,b);
+            }
+          }
+          best[k] = Math.min(best[k],(System.nanoTime()-t0)/(200.0*n));
+        }
+      }
+      System.out.println(String.format("%-12s %12.3f %12.3f %8.1fx",op,best[0],best[1],best[0]/best[1]));
+    }
+  }
+
+}